@@ -0,0 +1,47 @@
+package com.twilio.jenkins;
+
+import hudson.model.ModelObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Joins the names of small and large sets of culprits.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CulpritStringBenchmark {
+    @Param({"1", "10", "1000", "10000"})
+    public int culprits;
+
+    private List<ModelObject> users;
+
+    @Setup
+    public void setUp() {
+        users = new ArrayList<ModelObject>(culprits);
+        for (int i = 0; i < culprits; i++) {
+            final String name = "developer" + i;
+            users.add(new ModelObject() {
+                public String getDisplayName() {
+                    return name;
+                }
+            });
+        }
+    }
+
+    @Benchmark
+    public String culpritStringFromList() {
+        return TwilioNotifier.culpritStringFromList(users);
+    }
+}
@@ -0,0 +1,134 @@
+package com.twilio.jenkins;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Notifies for one build the way {@link TwilioNotifier#perform} does after
+ * the build data was collected: renders the message for every recipient and
+ * sends the notifications through the fan-out, the retrying transport and
+ * the pooled Twilio connection to a local {@link FakeTwilioServer}. Every
+ * build has its own url, so it is shortened once per operation.
+ *
+ * Run with <code>-prof gc</code> to see the allocation per build; divide by
+ * the number of recipients for the allocation per notification. The server
+ * can reject a share of the requests with a 429 or a 500, which the
+ * transport retries; {@link #notifyBuildLatency} reports the percentiles of
+ * the time to notify for a build.
+ *
+ * To see what a sender pool buys under a per-number rate limit, run with
+ * e.g. <code>-p smsPerSecond=10 -p senders=1,4</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class FanOutBenchmark {
+    @Param({"0", "20"})
+    public long latencyMillis;
+
+    @Param({"1", "10", "50"})
+    public int recipients;
+
+    @Param({"8"})
+    public int concurrency;
+
+    @Param({"0", "0.05"})
+    public double tooManyRequestsRate;
+
+    @Param({"0"})
+    public double errorRate;
+
+    @Param({"1"})
+    public int senders;
+
+    @Param({"0"})
+    public double smsPerSecond;
+
+    private FakeTwilioServer server;
+    private TwilioConnection connection;
+    private UrlShortener shortener;
+    private NotificationFanOut fanOut;
+    private NotificationFanOut.Transport transport;
+    private MessageTemplate template;
+    private String[] numbers;
+    private final AtomicLong builds = new AtomicLong();
+
+    @Setup
+    public void setUp() throws IOException {
+        server = new FakeTwilioServer(latencyMillis);
+        server.setTooManyRequestsRate(tooManyRequestsRate);
+        server.setErrorRate(errorRate);
+        connection = new TwilioConnection("AC0123456789abcdef0123456789abcdef", "token", server.getEndpoint());
+        shortener = new UrlShortener(server.getShortenerEndpoint());
+        fanOut = new NotificationFanOut(concurrency);
+        String[] others = new String[senders - 1];
+        for (int i = 0; i < others.length; i++) {
+            others[i] = String.format("+1555000%04d", i + 1);
+        }
+        long deadline = TimeUnit.SECONDS.toMillis(TwilioNotifier.DEFAULT_RETRY_DEADLINE_SECONDS);
+        SenderPool pool = new SenderPool("+15550000000", others, smsPerSecond, deadline);
+        transport = new RetryingTransport(new TwilioTransport(connection, pool, null, shortener, null),
+                new RateLimiter(0), new RateLimiter(0), deadline);
+        template = MessageTemplate.compile("%PROJECT% %BUILD% is %STATUS%, please have a look %CULPRIT-NAME%.");
+        numbers = new String[recipients];
+        for (int i = 0; i < recipients; i++) {
+            numbers[i] = String.format("+1415555%04d", i);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        fanOut.shutdown();
+        shortener.shutdown();
+        connection.close();
+        server.stop();
+    }
+
+    @Benchmark
+    public NotificationResult notifyBuild() {
+        return send();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public NotificationResult notifyBuildLatency() {
+        return send();
+    }
+
+    private NotificationResult send() {
+        long build = builds.incrementAndGet();
+        Map<String, String> attributes = new HashMap<String, String>();
+        attributes.put("%PROJECT%", "twilio-notifier");
+        attributes.put("%BUILD%", "#" + build);
+        attributes.put("%STATUS%", "FAILURE");
+        String url = "http://jenkins/job/twilio-notifier/" + build + "/";
+
+        List<Notification> notifications = new ArrayList<Notification>(recipients);
+        for (String number : numbers) {
+            Map<String, String> local = new HashMap<String, String>(attributes);
+            local.put("%CULPRIT-NAME%", number);
+            notifications.add(new Notification(number, number, template.render(local), url, true, false));
+        }
+        NotificationResult result = fanOut.send(notifications, transport);
+        if (result.getFailedCount() > 0) {
+            throw new IllegalStateException("Notifications failed: " + result);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,89 @@
+package com.twilio.jenkins;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the log output for sending one build's notifications: a line
+ * for every step per recipient, as the send loops used to write, against
+ * one {@link NotificationLog} record per notification. The handler formats
+ * every record it gets, like a file or console handler would, and throws
+ * the text away.
+ *
+ * Run with <code>-prof gc</code> and compare gc.alloc.rate.norm.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LoggingBenchmark {
+    @Param({"INFO", "WARNING"})
+    public String level;
+
+    @Param({"10"})
+    public int recipients;
+
+    private Logger logger;
+    private List<NotificationResult.Outcome> outcomes;
+
+    @Setup
+    public void setUp() {
+        logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+        logger.setLevel(Level.parse(level));
+        final SimpleFormatter formatter = new SimpleFormatter();
+        logger.addHandler(new Handler() {
+            public void publish(final LogRecord record) {
+                formatter.format(record);
+            }
+
+            public void flush() {
+            }
+
+            public void close() {
+            }
+        });
+        outcomes = new ArrayList<NotificationResult.Outcome>(recipients);
+        for (int i = 0; i < recipients; i++) {
+            String number = String.format("+1415555%04d", i);
+            Notification notification = new Notification("twilio-notifier", "developer" + i, number,
+                    "twilio-notifier #1234 is FAILURE, last changed by William James and Luke.",
+                    "http://jenkins/job/twilio-notifier/1234/", true, false);
+            outcomes.add(new NotificationResult.Outcome(notification, Channel.SMS, null));
+        }
+    }
+
+    @Benchmark
+    public void perStepLines(final Blackhole blackhole) {
+        logger.info("Sending to To List");
+        for (NotificationResult.Outcome outcome : outcomes) {
+            Notification notification = outcome.getNotification();
+            logger.info("Preparing to notify to " + notification.getRecipient() + " at " + notification.getNumber());
+            logger.info("Using the specified culprit message.");
+            logger.info("Sending SMS to " + notification.getNumber() + " with message: " + notification.getMessage());
+            logger.info(outcome.toString());
+        }
+        blackhole.consume(outcomes);
+    }
+
+    @Benchmark
+    public void summaryRecords(final Blackhole blackhole) {
+        NotificationLog.log(logger, outcomes, false);
+        blackhole.consume(outcomes);
+    }
+}
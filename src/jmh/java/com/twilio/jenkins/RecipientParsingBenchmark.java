@@ -0,0 +1,45 @@
+package com.twilio.jenkins;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Parses to lists of different lengths, written in mixed formats with some
+ * numbers listed twice.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RecipientParsingBenchmark {
+    private static final String[] FORMATS = {"+1 415 555 %04d", "(415) 555-%04d", "0046 70 123 %04d"};
+
+    @Param({"1", "10", "100"})
+    public int recipients;
+
+    private String toList;
+
+    @Setup
+    public void setUp() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < recipients; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(String.format(FORMATS[i % FORMATS.length], i / 2));
+        }
+        toList = sb.toString();
+    }
+
+    @Benchmark
+    public String[] parseList() {
+        return PhoneNumbers.parseList(toList, PhoneNumbers.NORTH_AMERICA);
+    }
+}
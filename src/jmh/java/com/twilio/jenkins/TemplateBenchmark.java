@@ -0,0 +1,50 @@
+package com.twilio.jenkins;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Renders a typical message, once parsing it on every call the way
+ * {@link TwilioNotifier#substituteAttributes} does and once with a template
+ * compiled up front the way the send loops do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TemplateBenchmark {
+    private static final String MESSAGE =
+            "%PROJECT% %BUILD% is %STATUS%, last changed by %CULPRITS%. Please have a look, %CULPRIT-NAME%.";
+
+    private MessageTemplate template;
+    private Map<String, String> attributes;
+
+    @Setup
+    public void setUp() {
+        template = MessageTemplate.compile(MESSAGE);
+        attributes = new HashMap<String, String>();
+        attributes.put("%PROJECT%", "twilio-notifier");
+        attributes.put("%BUILD%", "#1234");
+        attributes.put("%STATUS%", "FAILURE");
+        attributes.put("%CULPRITS%", "William James and Luke");
+        attributes.put("%CULPRIT-NAME%", "Luke");
+    }
+
+    @Benchmark
+    public String substituteAttributes() {
+        return TwilioNotifier.substituteAttributes(MESSAGE, attributes);
+    }
+
+    @Benchmark
+    public String renderCompiled() {
+        return template.render(attributes);
+    }
+}
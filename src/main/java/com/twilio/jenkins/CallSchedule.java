@@ -0,0 +1,231 @@
+package com.twilio.jenkins;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * A {@link CallSchedule} says when a recipient may be called; outside of it
+ * they only get text messages. It is written as a comma separated list of
+ * hours, each optionally for a range of days, and optionally followed by a
+ * time zone after a semicolon:
+ *
+ * <pre>
+ * Mon-Fri 08:00-20:00, Sat-Sun 10:00-18:00; Europe/Stockholm
+ * </pre>
+ *
+ * Hours that end before they start run past midnight, and hours without
+ * days apply every day. Without a time zone the one of Jenkins is used.
+ *
+ * The hours are compiled once into sorted minutes of the week. The first
+ * lookup in a week turns them into the absolute times of that week, daylight
+ * saving time included; every other lookup is a binary search.
+ */
+public final class CallSchedule {
+
+    private static final int MINUTES_PER_DAY = 24 * 60;
+    private static final int MINUTES_PER_WEEK = 7 * MINUTES_PER_DAY;
+    private static final String[] DAYS = {"mon", "tue", "wed", "thu", "fri", "sat", "sun"};
+
+    private final String spec;
+    private final TimeZone zone;
+
+    /**
+     * Start and end minutes of the week, from Monday midnight, in pairs.
+     */
+    private final int[] weekly;
+
+    private volatile Week week;
+
+    private CallSchedule(final String spec, final TimeZone zone, final int[] weekly) {
+        this.spec = spec;
+        this.zone = zone;
+        this.weekly = weekly;
+    }
+
+    /**
+     * Parses a schedule.
+     *
+     * @param spec the schedule as entered
+     * @return the schedule, or null if it is empty, which allows calls at any time
+     * @throws IllegalArgumentException if it isn't a valid schedule, with a message saying why
+     */
+    public static CallSchedule parse(final String spec) {
+        if (spec == null || spec.trim().length() == 0) {
+            return null;
+        }
+        String hours = spec;
+        TimeZone zone = TimeZone.getDefault();
+        final int semicolon = spec.indexOf(';');
+        if (semicolon >= 0) {
+            hours = spec.substring(0, semicolon);
+            String id = spec.substring(semicolon + 1).trim();
+            zone = TimeZone.getTimeZone(id);
+            if (!zone.getID().equals(id)) {
+                throw new IllegalArgumentException("Unknown time zone: " + id);
+            }
+        }
+        final List<int[]> intervals = new ArrayList<int[]>();
+        for (String rule : hours.split(",")) {
+            rule = rule.trim();
+            if (rule.length() > 0) {
+                parseRule(rule, intervals);
+            }
+        }
+        if (intervals.isEmpty()) {
+            throw new IllegalArgumentException("No hours given");
+        }
+        return new CallSchedule(spec.trim(), zone, merge(intervals));
+    }
+
+    /**
+     * Parses <code>[day[-day]] HH:mm-HH:mm</code> into intervals of the week.
+     */
+    private static void parseRule(final String rule, final List<int[]> intervals) {
+        final String[] parts = rule.split("\\s+");
+        if (parts.length > 2) {
+            throw new IllegalArgumentException("Expected days and hours: " + rule);
+        }
+        int firstDay = 0;
+        int lastDay = 6;
+        if (parts.length == 2) {
+            final int dash = parts[0].indexOf('-');
+            firstDay = parseDay(dash < 0 ? parts[0] : parts[0].substring(0, dash));
+            lastDay = dash < 0 ? firstDay : parseDay(parts[0].substring(dash + 1));
+        }
+        final String range = parts[parts.length - 1];
+        final int dash = range.indexOf('-');
+        if (dash < 0) {
+            throw new IllegalArgumentException("Expected hours like 09:00-17:00: " + rule);
+        }
+        final int start = parseTime(range.substring(0, dash));
+        int end = parseTime(range.substring(dash + 1));
+        if (end <= start) {
+            // runs past midnight
+            end += MINUTES_PER_DAY;
+        }
+        for (int day = firstDay;; day = (day + 1) % 7) {
+            final int from = day * MINUTES_PER_DAY + start;
+            final int to = day * MINUTES_PER_DAY + end;
+            if (to > MINUTES_PER_WEEK) {
+                // Sunday night into Monday morning
+                intervals.add(new int[] {from, MINUTES_PER_WEEK});
+                intervals.add(new int[] {0, to - MINUTES_PER_WEEK});
+            } else {
+                intervals.add(new int[] {from, to});
+            }
+            if (day == lastDay) {
+                break;
+            }
+        }
+    }
+
+    private static int parseDay(final String day) {
+        final String prefix = day.length() >= 3 ? day.substring(0, 3).toLowerCase(Locale.ENGLISH) : day;
+        for (int i = 0; i < DAYS.length; i++) {
+            if (DAYS[i].equals(prefix)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Not a day: " + day);
+    }
+
+    private static int parseTime(final String time) {
+        final int colon = time.indexOf(':');
+        try {
+            final int hour = Integer.parseInt(colon < 0 ? time : time.substring(0, colon));
+            final int minute = colon < 0 ? 0 : Integer.parseInt(time.substring(colon + 1));
+            if (hour >= 0 && minute >= 0 && minute < 60 && (hour < 24 || hour == 24 && minute == 0)) {
+                return hour * 60 + minute;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("Not a time of day: " + time);
+    }
+
+    /**
+     * Sorts intervals and merges those that overlap or touch.
+     *
+     * @return start and end minutes in pairs
+     */
+    private static int[] merge(final List<int[]> intervals) {
+        final int[][] sorted = intervals.toArray(new int[intervals.size()][]);
+        Arrays.sort(sorted, new Comparator<int[]>() {
+            public int compare(final int[] a, final int[] b) {
+                return a[0] < b[0] ? -1 : a[0] == b[0] ? 0 : 1;
+            }
+        });
+        final int[] merged = new int[sorted.length * 2];
+        int n = 0;
+        for (int[] interval : sorted) {
+            if (n > 0 && interval[0] <= merged[n - 1]) {
+                merged[n - 1] = Math.max(merged[n - 1], interval[1]);
+            } else {
+                merged[n++] = interval[0];
+                merged[n++] = interval[1];
+            }
+        }
+        return Arrays.copyOf(merged, n);
+    }
+
+    /**
+     * Returns whether a recipient may be called at a time.
+     *
+     * @param now the time in milliseconds
+     * @return whether the time is within the schedule
+     */
+    public boolean allowsCall(final long now) {
+        Week current = this.week;
+        if (current == null || now < current.from || now >= current.until) {
+            current = new Week(now);
+            this.week = current;
+        }
+        final int i = Arrays.binarySearch(current.bounds, now);
+        // starts are at even indexes and included, ends at odd ones and excluded
+        return i >= 0 ? (i & 1) == 0 : ((-i - 1) & 1) == 1;
+    }
+
+    @Override
+    public String toString() {
+        return this.spec;
+    }
+
+    /**
+     * The schedule in absolute times for the week around a time.
+     */
+    private final class Week {
+        final long from;
+        final long until;
+        final long[] bounds;
+
+        Week(final long now) {
+            final Calendar monday = Calendar.getInstance(zone, Locale.ENGLISH);
+            monday.setTimeInMillis(now);
+            final int daysSinceMonday = (monday.get(Calendar.DAY_OF_WEEK) + 5) % 7;
+            monday.add(Calendar.DAY_OF_MONTH, -daysSinceMonday);
+            monday.set(Calendar.HOUR_OF_DAY, 0);
+            monday.set(Calendar.MINUTE, 0);
+            monday.set(Calendar.SECOND, 0);
+            monday.set(Calendar.MILLISECOND, 0);
+            this.from = monday.getTimeInMillis();
+            this.until = toMillis(monday, MINUTES_PER_WEEK);
+            this.bounds = new long[weekly.length];
+            for (int i = 0; i < weekly.length; i++) {
+                bounds[i] = toMillis(monday, weekly[i]);
+            }
+        }
+
+        private long toMillis(final Calendar monday, final int minuteOfWeek) {
+            final Calendar c = (Calendar) monday.clone();
+            c.add(Calendar.DAY_OF_MONTH, minuteOfWeek / MINUTES_PER_DAY);
+            c.set(Calendar.HOUR_OF_DAY, minuteOfWeek % MINUTES_PER_DAY / 60);
+            c.set(Calendar.MINUTE, minuteOfWeek % 60);
+            return c.getTimeInMillis();
+        }
+    }
+}
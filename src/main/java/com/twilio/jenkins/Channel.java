@@ -0,0 +1,15 @@
+package com.twilio.jenkins;
+
+/**
+ * The ways a recipient can be notified.
+ */
+public enum Channel {
+    /**
+     * A text message.
+     */
+    SMS,
+    /**
+     * A phone call reading the message out loud.
+     */
+    CALL
+}
@@ -0,0 +1,101 @@
+package com.twilio.jenkins;
+
+import hudson.model.Action;
+import hudson.model.Hudson;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lists the text messages and calls sent for a build on its page, with the
+ * status Twilio last reported for each from the {@link DeliveryTracker}.
+ * Only the SIDs are saved with the build; once the tracker dropped a
+ * delivery its status shows as unknown.
+ */
+public class DeliveryAction implements Action {
+
+    private final List<Sent> deliveries = new ArrayList<Sent>();
+
+    public String getIconFileName() {
+        return null;
+    }
+
+    public String getDisplayName() {
+        return "Twilio deliveries";
+    }
+
+    public String getUrlName() {
+        return null;
+    }
+
+    /**
+     * Adds the messages and calls of a result that Twilio took.
+     *
+     * @param result the result of sending the notifications of the build
+     * @return whether any were added
+     */
+    synchronized boolean add(final NotificationResult result) {
+        boolean added = false;
+        for (NotificationResult.Outcome outcome : result.getOutcomes()) {
+            if (outcome.getSid() != null) {
+                Notification notification = outcome.getNotification();
+                this.deliveries.add(new Sent(outcome.getSid(), outcome.getChannel(), notification.getRecipient(),
+                        notification.getNumber()));
+                added = true;
+            }
+        }
+        return added;
+    }
+
+    /**
+     * @return the messages and calls sent for the build, in the order they were sent
+     */
+    public synchronized List<Sent> getDeliveries() {
+        return new ArrayList<Sent>(this.deliveries);
+    }
+
+    /**
+     * A message or call sent for the build.
+     */
+    public static final class Sent {
+        private final String sid;
+        private final Channel channel;
+        private final String recipient;
+        private final String number;
+
+        Sent(final String sid, final Channel channel, final String recipient, final String number) {
+            this.sid = sid;
+            this.channel = channel;
+            this.recipient = recipient;
+            this.number = number;
+        }
+
+        public String getSid() {
+            return this.sid;
+        }
+
+        public Channel getChannel() {
+            return this.channel;
+        }
+
+        public String getRecipient() {
+            return this.recipient;
+        }
+
+        public String getNumber() {
+            return this.number;
+        }
+
+        /**
+         * @return the status Twilio last reported, or unknown if it isn't tracked anymore
+         */
+        public String getStatus() {
+            final Hudson hudson = Hudson.getInstance();
+            final TwilioNotifier.DescriptorImpl descriptor = hudson == null ? null
+                    : hudson.getDescriptorByType(TwilioNotifier.DescriptorImpl.class);
+            final DeliveryTracker tracker = descriptor == null ? null : descriptor.getCurrentDeliveryTracker();
+            final DeliveryTracker.Delivery delivery = tracker == null ? null : tracker.get(this.sid);
+            return delivery == null ? "unknown" : delivery.getStatus();
+        }
+    }
+}
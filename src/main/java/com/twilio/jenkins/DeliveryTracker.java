@@ -0,0 +1,473 @@
+package com.twilio.jenkins;
+
+import hudson.model.Hudson;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A {@link DeliveryTracker} remembers what Twilio last said about the
+ * messages and calls that were sent, by SID, from the status callbacks taken
+ * by the {@link StatusCallbackAction}.
+ *
+ * Only a few strings per delivery are kept, in the order they were sent, and
+ * the oldest are dropped once there are more than {@link #MAX_DELIVERIES} or
+ * they are older than {@link #RETENTION_MILLIS}. The notification itself is
+ * only held on to until the delivery reached a final status, in case it has
+ * to be sent again on the other channel.
+ *
+ * Twilio may report on a message before the request that sent it returned,
+ * so a status for a SID that isn't tracked yet is kept for
+ * {@link #EARLY_STATUS_MILLIS} and applied once the delivery is tracked.
+ *
+ * The deliveries are written to a snapshot file at most once per
+ * {@link #SNAPSHOT_INTERVAL_MILLIS}, when something changed, and read back
+ * after a restart. Statuses that arrive between the last snapshot and a
+ * crash are lost, which only makes the build page show an older status.
+ */
+public final class DeliveryTracker {
+    private static final Logger LOGGER = Logger.getLogger(DeliveryTracker.class.getName());
+
+    static final int MAX_DELIVERIES = 10000;
+    static final long RETENTION_MILLIS = TimeUnit.DAYS.toMillis(7);
+    static final long SNAPSHOT_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * How long a status is kept for a SID that isn't tracked yet.
+     */
+    static final long EARLY_STATUS_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    /**
+     * The number of statuses kept for SIDs that aren't tracked yet.
+     */
+    static final int MAX_EARLY_STATUSES = 1000;
+
+    /**
+     * The status of a delivery until Twilio reported on it.
+     */
+    static final String QUEUED = "queued";
+
+    static final String FILE_NAME = "twilio-deliveries.bin";
+
+    private static final int MAGIC = 0x54574453;
+    private static final int VERSION = 1;
+
+    /**
+     * The statuses after which Twilio doesn't call back anymore, for text
+     * messages and calls.
+     */
+    private static final Set<String> FINAL = new HashSet<String>(Arrays.asList("delivered", "undelivered",
+            "failed", "completed", "busy", "no-answer", "canceled"));
+
+    /**
+     * The final statuses that mean the recipient didn't get the notification.
+     */
+    private static final Set<String> FAILED = new HashSet<String>(Arrays.asList("undelivered", "failed", "busy",
+            "no-answer"));
+
+    /**
+     * Is told about deliveries that failed.
+     */
+    public interface FailureListener {
+        /**
+         * Called for a delivery that reached a failed final status, from the
+         * thread that reported it.
+         *
+         * @param delivery the delivery
+         * @param notification the notification it sent
+         */
+        void failed(Delivery delivery, Notification notification);
+    }
+
+    /**
+     * What is known about one message or call.
+     */
+    public static final class Delivery {
+        private final String sid;
+        private final Channel channel;
+        private final String job;
+        private final String recipient;
+        private final String number;
+        private final long sent;
+        private volatile String status;
+        private volatile long updated;
+
+        /**
+         * The notification, while it may still be sent again.
+         */
+        private Notification resendable;
+
+        Delivery(final String sid, final Channel channel, final String job, final String recipient,
+                final String number, final long sent, final String status, final long updated) {
+            this.sid = sid;
+            this.channel = channel;
+            this.job = job;
+            this.recipient = recipient;
+            this.number = number;
+            this.sent = sent;
+            this.status = status;
+            this.updated = updated;
+        }
+
+        public String getSid() {
+            return this.sid;
+        }
+
+        public Channel getChannel() {
+            return this.channel;
+        }
+
+        /**
+         * @return the full name of the job, or null if it isn't known
+         */
+        public String getJob() {
+            return this.job;
+        }
+
+        public String getRecipient() {
+            return this.recipient;
+        }
+
+        public String getNumber() {
+            return this.number;
+        }
+
+        /**
+         * @return the status Twilio last reported, such as delivered or no-answer
+         */
+        public String getStatus() {
+            return this.status;
+        }
+
+        /**
+         * @return when the status was last reported, in milliseconds
+         */
+        public long getUpdated() {
+            return this.updated;
+        }
+
+        public boolean isFinal() {
+            return FINAL.contains(this.status);
+        }
+
+        public boolean isFailed() {
+            return FAILED.contains(this.status);
+        }
+
+        @Override
+        public String toString() {
+            return this.channel + " " + this.sid + " to " + this.recipient + " (" + this.number + "): " + this.status;
+        }
+    }
+
+    private final File file;
+    private final long retentionMillis;
+    private final int maxDeliveries;
+    private final ScheduledThreadPoolExecutor snapshotter;
+    private final Map<String, Delivery> deliveries = new LinkedHashMap<String, Delivery>();
+
+    /**
+     * The statuses reported for SIDs that weren't tracked yet, with the time
+     * they were reported, oldest first.
+     */
+    private final Map<String, Delivery> early = new LinkedHashMap<String, Delivery>();
+    private volatile FailureListener listener;
+    private volatile boolean dirty;
+
+    /**
+     * Creates a tracker that is only kept in memory.
+     */
+    public DeliveryTracker() {
+        this(null, RETENTION_MILLIS, MAX_DELIVERIES);
+    }
+
+    /**
+     * Creates a tracker, reading the deliveries from the last snapshot.
+     *
+     * @param file the snapshot file, or null to only keep the deliveries in memory
+     * @param retentionMillis how long a delivery is kept
+     * @param maxDeliveries how many deliveries are kept at most
+     */
+    public DeliveryTracker(final File file, final long retentionMillis, final int maxDeliveries) {
+        this.file = file;
+        this.retentionMillis = retentionMillis;
+        this.maxDeliveries = maxDeliveries;
+        if (file == null) {
+            this.snapshotter = null;
+            return;
+        }
+        try {
+            load();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not read " + file + ", starting without delivery statuses", e);
+        }
+        this.snapshotter = new ScheduledThreadPoolExecutor(1, new NotificationDispatcher.DaemonThreadFactory(
+                "TwilioNotifier delivery snapshot"));
+        this.snapshotter.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    snapshot();
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Could not write " + DeliveryTracker.this.file, e);
+                }
+            }
+        }, SNAPSHOT_INTERVAL_MILLIS, SNAPSHOT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the snapshot file in <code>$JENKINS_HOME</code>, or null if
+     *         Jenkins isn't running
+     */
+    static File getDefaultFile() {
+        final Hudson hudson = Hudson.getInstance();
+        return hudson == null ? null : new File(hudson.getRootDir(), FILE_NAME);
+    }
+
+    /**
+     * @param listener is told about failed deliveries, or null
+     */
+    public void setFailureListener(final FailureListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Starts tracking a message or call that was just sent, with the status
+     * Twilio may already have reported.
+     *
+     * @param sid the SID Twilio gave it
+     * @param notification the notification it sent
+     * @param channel the channel it was sent on
+     * @param resendable whether the {@link FailureListener} is told if it fails
+     */
+    public void sent(final String sid, final Notification notification, final Channel channel,
+            final boolean resendable) {
+        final long now = System.currentTimeMillis();
+        final Delivery delivery = new Delivery(sid, channel, notification.getJob(), notification.getRecipient(),
+                notification.getNumber(), now, QUEUED, now);
+        if (resendable) {
+            delivery.resendable = notification;
+        }
+        final Delivery reported;
+        synchronized (this) {
+            this.deliveries.put(sid, delivery);
+            expire(now);
+            reported = this.early.remove(sid);
+            if (reported != null && now - reported.updated <= EARLY_STATUS_MILLIS) {
+                delivery.status = reported.status;
+                delivery.updated = reported.updated;
+            }
+        }
+        this.dirty = true;
+        if (delivery.isFinal()) {
+            finished(delivery);
+        }
+    }
+
+    /**
+     * Records a status Twilio reported.
+     *
+     * @param sid the SID of the message or call
+     * @param status the status, such as sent, delivered or no-answer
+     * @return whether the delivery is tracked; if it isn't, the status is
+     *         kept for a while in case it is about to be
+     */
+    public boolean update(final String sid, final String status) {
+        final long now = System.currentTimeMillis();
+        final Delivery delivery;
+        synchronized (this) {
+            delivery = this.deliveries.get(sid);
+            if (delivery == null) {
+                keepEarly(sid, status, now);
+                return false;
+            }
+            if (delivery.isFinal()) {
+                // statuses may arrive out of order, a final one stays
+                return true;
+            }
+            delivery.status = status;
+            delivery.updated = now;
+        }
+        this.dirty = true;
+        if (delivery.isFinal()) {
+            finished(delivery);
+        }
+        return true;
+    }
+
+    /**
+     * @param sid the SID of a message or call
+     * @return what is known about it, or null if it isn't tracked
+     */
+    public synchronized Delivery get(final String sid) {
+        return this.deliveries.get(sid);
+    }
+
+    /**
+     * @return the number of deliveries kept
+     */
+    public synchronized int size() {
+        return this.deliveries.size();
+    }
+
+    /**
+     * Writes a snapshot and stops writing them.
+     */
+    public void close() {
+        if (this.snapshotter == null) {
+            return;
+        }
+        this.snapshotter.shutdown();
+        try {
+            snapshot();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not write " + this.file, e);
+        }
+    }
+
+    /**
+     * Drops the notification of a delivery that reached a final status, and
+     * tells the listener if it failed.
+     */
+    private void finished(final Delivery delivery) {
+        final Notification notification;
+        synchronized (this) {
+            notification = delivery.resendable;
+            delivery.resendable = null;
+        }
+        final FailureListener current = this.listener;
+        if (notification != null && delivery.isFailed() && current != null) {
+            try {
+                current.failed(delivery, notification);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Could not handle the failed delivery " + delivery, e);
+            }
+        }
+    }
+
+    /**
+     * Keeps the status reported for a SID that isn't tracked yet. Must hold
+     * the lock.
+     */
+    private void keepEarly(final String sid, final String status, final long now) {
+        final Delivery previous = this.early.get(sid);
+        if (previous != null && previous.isFinal()) {
+            return;
+        }
+        this.early.remove(sid);
+        this.early.put(sid, new Delivery(sid, null, null, null, null, now, status, now));
+        final Iterator<Delivery> oldest = this.early.values().iterator();
+        while (oldest.hasNext()) {
+            Delivery reported = oldest.next();
+            if (this.early.size() <= MAX_EARLY_STATUSES && now - reported.updated <= EARLY_STATUS_MILLIS) {
+                break;
+            }
+            oldest.remove();
+        }
+    }
+
+    /**
+     * Drops the deliveries past the limits. Must hold the lock.
+     */
+    private void expire(final long now) {
+        final Iterator<Delivery> oldest = this.deliveries.values().iterator();
+        while (oldest.hasNext()) {
+            Delivery delivery = oldest.next();
+            if (this.deliveries.size() <= this.maxDeliveries && now - delivery.sent <= this.retentionMillis) {
+                break;
+            }
+            oldest.remove();
+        }
+    }
+
+    /**
+     * Writes the deliveries to a new file and moves it over the snapshot, so
+     * a crash while writing leaves the previous one.
+     */
+    void snapshot() throws IOException {
+        if (!this.dirty || this.file == null) {
+            return;
+        }
+        this.dirty = false;
+        final Delivery[] copy;
+        synchronized (this) {
+            expire(System.currentTimeMillis());
+            copy = this.deliveries.values().toArray(new Delivery[this.deliveries.size()]);
+        }
+        final File tmp = new File(this.file.getPath() + ".tmp");
+        final FileOutputStream fos = new FileOutputStream(tmp);
+        try {
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(copy.length);
+            for (Delivery delivery : copy) {
+                out.writeUTF(delivery.sid);
+                out.writeByte(delivery.channel.ordinal());
+                out.writeUTF(delivery.job == null ? "" : delivery.job);
+                out.writeUTF(delivery.recipient);
+                out.writeUTF(delivery.number);
+                out.writeLong(delivery.sent);
+                out.writeUTF(delivery.status);
+                out.writeLong(delivery.updated);
+            }
+            out.flush();
+            fos.getFD().sync();
+        } catch (IOException e) {
+            this.dirty = true;
+            throw e;
+        } finally {
+            fos.close();
+        }
+        if (!tmp.renameTo(this.file)) {
+            // Windows doesn't rename over an existing file
+            this.file.delete();
+            if (!tmp.renameTo(this.file)) {
+                this.dirty = true;
+                throw new IOException("Could not rename " + tmp + " to " + this.file);
+            }
+        }
+    }
+
+    private void load() throws IOException {
+        if (!this.file.exists()) {
+            return;
+        }
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(this.file)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a delivery snapshot");
+            }
+            final Channel[] channels = Channel.values();
+            final int count = in.readInt();
+            synchronized (this) {
+                for (int i = 0; i < count; i++) {
+                    String sid = in.readUTF();
+                    Channel channel = channels[in.readByte()];
+                    String job = in.readUTF();
+                    Delivery delivery = new Delivery(sid, channel, job.length() == 0 ? null : job, in.readUTF(),
+                            in.readUTF(), in.readLong(), in.readUTF(), in.readLong());
+                    this.deliveries.put(sid, delivery);
+                }
+                expire(System.currentTimeMillis());
+            }
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.twilio.jenkins;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link DigestCoalescer} buffers notifications per destination number for
+ * a short window. When the window closes, or when enough notifications have
+ * piled up, the number gets a single digest listing the affected projects and
+ * their statuses instead of one text message and call per build. What a
+ * notification needs to say besides its build, such as how to acknowledge
+ * its follow-up call, is kept as a note after the list, once per digest.
+ */
+public final class DigestCoalescer {
+
+    /**
+     * Receives the notifications once their window closes.
+     */
+    public interface Sink {
+        /**
+         * Sends a digest.
+         *
+         * @param digest the digest, or the only notification if just one was buffered
+         * @param merged the notifications the digest stands for
+         */
+        void send(Notification digest, List<Notification> merged);
+    }
+
+    private final long windowMillis;
+    private final int maxSize;
+    private final Sink sink;
+    private final ScheduledThreadPoolExecutor scheduler;
+    private final ConcurrentMap<String, Batch> batches = new ConcurrentHashMap<String, Batch>();
+
+    /**
+     * Creates a coalescer.
+     *
+     * @param windowMillis how long notifications for a number are buffered
+     * @param maxSize the number of buffered notifications that flushes a number early
+     * @param sink sends the digests
+     */
+    public DigestCoalescer(final long windowMillis, final int maxSize, final Sink sink) {
+        this.windowMillis = windowMillis;
+        this.maxSize = maxSize;
+        this.sink = sink;
+        this.scheduler = new ScheduledThreadPoolExecutor(1, new NotificationDispatcher.DaemonThreadFactory(
+                "TwilioNotifier digest"));
+        // flushAll sends whatever is still buffered
+        this.scheduler.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    /**
+     * Buffers a notification until the window of its number closes.
+     *
+     * @param notification the notification
+     * @param summary the line describing the notification in a digest, e.g. the project and status
+     */
+    public void offer(final Notification notification, final String summary) {
+        offer(notification, summary, null);
+    }
+
+    /**
+     * Buffers a notification until the window of its number closes.
+     *
+     * @param notification the notification
+     * @param summary the line describing the notification in a digest, e.g. the project and status
+     * @param note what the digest has to say for the notification besides the summary, or null
+     */
+    public void offer(final Notification notification, final String summary, final String note) {
+        final String number = notification.getNumber();
+        while (true) {
+            Batch batch = batches.get(number);
+            if (batch == null) {
+                Batch fresh = new Batch(number);
+                batch = batches.putIfAbsent(number, fresh);
+                if (batch == null) {
+                    batch = fresh;
+                    schedule(fresh);
+                }
+            }
+            int size = batch.add(notification, summary, note);
+            if (size < 0) {
+                // flushed concurrently, start a new batch
+                continue;
+            }
+            if (size >= maxSize) {
+                final Batch full = batch;
+                try {
+                    scheduler.execute(new Runnable() {
+                        public void run() {
+                            flush(full);
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    flush(full);
+                }
+            }
+            return;
+        }
+    }
+
+    /**
+     * @return the number of numbers with buffered notifications
+     */
+    public int getPendingCount() {
+        return batches.size();
+    }
+
+    /**
+     * Sends everything that is buffered right away and stops the timer thread.
+     */
+    public void flushAll() {
+        scheduler.shutdown();
+        for (Batch batch : new ArrayList<Batch>(batches.values())) {
+            flush(batch);
+        }
+    }
+
+    /**
+     * Describes several builds in one message.
+     *
+     * @param summaries the lines describing the builds
+     * @return e.g. "2 builds need attention: a FAILURE, b UNSTABLE"
+     */
+    static String describe(final List<String> summaries) {
+        final StringBuilder sb = new StringBuilder();
+        sb.append(summaries.size()).append(" builds need attention:");
+        for (int i = 0; i < summaries.size(); i++) {
+            sb.append(i == 0 ? " " : ", ").append(summaries.get(i));
+        }
+        return sb.toString();
+    }
+
+    private void schedule(final Batch batch) {
+        try {
+            scheduler.schedule(new Runnable() {
+                public void run() {
+                    flush(batch);
+                }
+            }, windowMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // already shut down, send it now
+            flush(batch);
+        }
+    }
+
+    private void flush(final Batch batch) {
+        batches.remove(batch.number, batch);
+        Notification digest = batch.close();
+        if (digest != null) {
+            sink.send(digest, batch.getNotifications());
+        }
+    }
+
+    /**
+     * The notifications buffered for one number.
+     */
+    private static final class Batch {
+        private final String number;
+        private final List<Notification> notifications = new ArrayList<Notification>();
+        private final List<String> summaries = new ArrayList<String>();
+        private final Set<String> notes = new LinkedHashSet<String>();
+        private boolean closed;
+
+        Batch(final String number) {
+            this.number = number;
+        }
+
+        /**
+         * @return the new size of the batch, or -1 if it was already flushed
+         */
+        synchronized int add(final Notification notification, final String summary, final String note) {
+            if (closed) {
+                return -1;
+            }
+            notifications.add(notification);
+            summaries.add(summary);
+            if (note != null) {
+                notes.add(note);
+            }
+            return notifications.size();
+        }
+
+        /**
+         * @return the buffered notifications, which no longer change once the batch is closed
+         */
+        synchronized List<Notification> getNotifications() {
+            return Collections.unmodifiableList(notifications);
+        }
+
+        /**
+         * @return the single notification to send for this batch, or null if
+         *         it was already flushed
+         */
+        synchronized Notification close() {
+            if (closed || notifications.isEmpty()) {
+                closed = true;
+                return null;
+            }
+            closed = true;
+            if (notifications.size() == 1) {
+                return notifications.get(0);
+            }
+            boolean sms = false;
+            boolean call = false;
+            // the digest counts for a job only if all builds in it are of that job
+            String job = notifications.get(0).getJob();
+            for (Notification notification : notifications) {
+                sms |= notification.isSms();
+                call |= notification.isCall();
+                if (job != null && !job.equals(notification.getJob())) {
+                    job = null;
+                }
+            }
+            StringBuilder sb = new StringBuilder(describe(summaries));
+            for (String note : notes) {
+                sb.append(sb.charAt(sb.length() - 1) == '.' ? " " : ". ").append(note);
+            }
+            String message = sb.toString();
+            return new Notification(job, notifications.get(0).getRecipient(), number, message, null, sms, call);
+        }
+    }
+}
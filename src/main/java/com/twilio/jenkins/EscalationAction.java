@@ -0,0 +1,131 @@
+package com.twilio.jenkins;
+
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.Hudson;
+import hudson.model.UnprotectedRootAction;
+import hudson.security.csrf.CrumbIssuer;
+
+import java.io.IOException;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+/**
+ * Takes the acknowledgements that keep the {@link EscalationScheduler} from
+ * placing a call:
+ * <ul>
+ * <li><code>/twilio-ack/&lt;token&gt;</code>, the link in the text message;
+ * the random token is what keeps anybody else from using it. Messaging apps
+ * and carriers fetch links to show a preview, so opening the link only shows
+ * a button, and it takes the POST of that button to acknowledge.</li>
+ * <li><code>/twilio-ack/sms</code>, the messaging webhook of the Twilio
+ * number, which acknowledges every call pending for the number that replied.
+ * Only requests signed with the auth token are taken.</li>
+ * </ul>
+ * Neither the recipient's phone nor Twilio log in, so the action is
+ * unprotected.
+ */
+@Extension
+public class EscalationAction implements UnprotectedRootAction {
+
+    static final String URL_NAME = "twilio-ack";
+
+    public String getIconFileName() {
+        return null;
+    }
+
+    public String getDisplayName() {
+        return "Twilio call acknowledgement";
+    }
+
+    public String getUrlName() {
+        return URL_NAME;
+    }
+
+    /**
+     * Asks to confirm the acknowledgement on a GET, and acknowledges the
+     * call a token from a text message was handed out for on a POST.
+     */
+    public void doDynamic(final StaplerRequest req, final StaplerResponse rsp) throws IOException {
+        String token = req.getRestOfPath();
+        if (token.startsWith("/")) {
+            token = token.substring(1);
+        }
+        final EscalationScheduler scheduler = getScheduler();
+        final boolean post = "POST".equals(req.getMethod());
+        if (scheduler != null && !post && scheduler.isPending(token)) {
+            rsp.setContentType("text/html;charset=UTF-8");
+            rsp.getWriter().print(confirmForm(req));
+            return;
+        }
+        rsp.setContentType("text/plain;charset=UTF-8");
+        if (scheduler != null && post && scheduler.acknowledge(token)) {
+            rsp.getWriter().print("Acknowledged, you won't be called.");
+        } else {
+            rsp.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            rsp.getWriter().print("Nothing to acknowledge, the call was already placed or cancelled.");
+        }
+    }
+
+    /**
+     * Acknowledges the calls pending for the sender of an incoming text
+     * message.
+     */
+    @SuppressWarnings("unchecked")
+    public void doSms(final StaplerRequest req, final StaplerResponse rsp) throws IOException {
+        final TwilioNotifier.DescriptorImpl descriptor = getDescriptor();
+        if (descriptor == null || descriptor.getUrl() == null) {
+            rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        final String url = descriptor.getAckUrl() + "sms";
+        if (!TwilioSignature.isValid(descriptor.getAuthToken(), url, (Map<String, String[]>) req.getParameterMap(),
+                req.getHeader(TwilioSignature.HEADER))) {
+            rsp.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+        final String from = PhoneNumbers.normalize(Util.fixNull(req.getParameter("From")));
+        final EscalationScheduler scheduler = descriptor.getCurrentEscalationScheduler();
+        final int acknowledged = from == null || scheduler == null ? 0 : scheduler.acknowledgeNumber(from);
+        rsp.setContentType("application/xml;charset=UTF-8");
+        if (acknowledged == 0) {
+            rsp.getWriter().print("<?xml version=\"1.0\" encoding=\"UTF-8\"?><Response/>");
+        } else {
+            rsp.getWriter().print("<?xml version=\"1.0\" encoding=\"UTF-8\"?><Response><Message>Acknowledged, "
+                    + acknowledged + (acknowledged == 1 ? " call" : " calls") + " cancelled.</Message></Response>");
+        }
+    }
+
+    /**
+     * Returns the page with the button that acknowledges the call, posting
+     * back to the url it was opened at along with the crumb Jenkins asks for
+     * when CSRF protection is on.
+     */
+    private static String confirmForm(final StaplerRequest req) {
+        final StringBuilder sb = new StringBuilder("<!DOCTYPE html><html><head>"
+                + "<meta name=\"viewport\" content=\"width=device-width\"><title>Acknowledge</title></head>"
+                + "<body><form method=\"post\"><p>A call will follow the text message unless you acknowledge it.</p>");
+        final Hudson hudson = Hudson.getInstance();
+        final CrumbIssuer crumbIssuer = hudson == null ? null : hudson.getCrumbIssuer();
+        if (crumbIssuer != null) {
+            sb.append("<input type=\"hidden\" name=\"").append(Util.escape(crumbIssuer.getCrumbRequestField()))
+                    .append("\" value=\"").append(Util.escape(crumbIssuer.getCrumb(req))).append("\">");
+        }
+        return sb.append("<button type=\"submit\">Acknowledge, don't call me</button></form></body></html>")
+                .toString();
+    }
+
+    private static EscalationScheduler getScheduler() {
+        final TwilioNotifier.DescriptorImpl descriptor = getDescriptor();
+        return descriptor == null ? null : descriptor.getCurrentEscalationScheduler();
+    }
+
+    private static TwilioNotifier.DescriptorImpl getDescriptor() {
+        final Hudson hudson = Hudson.getInstance();
+        return hudson == null ? null : hudson.getDescriptorByType(TwilioNotifier.DescriptorImpl.class);
+    }
+}
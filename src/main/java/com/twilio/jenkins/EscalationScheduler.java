@@ -0,0 +1,350 @@
+package com.twilio.jenkins;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An {@link EscalationScheduler} holds back the calls of notifications whose
+ * text message went out first. A call is placed once its delay has passed,
+ * unless it was acknowledged, through the link in the text message or by
+ * replying to it, or the job recovered in the meantime.
+ *
+ * Like a digest, the calls to a number are grouped: a call scheduled while
+ * another one to the same number is pending joins it, is placed with it and
+ * is acknowledged by the same token. A group of several calls reads the
+ * summaries of their builds, so fifty failed builds make one call.
+ *
+ * The pending calls sit in a hashed timer wheel: an array of slots, each a
+ * doubly linked list of the calls due when the wheel turns to it. A single
+ * thread turns the wheel once per tick, so scheduling and cancelling a call
+ * is constant time however many are pending, and an idle wheel costs no more
+ * than one wake-up per tick. Calls due further out than one turn of the wheel
+ * wait for the number of turns left.
+ *
+ * Pending calls are only kept in memory and don't survive a restart.
+ */
+public final class EscalationScheduler {
+
+    /**
+     * Places the calls that are due.
+     */
+    public interface Sink {
+        /**
+         * Places a call that wasn't acknowledged in time.
+         *
+         * @param call the notification to call for
+         */
+        void escalate(Notification call);
+    }
+
+    /**
+     * The number of slots of the wheel, a power of two.
+     */
+    static final int WHEEL_SIZE = 512;
+
+    private final long tickMillis;
+    private final Sink sink;
+    private final ScheduledThreadPoolExecutor ticker;
+    private final Escalation[] wheel = new Escalation[WHEEL_SIZE];
+    private int cursor;
+    private int pending;
+    private final Map<String, Escalation> byToken = new HashMap<String, Escalation>();
+    private final Map<String, Set<Escalation>> byJob = new HashMap<String, Set<Escalation>>();
+    private final Map<String, Escalation> byNumber = new HashMap<String, Escalation>();
+
+    /**
+     * Creates a scheduler and starts turning its wheel.
+     *
+     * @param tickMillis how often the wheel turns, which is how late a call may be placed
+     * @param sink places the calls
+     */
+    public EscalationScheduler(final long tickMillis, final Sink sink) {
+        this.tickMillis = tickMillis;
+        this.sink = sink;
+        this.ticker = new ScheduledThreadPoolExecutor(1, new NotificationDispatcher.DaemonThreadFactory(
+                "TwilioNotifier escalation"));
+        this.ticker.scheduleAtFixedRate(new Runnable() {
+            public void run() {
+                tick();
+            }
+        }, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Schedules a call, described by its own message if it joins others.
+     *
+     * @param call the notification to call for
+     * @param delayMillis how long to wait for an acknowledgement
+     * @return the token that acknowledges the call
+     */
+    public String schedule(final Notification call, final long delayMillis) {
+        return schedule(call, call.getMessage(), delayMillis);
+    }
+
+    /**
+     * Schedules a call, or adds it to the call pending for its number.
+     *
+     * @param call the notification to call for
+     * @param summary the line describing the build in a call for several builds
+     * @param delayMillis how long to wait for an acknowledgement; a call
+     *        joining a pending one is placed when that one is due
+     * @return the token that acknowledges the call, and the others to the same number
+     */
+    public String schedule(final Notification call, final String summary, final long delayMillis) {
+        final long ticks = Math.max(1, (delayMillis + tickMillis - 1) / tickMillis);
+        final Escalation escalation = new Escalation(Tokens.next(), call.getNumber());
+        escalation.add(call, summary);
+        synchronized (this) {
+            final Escalation joined = byNumber.get(call.getNumber());
+            if (joined != null) {
+                joined.add(call, summary);
+                pending++;
+                index(byJob, call.getJob(), joined);
+                return joined.token;
+            }
+            escalation.rounds = (ticks - 1) / WHEEL_SIZE;
+            escalation.slot = (int) ((cursor + ticks) & (WHEEL_SIZE - 1));
+            escalation.next = wheel[escalation.slot];
+            if (escalation.next != null) {
+                escalation.next.prev = escalation;
+            }
+            wheel[escalation.slot] = escalation;
+            pending++;
+            byToken.put(escalation.token, escalation);
+            index(byJob, call.getJob(), escalation);
+            byNumber.put(escalation.number, escalation);
+        }
+        return escalation.token;
+    }
+
+    /**
+     * @param token a token handed out for a text message
+     * @return whether the calls it was handed out for are still pending
+     */
+    public synchronized boolean isPending(final String token) {
+        return byToken.containsKey(token);
+    }
+
+    /**
+     * Cancels the calls a token was handed out for.
+     *
+     * @param token the token
+     * @return whether the calls were still pending
+     */
+    public boolean acknowledge(final String token) {
+        final Escalation escalation;
+        synchronized (this) {
+            escalation = byToken.get(token);
+            if (escalation == null) {
+                return false;
+            }
+            remove(escalation);
+        }
+        suppressed(escalation.calls);
+        return true;
+    }
+
+    /**
+     * Cancels the calls pending for a phone number, when its owner replied to
+     * the text message.
+     *
+     * @param number the phone number
+     * @return the number of calls cancelled
+     */
+    public int acknowledgeNumber(final String number) {
+        final Escalation escalation;
+        synchronized (this) {
+            escalation = number == null ? null : byNumber.get(number);
+            if (escalation == null) {
+                return 0;
+            }
+            remove(escalation);
+        }
+        suppressed(escalation.calls);
+        return escalation.calls.size();
+    }
+
+    /**
+     * Cancels the calls pending for a job, when it recovered. The calls for
+     * other jobs that were grouped with them are still placed.
+     *
+     * @param job the full name of the job
+     * @return the number of calls cancelled
+     */
+    public int cancel(final String job) {
+        final List<Notification> cancelled = new ArrayList<Notification>();
+        synchronized (this) {
+            Set<Escalation> escalations = job == null ? null : byJob.get(job);
+            if (escalations == null) {
+                return 0;
+            }
+            for (Escalation escalation : new ArrayList<Escalation>(escalations)) {
+                int before = cancelled.size();
+                escalation.removeJob(job, cancelled);
+                pending -= cancelled.size() - before;
+                unindex(byJob, job, escalation);
+                if (escalation.calls.isEmpty()) {
+                    remove(escalation);
+                }
+            }
+        }
+        suppressed(cancelled);
+        return cancelled.size();
+    }
+
+    /**
+     * @return the number of calls waiting to be placed
+     */
+    public synchronized int getPendingCount() {
+        return pending;
+    }
+
+    /**
+     * Stops turning the wheel; the calls still pending are dropped.
+     */
+    public void shutdown() {
+        ticker.shutdownNow();
+    }
+
+    /**
+     * Turns the wheel by one slot and places the calls that are due.
+     */
+    void tick() {
+        final List<Escalation> due = new ArrayList<Escalation>();
+        synchronized (this) {
+            cursor = (cursor + 1) & (WHEEL_SIZE - 1);
+            Escalation escalation = wheel[cursor];
+            while (escalation != null) {
+                Escalation next = escalation.next;
+                if (escalation.rounds > 0) {
+                    escalation.rounds--;
+                } else {
+                    remove(escalation);
+                    due.add(escalation);
+                }
+                escalation = next;
+            }
+        }
+        for (Escalation escalation : due) {
+            if (escalation.calls.size() > 1) {
+                for (Notification call : escalation.calls) {
+                    NotificationMetrics.INSTANCE.count(NotificationMetrics.Event.SUPPRESSED, call, Channel.CALL);
+                }
+            }
+            sink.escalate(escalation.merge());
+        }
+    }
+
+    /**
+     * Unlinks an escalation from its slot and the indexes. Must hold the lock.
+     */
+    private void remove(final Escalation escalation) {
+        if (escalation.prev == null) {
+            wheel[escalation.slot] = escalation.next;
+        } else {
+            escalation.prev.next = escalation.next;
+        }
+        if (escalation.next != null) {
+            escalation.next.prev = escalation.prev;
+        }
+        escalation.prev = null;
+        escalation.next = null;
+        pending -= escalation.calls.size();
+        byToken.remove(escalation.token);
+        for (Notification call : escalation.calls) {
+            unindex(byJob, call.getJob(), escalation);
+        }
+        byNumber.remove(escalation.number);
+    }
+
+    private static void index(final Map<String, Set<Escalation>> index, final String key,
+            final Escalation escalation) {
+        if (key == null) {
+            return;
+        }
+        Set<Escalation> escalations = index.get(key);
+        if (escalations == null) {
+            escalations = new LinkedHashSet<Escalation>();
+            index.put(key, escalations);
+        }
+        escalations.add(escalation);
+    }
+
+    private static void unindex(final Map<String, Set<Escalation>> index, final String key,
+            final Escalation escalation) {
+        if (key == null) {
+            return;
+        }
+        Set<Escalation> escalations = index.get(key);
+        if (escalations != null && escalations.remove(escalation) && escalations.isEmpty()) {
+            index.remove(key);
+        }
+    }
+
+    private static void suppressed(final List<Notification> calls) {
+        for (Notification call : calls) {
+            NotificationMetrics.INSTANCE.count(NotificationMetrics.Event.SUPPRESSED, call, Channel.CALL);
+        }
+    }
+
+    /**
+     * The pending calls to one number, linked into their slot of the wheel.
+     * Only changed while holding the lock of the scheduler.
+     */
+    private static final class Escalation {
+        final String token;
+        final String number;
+        final List<Notification> calls = new ArrayList<Notification>();
+        final List<String> summaries = new ArrayList<String>();
+        long rounds;
+        int slot;
+        Escalation prev;
+        Escalation next;
+
+        Escalation(final String token, final String number) {
+            this.token = token;
+            this.number = number;
+        }
+
+        void add(final Notification call, final String summary) {
+            calls.add(call);
+            summaries.add(summary);
+        }
+
+        /**
+         * Moves the calls for a job to a list.
+         */
+        void removeJob(final String job, final List<Notification> removed) {
+            for (int i = calls.size() - 1; i >= 0; i--) {
+                if (job.equals(calls.get(i).getJob())) {
+                    removed.add(calls.remove(i));
+                    summaries.remove(i);
+                }
+            }
+        }
+
+        /**
+         * @return the call to place for all calls of the group
+         */
+        Notification merge() {
+            if (calls.size() == 1) {
+                return calls.get(0);
+            }
+            // counts for a job only if all calls are for that job
+            String job = calls.get(0).getJob();
+            for (Notification call : calls) {
+                if (job != null && !job.equals(call.getJob())) {
+                    job = null;
+                }
+            }
+            return new Notification(job, calls.get(0).getRecipient(), number, DigestCoalescer.describe(summaries),
+                    null, false, true);
+        }
+    }
+}
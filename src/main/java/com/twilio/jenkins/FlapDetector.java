@@ -0,0 +1,211 @@
+package com.twilio.jenkins;
+
+import hudson.Extension;
+import hudson.model.Hudson;
+import hudson.model.Item;
+import hudson.model.Result;
+import hudson.model.listeners.ItemListener;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A {@link FlapDetector} decides whether a build is worth a notification,
+ * given the recent history of its job.
+ *
+ * For every job it keeps the outcome of the last {@link #HISTORY} builds as
+ * bits of an int, and which result was last notified when. A job
+ * whose result changed at least a threshold number of times within that
+ * history is flapping: instead of a failure and a recovery notification for
+ * every build, a single "flapping" notification is sent once per window.
+ * A job that isn't flapping doesn't get the same result notified twice in a
+ * row within the window.
+ *
+ * The window and the threshold can be changed without losing the history;
+ * jobs are forgotten when they are deleted or renamed.
+ */
+public final class FlapDetector {
+
+    /**
+     * The number of builds per job whose results are kept.
+     */
+    public static final int HISTORY = 10;
+
+    /**
+     * What to do with a build.
+     */
+    public enum Decision {
+        /**
+         * Send the notifications.
+         */
+        NOTIFY,
+        /**
+         * Send nothing, the same was notified within the window.
+         */
+        SUPPRESS,
+        /**
+         * Send one message saying the job is flapping instead of the
+         * notifications.
+         */
+        FLAPPING
+    }
+
+    private volatile long windowMillis;
+    private volatile int threshold;
+    private final ConcurrentMap<String, History> jobs = new ConcurrentHashMap<String, History>();
+
+    /**
+     * Creates a detector.
+     *
+     * @param windowMillis how long the same result, or that the job is
+     *        flapping, isn't notified again
+     * @param threshold the number of result changes within the last
+     *        {@link #HISTORY} builds that counts as flapping
+     */
+    public FlapDetector(final long windowMillis, final int threshold) {
+        configure(windowMillis, threshold);
+    }
+
+    /**
+     * Changes the window and the threshold, keeping the history of the jobs.
+     *
+     * @param windowMillis how long the same result, or that the job is
+     *        flapping, isn't notified again
+     * @param threshold the number of result changes within the last
+     *        {@link #HISTORY} builds that counts as flapping
+     */
+    public void configure(final long windowMillis, final int threshold) {
+        this.windowMillis = windowMillis;
+        this.threshold = threshold;
+    }
+
+    /**
+     * Records the result of a build and decides whether to notify for it.
+     *
+     * @param job the full name of the job
+     * @param result the result of the build
+     * @param notify whether the build would be notified without the
+     *        detector; its result is recorded either way
+     * @param now the current time in milliseconds
+     * @return what to do
+     */
+    public Decision record(final String job, final Result result, final boolean notify, final long now) {
+        History history = jobs.get(job);
+        if (history == null) {
+            History created = new History();
+            history = jobs.putIfAbsent(job, created);
+            if (history == null) {
+                history = created;
+            }
+        }
+        return history.record(result, notify, now);
+    }
+
+    /**
+     * Returns how many times the result of a job changed within its recent
+     * builds.
+     *
+     * @param job the full name of the job
+     * @return the number of changes, 0 for an unknown job
+     */
+    public int getChanges(final String job) {
+        History history = jobs.get(job);
+        return history == null ? 0 : history.getChanges();
+    }
+
+    /**
+     * Forgets a job, for instance after it was deleted or renamed.
+     *
+     * @param job the full name of the job
+     */
+    public void forget(final String job) {
+        jobs.remove(job);
+    }
+
+    /**
+     * Forgets the history and the {@link NotificationMetrics} of jobs that
+     * are deleted or renamed, so that a new job of the same name starts
+     * afresh and neither grows with every job that ever existed.
+     */
+    @Extension
+    public static final class JobListener extends ItemListener {
+        @Override
+        public void onDeleted(final Item item) {
+            forgetJob(item.getFullName());
+        }
+
+        @Override
+        public void onRenamed(final Item item, final String oldName, final String newName) {
+            final String fullName = item.getFullName();
+            forgetJob(fullName.substring(0, fullName.length() - newName.length()) + oldName);
+        }
+
+        private static void forgetJob(final String job) {
+            NotificationMetrics.INSTANCE.forget(job);
+            final Hudson hudson = Hudson.getInstance();
+            final TwilioNotifier.DescriptorImpl descriptor = hudson == null ? null
+                    : hudson.getDescriptorByType(TwilioNotifier.DescriptorImpl.class);
+            final FlapDetector detector = descriptor == null ? null : descriptor.getCurrentFlapDetector();
+            if (detector != null) {
+                detector.forget(job);
+            }
+        }
+    }
+
+    /**
+     * The recent results of one job. Bit 0 of {@link #bits} is the latest
+     * build, a set bit a failed or unstable build.
+     */
+    private final class History {
+        private int bits;
+        private int count;
+        private Kind lastKind;
+        private long lastNotified;
+        private long lastFlapping;
+
+        synchronized Decision record(final Result result, final boolean notify, final long now) {
+            final Kind kind = Kind.of(result);
+            if (kind != Kind.OTHER) {
+                bits = (bits << 1) | (kind == Kind.FAILURE ? 1 : 0);
+                count = Math.min(count + 1, HISTORY);
+            }
+            if (!notify) {
+                return Decision.SUPPRESS;
+            }
+            if (getChanges() >= threshold) {
+                if (lastFlapping != 0 && now - lastFlapping < windowMillis) {
+                    return Decision.SUPPRESS;
+                }
+                lastFlapping = now;
+                return Decision.FLAPPING;
+            }
+            lastFlapping = 0;
+            if (kind == lastKind && now - lastNotified < windowMillis) {
+                return Decision.SUPPRESS;
+            }
+            lastKind = kind;
+            lastNotified = now;
+            return Decision.NOTIFY;
+        }
+
+        synchronized int getChanges() {
+            if (count < 2) {
+                return 0;
+            }
+            // adjacent builds with different results differ in adjacent bits
+            int mask = (1 << (count - 1)) - 1;
+            return Integer.bitCount((bits ^ (bits >>> 1)) & mask);
+        }
+    }
+
+    private enum Kind {
+        FAILURE, SUCCESS, OTHER;
+
+        static Kind of(final Result result) {
+            if (result == Result.FAILURE || result == Result.UNSTABLE) {
+                return FAILURE;
+            }
+            return result == Result.SUCCESS ? SUCCESS : OTHER;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.twilio.jenkins;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A {@link LatencyHistogram} records durations in log-linear buckets, the way
+ * HdrHistogram does: every power of two is split into 32 buckets, so a
+ * percentile is off by at most about 3% however long the durations get.
+ * Recording is lock-free and doesn't allocate, so it can be done from any
+ * thread on the hot path.
+ *
+ * Durations are recorded in microseconds.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a duration.
+     *
+     * @param nanos the duration in nanoseconds
+     */
+    public void recordNanos(final long nanos) {
+        record(Math.max(0, nanos / 1000));
+    }
+
+    /**
+     * Records a duration.
+     *
+     * @param micros the duration in microseconds
+     */
+    public void record(final long micros) {
+        counts.incrementAndGet(bucket(micros));
+        count.incrementAndGet();
+        sum.addAndGet(micros);
+        long current = max.get();
+        while (micros > current && !max.compareAndSet(current, micros)) {
+            current = max.get();
+        }
+    }
+
+    static int bucket(final long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int shift = magnitude - SUB_BUCKET_BITS;
+        int sub = (int) (value >>> shift) - SUB_BUCKETS;
+        return SUB_BUCKETS + shift * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * @return the largest value that falls into the bucket
+     */
+    static long highestInBucket(final int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+        long sub = (bucket - SUB_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+        long next = (sub + 1) << shift;
+        return next <= 0 ? Long.MAX_VALUE : next - 1;
+    }
+
+    /**
+     * @return the number of recorded durations
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return the mean duration in microseconds, 0 if nothing was recorded
+     */
+    public double getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : (double) sum.get() / n;
+    }
+
+    /**
+     * @return the longest duration in microseconds
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns a percentile. Recording may go on while this runs, so the
+     * result is approximate in that respect too.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the duration in microseconds that the given percentage of the
+     *         recorded durations didn't exceed, 0 if nothing was recorded
+     */
+    public long getPercentile(final double percentile) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestInBucket(i), getMax());
+            }
+        }
+        return getMax();
+    }
+}
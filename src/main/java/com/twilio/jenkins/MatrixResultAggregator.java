@@ -0,0 +1,78 @@
+package com.twilio.jenkins;
+
+import hudson.Launcher;
+import hudson.matrix.MatrixAggregator;
+import hudson.matrix.MatrixBuild;
+import hudson.matrix.MatrixRun;
+import hudson.model.BuildListener;
+import hudson.model.Result;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the results of the configurations of a matrix build, whose own
+ * notifications the {@link TwilioNotifier} skips, and notifies once for the
+ * whole build when it finished. Every recipient gets one message naming the
+ * configurations that weren't successful, instead of one per configuration.
+ */
+final class MatrixResultAggregator extends MatrixAggregator {
+
+    /**
+     * The number of unsuccessful configurations named in the message; the
+     * rest are only counted.
+     */
+    static final int MAX_LISTED = 3;
+
+    private final TwilioNotifier notifier;
+    private final List<String> unsuccessful = new ArrayList<String>();
+    private int total;
+
+    MatrixResultAggregator(final TwilioNotifier notifier, final MatrixBuild build, final Launcher launcher,
+            final BuildListener listener) {
+        super(build, launcher, listener);
+        this.notifier = notifier;
+    }
+
+    @Override
+    public boolean endRun(final MatrixRun run) {
+        this.total++;
+        final Result result = run.getResult();
+        if (result != null && result.isWorseThan(Result.SUCCESS)) {
+            this.unsuccessful.add(run.getProject().getName());
+        }
+        return true;
+    }
+
+    @Override
+    public boolean endBuild() {
+        return this.notifier.notifyFor(this.build, describe(this.unsuccessful, this.total), this.listener);
+    }
+
+    /**
+     * Describes the configurations that weren't successful, to follow the
+     * result of the build.
+     *
+     * @param unsuccessful the names of the configurations that weren't successful
+     * @param total the number of configurations
+     * @return e.g. "in 4 of 30 configurations: jdk=6, jdk=7, jdk=8 and 1 more", or null if all were successful
+     */
+    static String describe(final List<String> unsuccessful, final int total) {
+        if (unsuccessful.isEmpty()) {
+            return null;
+        }
+        final StringBuilder sb = new StringBuilder("in ").append(unsuccessful.size()).append(" of ").append(total)
+                .append(total == 1 ? " configuration: " : " configurations: ");
+        final int listed = Math.min(unsuccessful.size(), MAX_LISTED);
+        for (int i = 0; i < listed; i++) {
+            if (i > 0) {
+                sb.append(i == listed - 1 && listed == unsuccessful.size() ? " and " : ", ");
+            }
+            sb.append(unsuccessful.get(i));
+        }
+        if (listed < unsuccessful.size()) {
+            sb.append(" and ").append(unsuccessful.size() - listed).append(" more");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,159 @@
+package com.twilio.jenkins;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link MessageTemplate} is a message parsed once into literal text and
+ * <code>%NAME%</code> placeholders, so it can be rendered in a single pass
+ * without any regular expressions. Placeholder values are inserted as is, so
+ * they may contain any character including <code>$</code> and <code>\</code>.
+ *
+ * Templates are immutable and may be rendered from several threads at once.
+ */
+public final class MessageTemplate {
+
+    private static final int MAX_RETAINED_BUFFER = 4096;
+
+    private static final ThreadLocal<StringBuilder> BUFFER = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(256);
+        }
+    };
+
+    /**
+     * The text around the placeholders; always one longer than {@link #keys}.
+     */
+    private final String[] literals;
+
+    /**
+     * The placeholders, including the surrounding <code>%</code> characters.
+     */
+    private final String[] keys;
+
+    private final int literalLength;
+
+    private MessageTemplate(final String[] literals, final String[] keys) {
+        this.literals = literals;
+        this.keys = keys;
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.literalLength = length;
+    }
+
+    /**
+     * Parses a template.
+     *
+     * @param template the template text, may be null
+     * @return the compiled template
+     */
+    public static MessageTemplate compile(final String template) {
+        final List<String> literals = new ArrayList<String>();
+        final List<String> keys = new ArrayList<String>();
+        if (template == null) {
+            literals.add("");
+        } else {
+            int literalStart = 0;
+            int i = template.indexOf('%');
+            while (i >= 0) {
+                int end = placeholderEnd(template, i);
+                if (end < 0) {
+                    i = template.indexOf('%', i + 1);
+                    continue;
+                }
+                literals.add(template.substring(literalStart, i));
+                keys.add(template.substring(i, end));
+                literalStart = end;
+                i = template.indexOf('%', end);
+            }
+            literals.add(template.substring(literalStart));
+        }
+        return new MessageTemplate(literals.toArray(new String[literals.size()]), keys.toArray(new String[keys.size()]));
+    }
+
+    /**
+     * Returns the end (exclusive) of the placeholder starting at the given
+     * <code>%</code>, or -1 if there is no placeholder there.
+     */
+    private static int placeholderEnd(final String template, final int start) {
+        for (int i = start + 1; i < template.length(); i++) {
+            char c = template.charAt(i);
+            if (c == '%') {
+                return i > start + 1 ? i + 1 : -1;
+            }
+            if (!isPlaceholderChar(c)) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isPlaceholderChar(final char c) {
+        return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '-' || c == '_';
+    }
+
+    /**
+     * Renders the template. Placeholders without a value are left as they are.
+     *
+     * @param values the placeholder values, keyed by placeholder including the
+     *            <code>%</code> characters
+     * @return the rendered message
+     */
+    public String render(final Map<String, String> values) {
+        if (keys.length == 0) {
+            return literals[0];
+        }
+        StringBuilder sb = BUFFER.get();
+        sb.setLength(0);
+        render(values, sb);
+        String result = sb.toString();
+        if (sb.capacity() > MAX_RETAINED_BUFFER) {
+            BUFFER.remove();
+        }
+        return result;
+    }
+
+    /**
+     * Renders the template into the given builder.
+     *
+     * @param values the placeholder values
+     * @param sb the builder to append to
+     */
+    public void render(final Map<String, String> values, final StringBuilder sb) {
+        sb.ensureCapacity(sb.length() + literalLength + 16 * keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            sb.append(literals[i]);
+            String value = values.get(keys[i]);
+            sb.append(value != null ? value : keys[i]);
+        }
+        sb.append(literals[keys.length]);
+    }
+
+    /**
+     * Checks whether the template uses a placeholder.
+     *
+     * @param key the placeholder, including the <code>%</code> characters
+     * @return true if the template contains the placeholder
+     */
+    public boolean contains(final String key) {
+        for (String k : keys) {
+            if (k.equals(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < keys.length; i++) {
+            sb.append(literals[i]).append(keys[i]);
+        }
+        return sb.append(literals[keys.length]).toString();
+    }
+}
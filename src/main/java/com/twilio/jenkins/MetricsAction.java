@@ -0,0 +1,37 @@
+package com.twilio.jenkins;
+
+import hudson.Extension;
+import hudson.model.RootAction;
+
+import java.io.IOException;
+
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+/**
+ * Serves the {@link NotificationMetrics} as JSON at
+ * <code>/twilio-metrics/</code>, for monitoring systems to scrape. Like every
+ * other page it needs read access to Jenkins.
+ */
+@Extension
+public class MetricsAction implements RootAction {
+
+    public String getIconFileName() {
+        // not shown in the side panel
+        return null;
+    }
+
+    public String getDisplayName() {
+        return "Twilio notifier metrics";
+    }
+
+    public String getUrlName() {
+        return "twilio-metrics";
+    }
+
+    public void doIndex(final StaplerRequest req, final StaplerResponse rsp) throws IOException {
+        rsp.setContentType("application/json;charset=UTF-8");
+        rsp.setHeader("Cache-Control", "no-cache");
+        rsp.getWriter().print(NotificationMetrics.INSTANCE.toJSON().toString(2));
+    }
+}
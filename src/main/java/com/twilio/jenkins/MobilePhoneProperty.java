@@ -6,9 +6,14 @@ import hudson.Extension;
 import hudson.model.User;
 import hudson.model.UserProperty;
 import hudson.model.UserPropertyDescriptor;
+import hudson.util.FormValidation;
+
+import java.util.logging.Logger;
+
 import net.sf.json.JSONObject;
 
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.export.Exported;
 import org.kohsuke.stapler.export.ExportedBean;
@@ -23,14 +28,26 @@ public class MobilePhoneProperty extends UserProperty {
 	@Extension
     public static final DescriptorImpl DESCRIPTOR = new DescriptorImpl();
 
+    private static final Logger LOGGER = Logger.getLogger(MobilePhoneProperty.class.getName());
+
     private String mobilephone;
 
+    /**
+     * When the user may be called, as understood by {@link CallSchedule}; empty for any time.
+     */
+    private String callHours;
+
     public MobilePhoneProperty() {
     }
 
-    @DataBoundConstructor
     public MobilePhoneProperty(String mobilePhone) {
+        this(mobilePhone, null);
+    }
+
+    @DataBoundConstructor
+    public MobilePhoneProperty(String mobilePhone, String callHours) {
         this.mobilephone = mobilePhone;
+        this.callHours = callHours;
     }
 
     public UserPropertyDescriptor getDescriptor() {
@@ -47,8 +64,30 @@ public class MobilePhoneProperty extends UserProperty {
         return mobilephone;
     }
 
+    @Exported
+    public String getCallHours() {
+        return callHours;
+    }
+
+    /**
+     * @return the hours the user may be called, or null for any time or if
+     *         the hours can't be parsed
+     */
+    public CallSchedule getCallSchedule() {
+        try {
+            return CallSchedule.parse(callHours);
+        } catch (IllegalArgumentException e) {
+            LOGGER.warning("Ignoring the call hours of " + (user == null ? "a user" : user.getId()) + ": "
+                    + e.getMessage());
+            return null;
+        }
+    }
+
     public void setMobilephone(String mobilephone) {
         this.mobilephone = mobilephone;
+        if (user != null) {
+            PhoneNumberIndex.INSTANCE.invalidate(user.getId());
+        }
     }
 
     public static final class DescriptorImpl extends UserPropertyDescriptor {
@@ -61,11 +100,32 @@ public class MobilePhoneProperty extends UserProperty {
             return "Mobile Phone";
         }
 
+        @SuppressWarnings({"UnusedDeclaration"})
+        public FormValidation doCheckMobilephone(@QueryParameter String value) {
+            if (value == null || value.trim().length() == 0) {
+                return FormValidation.ok();
+            }
+            if (PhoneNumbers.normalize(value, PhoneNumbers.getConfiguredDefaultCountry()) == null) {
+                return FormValidation.error(PhoneNumbers.describeInvalid(value.trim()));
+            }
+            return FormValidation.ok();
+        }
+
+        @SuppressWarnings({"UnusedDeclaration"})
+        public FormValidation doCheckCallHours(@QueryParameter String value) {
+            try {
+                CallSchedule.parse(value);
+                return FormValidation.ok();
+            } catch (IllegalArgumentException e) {
+                return FormValidation.error(e.getMessage());
+            }
+        }
+
         @Override
         public MobilePhoneProperty newInstance(StaplerRequest req, JSONObject formData)
                 throws hudson.model.Descriptor.FormException {
             if (formData.has("mobilephone")) {
-				return new MobilePhoneProperty((String) formData.get("mobilephone"));
+				return new MobilePhoneProperty((String) formData.get("mobilephone"), formData.optString("callHours"));
             } else {
                 return new MobilePhoneProperty();
             }
@@ -0,0 +1,136 @@
+package com.twilio.jenkins;
+
+/**
+ * An immutable {@link Notification} holds what to send to a single recipient
+ * and on which channels.
+ */
+public final class Notification {
+
+    private final long id;
+    private final String job;
+    private final String recipient;
+    private final String number;
+    private final String message;
+    private final String url;
+    private final boolean sms;
+    private final boolean call;
+
+    /**
+     * Creates a notification.
+     *
+     * @param recipient the name of the recipient, used for logging
+     * @param number the phone number to send to
+     * @param message the message to text or read
+     * @param url the url of the build to append to text messages, shortened when sent; may be null
+     * @param sms whether a text message should be sent
+     * @param call whether a call should be made
+     */
+    public Notification(final String recipient, final String number, final String message, final String url,
+            final boolean sms, final boolean call) {
+        this(null, recipient, number, message, url, sms, call);
+    }
+
+    /**
+     * Creates a notification for a job.
+     *
+     * @param job the full name of the job the notification is about, used for metrics; may be null
+     * @param recipient the name of the recipient, used for logging
+     * @param number the phone number to send to
+     * @param message the message to text or read
+     * @param url the url of the build to append to text messages, shortened when sent; may be null
+     * @param sms whether a text message should be sent
+     * @param call whether a call should be made
+     */
+    public Notification(final String job, final String recipient, final String number, final String message,
+            final String url, final boolean sms, final boolean call) {
+        this(0, job, recipient, number, message, url, sms, call);
+    }
+
+    private Notification(final long id, final String job, final String recipient, final String number,
+            final String message, final String url, final boolean sms, final boolean call) {
+        this.id = id;
+        this.job = job;
+        this.recipient = recipient;
+        this.number = number;
+        this.message = message;
+        this.url = url;
+        this.sms = sms;
+        this.call = call;
+    }
+
+    /**
+     * Returns a copy of this notification with the given outbox id.
+     *
+     * @param id the id of the notification in the {@link NotificationOutbox}
+     * @return the copy
+     */
+    Notification withId(final long id) {
+        return new Notification(id, job, recipient, number, message, url, sms, call);
+    }
+
+    /**
+     * Returns a copy of this notification on other channels, keeping its
+     * outbox id.
+     *
+     * @param sms whether a text message should be sent
+     * @param call whether a call should be made
+     * @return the copy
+     */
+    Notification withChannels(final boolean sms, final boolean call) {
+        return new Notification(id, job, recipient, number, message, url, sms, call);
+    }
+
+    /**
+     * Returns a copy of this notification for other channels and with
+     * another message, outside of the outbox.
+     *
+     * @param message the message to text or read
+     * @param sms whether a text message should be sent
+     * @param call whether a call should be made
+     * @return the copy
+     */
+    Notification with(final String message, final boolean sms, final boolean call) {
+        return new Notification(0, job, recipient, number, message, url, sms, call);
+    }
+
+    /**
+     * @return the id of the notification in the {@link NotificationOutbox}, or 0 if it isn't in there
+     */
+    public long getId() {
+        return this.id;
+    }
+
+    /**
+     * @return the full name of the job the notification is about, or null
+     */
+    public String getJob() {
+        return this.job;
+    }
+
+    public String getRecipient() {
+        return this.recipient;
+    }
+
+    public String getNumber() {
+        return this.number;
+    }
+
+    public String getMessage() {
+        return this.message;
+    }
+
+    /**
+     * @return the url of the build to append to text messages, or null
+     */
+    public String getUrl() {
+        return this.url;
+    }
+
+    public boolean isSms() {
+        return this.sms;
+    }
+
+    public boolean isCall() {
+        return this.call;
+    }
+}
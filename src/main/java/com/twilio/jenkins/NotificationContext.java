@@ -0,0 +1,95 @@
+package com.twilio.jenkins;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An immutable {@link NotificationContext} holds what is known about the
+ * build being notified for: the values of the message placeholders, the job
+ * and the url. A new one is created for every build, so concurrent builds of
+ * the same job never see each other's values.
+ */
+public final class NotificationContext {
+
+    private final String job;
+    private final String url;
+    private final Map<String, String> attributes;
+
+    /**
+     * Creates a context.
+     *
+     * @param job the full name of the job
+     * @param project the display name of the project, for <code>%PROJECT%</code>
+     * @param build the display name of the build, for <code>%BUILD%</code>
+     * @param status the result of the build, for <code>%STATUS%</code>
+     * @param culprits the names of the culprits, for <code>%CULPRITS%</code>
+     * @param url the absolute url of the build to include in text messages, or null
+     */
+    public NotificationContext(final String job, final String project, final String build, final String status,
+            final String culprits, final String url) {
+        this.job = job;
+        this.url = url;
+        final Map<String, String> values = new HashMap<String, String>();
+        values.put("%PROJECT%", project);
+        values.put("%BUILD%", build);
+        values.put("%STATUS%", status);
+        values.put("%CULPRITS%", culprits);
+        this.attributes = Collections.unmodifiableMap(values);
+    }
+
+    private NotificationContext(final String job, final String url, final Map<String, String> attributes) {
+        this.job = job;
+        this.url = url;
+        this.attributes = attributes;
+    }
+
+    /**
+     * Returns a copy of this context with other culprits.
+     *
+     * @param culprits the names of the culprits, for <code>%CULPRITS%</code>
+     * @return the copy
+     */
+    public NotificationContext withCulprits(final String culprits) {
+        final Map<String, String> values = new HashMap<String, String>(this.attributes);
+        values.put("%CULPRITS%", culprits);
+        return new NotificationContext(this.job, this.url, Collections.unmodifiableMap(values));
+    }
+
+    public String getJob() {
+        return this.job;
+    }
+
+    /**
+     * @return the absolute url of the build to include in text messages, or null
+     */
+    public String getUrl() {
+        return this.url;
+    }
+
+    /**
+     * @return the placeholder values, read-only
+     */
+    public Map<String, String> getAttributes() {
+        return this.attributes;
+    }
+
+    /**
+     * Returns the placeholder values for a message to one culprit.
+     *
+     * @param culpritName the name of the culprit, for <code>%CULPRIT-NAME%</code>
+     * @return the placeholder values, read-only
+     */
+    public Map<String, String> getAttributes(final String culpritName) {
+        final Map<String, String> values = new HashMap<String, String>(this.attributes);
+        values.put("%CULPRIT-NAME%", culpritName);
+        return Collections.unmodifiableMap(values);
+    }
+
+    /**
+     * @return the line describing the build in a digest
+     */
+    public String getSummary() {
+        return this.attributes.get("%PROJECT%") + " " + this.attributes.get("%STATUS%");
+    }
+}
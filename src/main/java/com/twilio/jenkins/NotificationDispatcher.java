@@ -0,0 +1,222 @@
+package com.twilio.jenkins;
+
+import hudson.Extension;
+import hudson.model.Hudson;
+import hudson.model.listeners.ItemListener;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A {@link NotificationDispatcher} hands notifications over to a bounded queue
+ * drained by a dedicated pool of worker threads, so that the build executor
+ * does not have to wait for Twilio or the URL shortener to respond.
+ */
+public final class NotificationDispatcher {
+    private static final Logger LOGGER = Logger.getLogger(NotificationDispatcher.class.getName());
+
+    /**
+     * How long to wait for queued notifications when Jenkins shuts down.
+     */
+    static final long DRAIN_TIMEOUT_SECONDS = 30;
+
+    /**
+     * What to do with a notification when the queue is full.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Send the notification on the thread that submitted it.
+         */
+        CALLER_RUNS,
+        /**
+         * Drop the notification that was just submitted.
+         */
+        DISCARD_NEWEST,
+        /**
+         * Drop the oldest queued notification to make room for the new one.
+         */
+        DISCARD_OLDEST
+    }
+
+    /**
+     * A queued notification that wants to know when it is dropped to make
+     * room for a newer one, e.g. to remove it from the outbox.
+     */
+    public interface Task extends Runnable {
+        /**
+         * Called instead of {@link #run()} when the notification was dropped
+         * from the queue, from the thread that dispatched the newer one.
+         */
+        void discarded();
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final OverflowPolicy overflowPolicy;
+    private final AtomicLong discarded = new AtomicLong();
+
+    /**
+     * Creates a dispatcher.
+     *
+     * @param poolSize the number of worker threads
+     * @param queueCapacity the maximum number of notifications waiting for a worker
+     * @param overflowPolicy what to do when the queue is full
+     */
+    public NotificationDispatcher(final int poolSize, final int queueCapacity, final OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity), new DaemonThreadFactory("TwilioNotifier dispatch"),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Queues a notification for sending.
+     *
+     * @param notification the notification to send
+     * @return true if the notification was sent or queued, false if it was discarded
+     */
+    public boolean dispatch(final Runnable notification) {
+        try {
+            executor.execute(notification);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return overflow(notification);
+        }
+    }
+
+    private boolean overflow(final Runnable notification) {
+        if (executor.isShutdown()) {
+            // Shutting down or reconfigured; don't lose the notification.
+            notification.run();
+            return true;
+        }
+        switch (overflowPolicy) {
+        case CALLER_RUNS:
+            notification.run();
+            return true;
+        case DISCARD_OLDEST:
+            final Runnable oldest = executor.getQueue().poll();
+            if (oldest != null) {
+                discarded.incrementAndGet();
+                LOGGER.warning("Notification queue full, discarded the oldest queued notification " + oldest);
+                discarded(oldest);
+            }
+            try {
+                executor.execute(notification);
+                return true;
+            } catch (RejectedExecutionException e) {
+                // fall through and discard the new one
+            }
+        default:
+            discarded.incrementAndGet();
+            LOGGER.warning("Notification queue full, discarded notification");
+            return false;
+        }
+    }
+
+    private static void discarded(final Runnable notification) {
+        if (notification instanceof Task) {
+            try {
+                ((Task) notification).discarded();
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Could not handle the discarded notification " + notification, e);
+            }
+        }
+    }
+
+    /**
+     * Stops accepting new notifications. Notifications already queued are
+     * still sent.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Stops accepting new notifications and waits for the queued ones to be
+     * sent.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit the unit of the timeout
+     * @return true if all notifications were sent before the timeout
+     */
+    public boolean drain(final long timeout, final TimeUnit unit) {
+        executor.shutdown();
+        try {
+            if (executor.awaitTermination(timeout, unit)) {
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        int abandoned = executor.shutdownNow().size();
+        LOGGER.warning("Gave up waiting for queued notifications, " + abandoned + " were not sent");
+        return false;
+    }
+
+    /**
+     * @return the number of notifications waiting for a worker
+     */
+    public int getQueuedCount() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * @return the number of notifications currently being sent
+     */
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * @return the number of notifications discarded because the queue was full
+     */
+    public long getDiscardedCount() {
+        return discarded.get();
+    }
+
+    /**
+     * Creates named daemon threads, so a stuck Twilio request can't keep the
+     * JVM alive.
+     */
+    static final class DaemonThreadFactory implements ThreadFactory {
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+
+        DaemonThreadFactory(final String name) {
+            this.name = name;
+        }
+
+        public Thread newThread(final Runnable r) {
+            Thread t = new Thread(r, name + " #" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+
+    /**
+     * Sends whatever is still queued before Jenkins goes down.
+     */
+    @Extension
+    public static final class ShutdownDrainer extends ItemListener {
+        @Override
+        public void onBeforeShutdown() {
+            Hudson hudson = Hudson.getInstance();
+            if (hudson == null) {
+                return;
+            }
+            TwilioNotifier.DescriptorImpl descriptor = hudson.getDescriptorByType(TwilioNotifier.DescriptorImpl.class);
+            if (descriptor != null) {
+                descriptor.drainDispatcher(DRAIN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                descriptor.flushDigests();
+            }
+        }
+    }
+}
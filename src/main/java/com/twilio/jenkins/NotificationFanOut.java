@@ -0,0 +1,142 @@
+package com.twilio.jenkins;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link NotificationFanOut} sends to all recipients and channels of a build
+ * in parallel. The number of requests in flight is capped by the size of its
+ * thread pool, which is shared by all builds.
+ */
+public final class NotificationFanOut {
+
+    /**
+     * Sends a single notification on a single channel.
+     */
+    public interface Transport {
+        /**
+         * Sends the notification.
+         *
+         * @param notification the notification to send
+         * @param channel the channel to send it on
+         * @return the SID Twilio gave the message or call, or null if it isn't known
+         * @throws Exception if the notification couldn't be sent
+         */
+        String send(Notification notification, Channel channel) throws Exception;
+    }
+
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Creates a fan-out engine.
+     *
+     * @param concurrency the maximum number of notifications sent at the same time
+     */
+    public NotificationFanOut(final int concurrency) {
+        this.executor = new ThreadPoolExecutor(concurrency, concurrency, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new NotificationDispatcher.DaemonThreadFactory(
+                        "TwilioNotifier fan-out"));
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Sends all notifications on all of their channels and waits for them to
+     * complete.
+     *
+     * @param notifications the notifications to send
+     * @param transport sends a single notification
+     * @return the outcomes, in the order of the notifications
+     */
+    public NotificationResult send(final List<Notification> notifications, final Transport transport) {
+        final List<Callable<NotificationResult.Outcome>> tasks = new ArrayList<Callable<NotificationResult.Outcome>>();
+        for (Notification notification : notifications) {
+            if (notification.isSms()) {
+                tasks.add(task(notification, Channel.SMS, transport));
+            }
+            if (notification.isCall()) {
+                tasks.add(task(notification, Channel.CALL, transport));
+            }
+        }
+
+        final List<NotificationResult.Outcome> outcomes = new ArrayList<NotificationResult.Outcome>(tasks.size());
+        if (tasks.size() == 1) {
+            // Not worth a thread hop.
+            outcomes.add(call(tasks.get(0)));
+            return new NotificationResult(outcomes);
+        }
+
+        List<Future<NotificationResult.Outcome>> futures;
+        try {
+            futures = executor.invokeAll(tasks);
+        } catch (RejectedExecutionException e) {
+            // The pool was shut down by a reconfiguration; send from this thread.
+            for (Callable<NotificationResult.Outcome> task : tasks) {
+                outcomes.add(call(task));
+            }
+            return new NotificationResult(outcomes);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            for (Notification notification : notifications) {
+                if (notification.isSms()) {
+                    outcomes.add(new NotificationResult.Outcome(notification, Channel.SMS, e));
+                }
+                if (notification.isCall()) {
+                    outcomes.add(new NotificationResult.Outcome(notification, Channel.CALL, e));
+                }
+            }
+            return new NotificationResult(outcomes);
+        }
+        for (Future<NotificationResult.Outcome> future : futures) {
+            outcomes.add(get(future));
+        }
+        return new NotificationResult(outcomes);
+    }
+
+    /**
+     * Stops the worker threads once the notifications in flight are sent.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private static Callable<NotificationResult.Outcome> task(final Notification notification, final Channel channel,
+            final Transport transport) {
+        return new Callable<NotificationResult.Outcome>() {
+            public NotificationResult.Outcome call() {
+                try {
+                    String sid = transport.send(notification, channel);
+                    return new NotificationResult.Outcome(notification, channel, sid, null);
+                } catch (Exception e) {
+                    return new NotificationResult.Outcome(notification, channel, e);
+                }
+            }
+        };
+    }
+
+    private static NotificationResult.Outcome call(final Callable<NotificationResult.Outcome> task) {
+        try {
+            return task.call();
+        } catch (Exception e) {
+            // the tasks catch everything themselves
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static NotificationResult.Outcome get(final Future<NotificationResult.Outcome> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
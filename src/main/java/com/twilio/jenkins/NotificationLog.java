@@ -0,0 +1,98 @@
+package com.twilio.jenkins;
+
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@link NotificationLog} writes one record per notification once it was
+ * sent, instead of a line for every step along the way:
+ *
+ * <pre>
+ * notification job="my-job" recipient="alice" number=+14155551234 sms=sent call=failed
+ * </pre>
+ *
+ * A record is only built if the logger would publish it, so nothing is
+ * allocated when the level is turned down. The message itself is only
+ * included when asked for, since it may contain anything the build put in.
+ */
+final class NotificationLog {
+
+    private NotificationLog() {
+    }
+
+    /**
+     * Logs the outcomes of a fan-out, one record per notification: at INFO if
+     * everything was sent, at WARNING with the first error if not.
+     *
+     * @param logger the logger to write to
+     * @param outcomes the outcomes, those of one notification next to each other
+     * @param includeBody whether to include the message
+     */
+    static void log(final Logger logger, final List<NotificationResult.Outcome> outcomes, final boolean includeBody) {
+        if (!logger.isLoggable(Level.INFO)) {
+            return;
+        }
+        int start = 0;
+        while (start < outcomes.size()) {
+            Notification notification = outcomes.get(start).getNotification();
+            int end = start + 1;
+            while (end < outcomes.size() && outcomes.get(end).getNotification() == notification) {
+                end++;
+            }
+            log(logger, outcomes.subList(start, end), notification, includeBody);
+            start = end;
+        }
+    }
+
+    private static void log(final Logger logger, final List<NotificationResult.Outcome> outcomes,
+            final Notification notification, final boolean includeBody) {
+        Throwable error = null;
+        for (NotificationResult.Outcome outcome : outcomes) {
+            if (error == null) {
+                error = outcome.getError();
+            }
+        }
+        Level level = error == null ? Level.INFO : Level.WARNING;
+        if (!logger.isLoggable(level)) {
+            return;
+        }
+        StringBuilder sb = new StringBuilder(128);
+        sb.append("notification");
+        if (notification.getId() > 0) {
+            sb.append(" id=").append(notification.getId());
+        }
+        if (notification.getJob() != null) {
+            appendQuoted(sb.append(" job="), notification.getJob());
+        }
+        appendQuoted(sb.append(" recipient="), String.valueOf(notification.getRecipient()));
+        sb.append(" number=").append(notification.getNumber());
+        for (NotificationResult.Outcome outcome : outcomes) {
+            sb.append(' ').append(outcome.getChannel() == Channel.SMS ? "sms" : "call").append('=');
+            if (outcome.isSuccess()) {
+                sb.append("sent");
+            } else {
+                appendQuoted(sb.append("failed:"), String.valueOf(outcome.getError().getMessage()));
+            }
+        }
+        if (includeBody) {
+            appendQuoted(sb.append(" body="), notification.getMessage());
+        }
+        logger.log(level, sb.toString(), error);
+    }
+
+    private static void appendQuoted(final StringBuilder sb, final String value) {
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c == '\n') {
+                sb.append("\\n");
+            } else {
+                sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+}
@@ -0,0 +1,242 @@
+package com.twilio.jenkins;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import net.sf.json.JSONObject;
+
+/**
+ * {@link NotificationMetrics} collects how long the plugin and the services
+ * it calls take, and what happened to the notifications, per channel and per
+ * job. Everything is kept in atomic counters so the hot path never blocks on
+ * it.
+ */
+public final class NotificationMetrics {
+
+    static final NotificationMetrics INSTANCE = new NotificationMetrics();
+
+    /**
+     * The operations whose latency is recorded.
+     */
+    public enum Timer {
+        /**
+         * {@link TwilioNotifier#perform}, from the build finishing to the
+         * notifications being sent or queued.
+         */
+        PERFORM,
+        /**
+         * A request to Twilio to send a text message.
+         */
+        SMS,
+        /**
+         * A request to Twilio to place a call.
+         */
+        CALL,
+        /**
+         * Shortening a build url, including cache hits.
+         */
+        SHORTEN
+    }
+
+    /**
+     * What happened to a notification on a channel.
+     */
+    public enum Event {
+        SENT,
+        FAILED,
+        /**
+         * A request that was rate limited or failed and is tried again.
+         */
+        RETRIED,
+        /**
+         * Not sent on its own, because it was merged into a digest or dropped
+         * from a full queue.
+         */
+        SUPPRESSED
+    }
+
+    private final LatencyHistogram[] latencies = new LatencyHistogram[Timer.values().length];
+    private final Counters total = new Counters();
+    private final ConcurrentMap<String, Counters> jobs = new ConcurrentHashMap<String, Counters>();
+
+    /**
+     * The number of text messages and of their segments, per encoding.
+     */
+    private final AtomicLongArray messages = new AtomicLongArray(SmsEncoder.Encoding.values().length);
+    private final AtomicLongArray segments = new AtomicLongArray(SmsEncoder.Encoding.values().length);
+
+    NotificationMetrics() {
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Records how long an operation took.
+     *
+     * @param timer the operation
+     * @param startNanos the {@link System#nanoTime()} when the operation started
+     */
+    public void recordSince(final Timer timer, final long startNanos) {
+        latencies[timer.ordinal()].recordNanos(System.nanoTime() - startNanos);
+    }
+
+    public LatencyHistogram getLatency(final Timer timer) {
+        return latencies[timer.ordinal()];
+    }
+
+    /**
+     * Counts an event for a notification on a channel, in total and for the
+     * job of the notification.
+     *
+     * @param event what happened
+     * @param notification the notification
+     * @param channel the channel
+     */
+    public void count(final Event event, final Notification notification, final Channel channel) {
+        total.increment(event, channel);
+        String job = notification.getJob();
+        if (job != null) {
+            Counters counters = jobs.get(job);
+            if (counters == null) {
+                Counters created = new Counters();
+                counters = jobs.putIfAbsent(job, created);
+                if (counters == null) {
+                    counters = created;
+                }
+            }
+            counters.increment(event, channel);
+        }
+    }
+
+    /**
+     * Counts an event for a notification on every channel it is sent on.
+     *
+     * @param event what happened
+     * @param notification the notification
+     */
+    public void count(final Event event, final Notification notification) {
+        if (notification.isSms()) {
+            count(event, notification, Channel.SMS);
+        }
+        if (notification.isCall()) {
+            count(event, notification, Channel.CALL);
+        }
+    }
+
+    /**
+     * Counts a text message and the segments Twilio bills it as.
+     *
+     * @param encoding the encoding it is sent in
+     * @param count the number of segments
+     */
+    public void countSegments(final SmsEncoder.Encoding encoding, final int count) {
+        messages.incrementAndGet(encoding.ordinal());
+        segments.addAndGet(encoding.ordinal(), count);
+    }
+
+    /**
+     * @return the number of segments of the text messages sent in an encoding
+     */
+    public long getSegments(final SmsEncoder.Encoding encoding) {
+        return segments.get(encoding.ordinal());
+    }
+
+    /**
+     * @return the number of events on a channel across all jobs
+     */
+    public long getCount(final Event event, final Channel channel) {
+        return total.get(event, channel);
+    }
+
+    /**
+     * @return the number of events on a channel for a job
+     */
+    public long getCount(final String job, final Event event, final Channel channel) {
+        Counters counters = jobs.get(job);
+        return counters == null ? 0 : counters.get(event, channel);
+    }
+
+    /**
+     * Drops the counts of a job, for instance after it was deleted or renamed.
+     *
+     * @param job the full name of the job
+     */
+    public void forget(final String job) {
+        jobs.remove(job);
+    }
+
+    /**
+     * Returns all metrics: latency percentiles in milliseconds per
+     * operation, the event counts per channel in total and per job, and the
+     * text messages and their segments per encoding.
+     *
+     * @return the metrics as JSON
+     */
+    public JSONObject toJSON() {
+        JSONObject latency = new JSONObject();
+        for (Timer timer : Timer.values()) {
+            latency.element(timer.name().toLowerCase(), toJSON(latencies[timer.ordinal()]));
+        }
+        JSONObject perJob = new JSONObject();
+        for (Map.Entry<String, Counters> entry : new TreeMap<String, Counters>(jobs).entrySet()) {
+            perJob.element(entry.getKey(), entry.getValue().toJSON());
+        }
+        JSONObject sms = new JSONObject();
+        for (SmsEncoder.Encoding encoding : SmsEncoder.Encoding.values()) {
+            sms.element(encoding.name().toLowerCase(), new JSONObject()
+                    .element("messages", messages.get(encoding.ordinal()))
+                    .element("segments", segments.get(encoding.ordinal())));
+        }
+        return new JSONObject()
+                .element("latency", latency)
+                .element("channels", total.toJSON())
+                .element("segments", sms)
+                .element("jobs", perJob);
+    }
+
+    private static JSONObject toJSON(final LatencyHistogram histogram) {
+        return new JSONObject()
+                .element("count", histogram.getCount())
+                .element("mean", histogram.getMean() / 1000)
+                .element("p50", histogram.getPercentile(50) / 1000.0)
+                .element("p90", histogram.getPercentile(90) / 1000.0)
+                .element("p99", histogram.getPercentile(99) / 1000.0)
+                .element("p999", histogram.getPercentile(99.9) / 1000.0)
+                .element("max", histogram.getMax() / 1000.0);
+    }
+
+    /**
+     * Event counts per channel.
+     */
+    private static final class Counters {
+        private final AtomicLongArray counts = new AtomicLongArray(Event.values().length * Channel.values().length);
+
+        void increment(final Event event, final Channel channel) {
+            counts.incrementAndGet(index(event, channel));
+        }
+
+        long get(final Event event, final Channel channel) {
+            return counts.get(index(event, channel));
+        }
+
+        private static int index(final Event event, final Channel channel) {
+            return channel.ordinal() * Event.values().length + event.ordinal();
+        }
+
+        JSONObject toJSON() {
+            JSONObject json = new JSONObject();
+            for (Channel channel : Channel.values()) {
+                JSONObject events = new JSONObject();
+                for (Event event : Event.values()) {
+                    events.element(event.name().toLowerCase(), get(event, channel));
+                }
+                json.element(channel.name().toLowerCase(), events);
+            }
+            return json;
+        }
+    }
+}
@@ -0,0 +1,508 @@
+package com.twilio.jenkins;
+
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.model.Hudson;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * A {@link NotificationOutbox} is an append-only log of the notifications that
+ * have not been sent yet, so they survive a restart of Jenkins.
+ *
+ * Every notification is appended as a pending record before it is queued,
+ * and a done record is appended once all of its channels were sent or failed
+ * for good. Records are written through a {@link FileChannel} and forced to
+ * disk in batches by a background thread, so appending doesn't wait for the
+ * disk. On startup the log is read back, a torn last record is cut off and
+ * the pending notifications are sent again. Once enough records are done,
+ * the log is rewritten with only the pending ones.
+ *
+ * A notification that failed for a reason retrying may fix is kept pending
+ * and scheduled to be sent again with {@link #retryLater(Notification)},
+ * backing off from {@link #RETRY_DELAY_MILLIS}, on only the channels that
+ * failed: a pending record with fewer channels replaces the earlier one. Notifications older than
+ * {@link #MAX_AGE_MILLIS} are given up on by {@link #expire(long)}, whether
+ * they were waiting for a retry or were lost on the way, and aren't sent
+ * again after a restart either: a build result from hours ago only wakes
+ * someone up for nothing.
+ *
+ * Record layout: payload length (int), CRC32 of the payload (int), then the
+ * payload: type (byte), id (long) and for pending records the time they were
+ * appended (long) and the channel flags (byte) followed by job, recipient,
+ * number, message and url as length prefixed UTF-8 strings.
+ */
+public final class NotificationOutbox {
+    private static final Logger LOGGER = Logger.getLogger(NotificationOutbox.class.getName());
+
+    static final String FILE_NAME = "twilio-outbox.log";
+
+    static final long SYNC_INTERVAL_MILLIS = 100;
+
+    /**
+     * The number of records that are no longer needed before the log is
+     * rewritten.
+     */
+    static final int COMPACT_THRESHOLD = 1000;
+
+    /**
+     * How long after it was appended a notification is given up on.
+     */
+    static final long MAX_AGE_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * How long after its first failure a notification is sent again; the
+     * delay doubles with every further failure.
+     */
+    static final long RETRY_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private static final byte PENDING = 1;
+    private static final byte DONE = 2;
+    private static final byte SMS = 1;
+    private static final byte CALL = 2;
+    private static final int HEADER_LENGTH = 8;
+
+    /**
+     * A notification that wasn't sent yet.
+     */
+    private static final class Entry {
+        private Notification notification;
+        private final long appended;
+
+        /**
+         * When it is sent again, or 0 if it isn't waiting for a retry.
+         */
+        private long due;
+        private int retries;
+
+        Entry(final Notification notification, final long appended) {
+            this.notification = notification;
+            this.appended = appended;
+        }
+    }
+
+    private final File file;
+    private final long maxAgeMillis;
+    private final long retryDelayMillis;
+    private final Map<Long, Entry> pending = new LinkedHashMap<Long, Entry>();
+    private final ScheduledThreadPoolExecutor syncer;
+    private FileChannel channel;
+    private long nextId = 1;
+    private int garbage;
+    private volatile boolean dirty;
+
+    /**
+     * Opens the outbox, recovering the pending notifications from an existing
+     * log.
+     *
+     * @param file the log file
+     * @throws IOException if the log can't be read or opened for writing
+     */
+    public NotificationOutbox(final File file) throws IOException {
+        this(file, MAX_AGE_MILLIS, RETRY_DELAY_MILLIS);
+    }
+
+    /**
+     * Opens the outbox like {@link #NotificationOutbox(File)}.
+     *
+     * @param file the log file
+     * @param maxAgeMillis how long after it was appended a notification is given up on
+     * @param retryDelayMillis how long after its first failure a notification is sent again
+     * @throws IOException if the log can't be read or opened for writing
+     */
+    public NotificationOutbox(final File file, final long maxAgeMillis, final long retryDelayMillis)
+            throws IOException {
+        this.file = file;
+        this.maxAgeMillis = maxAgeMillis;
+        this.retryDelayMillis = retryDelayMillis;
+        recover();
+        if (garbage >= COMPACT_THRESHOLD) {
+            compact();
+        } else {
+            this.channel = openForAppend(file);
+        }
+        this.syncer = new ScheduledThreadPoolExecutor(1, new NotificationDispatcher.DaemonThreadFactory(
+                "TwilioNotifier outbox sync"));
+        this.syncer.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                sync();
+            }
+        }, SYNC_INTERVAL_MILLIS, SYNC_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Appends notifications as pending.
+     *
+     * @param notifications the notifications to append
+     * @return the notifications with their outbox ids
+     * @throws IOException if the log can't be written
+     */
+    public synchronized List<Notification> append(final List<Notification> notifications) throws IOException {
+        final long now = System.currentTimeMillis();
+        final List<Notification> result = new ArrayList<Notification>(notifications.size());
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256 * notifications.size());
+        for (Notification notification : notifications) {
+            Notification journaled = notification.withId(nextId++);
+            writeRecord(bytes, pendingRecord(journaled, now));
+            result.add(journaled);
+        }
+        write(ByteBuffer.wrap(bytes.toByteArray()));
+        for (Notification notification : result) {
+            pending.put(notification.getId(), new Entry(notification, now));
+        }
+        return result;
+    }
+
+    /**
+     * Marks a notification as done, so it isn't sent again after a restart.
+     *
+     * @param id the outbox id of the notification
+     */
+    public synchronized void complete(final long id) {
+        if (pending.remove(id) == null) {
+            return;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(HEADER_LENGTH + 9);
+            writeRecord(bytes, doneRecord(id));
+            write(ByteBuffer.wrap(bytes.toByteArray()));
+            // the pending record and the done record
+            garbage += 2;
+            if (garbage >= COMPACT_THRESHOLD) {
+                compact();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not mark notification " + id + " as sent", e);
+        }
+    }
+
+    /**
+     * Schedules a pending notification that failed for a reason retrying may
+     * fix to be sent again, later after every failure. Only the channels of
+     * the given copy are sent again, those that already went out aren't.
+     *
+     * @param notification the pending notification, on the channels left to send
+     */
+    public synchronized void retryLater(final Notification notification) {
+        final Entry entry = pending.get(notification.getId());
+        if (entry == null) {
+            return;
+        }
+        if (entry.notification.isSms() != notification.isSms()
+                || entry.notification.isCall() != notification.isCall()) {
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                writeRecord(bytes, pendingRecord(notification, entry.appended));
+                write(ByteBuffer.wrap(bytes.toByteArray()));
+                // the replaced pending record
+                garbage++;
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not record the channels left to send of notification "
+                        + notification.getId(), e);
+            }
+            entry.notification = notification;
+        }
+        entry.due = System.currentTimeMillis() + (retryDelayMillis << Math.min(entry.retries, 16));
+        entry.retries++;
+    }
+
+    /**
+     * Takes the notifications whose retry is due; they stay pending until
+     * they are completed or scheduled again.
+     *
+     * @param now the current time in milliseconds
+     * @return the notifications to send again, oldest first
+     */
+    public synchronized List<Notification> takeDue(final long now) {
+        final List<Notification> due = new ArrayList<Notification>();
+        for (Entry entry : pending.values()) {
+            if (entry.due > 0 && entry.due <= now) {
+                entry.due = 0;
+                due.add(entry.notification);
+            }
+        }
+        return due;
+    }
+
+    /**
+     * Gives up on the notifications that are older than the maximum age,
+     * marking them as done.
+     *
+     * @param now the current time in milliseconds
+     * @return the notifications given up on
+     */
+    public synchronized List<Notification> expire(final long now) {
+        final List<Notification> expired = new ArrayList<Notification>();
+        for (Entry entry : pending.values()) {
+            if (now - entry.appended > maxAgeMillis) {
+                expired.add(entry.notification);
+            }
+        }
+        for (Notification notification : expired) {
+            complete(notification.getId());
+        }
+        return expired;
+    }
+
+    /**
+     * @return the notifications that weren't sent yet, oldest first
+     */
+    public synchronized List<Notification> getPending() {
+        final List<Notification> result = new ArrayList<Notification>(pending.size());
+        for (Entry entry : pending.values()) {
+            result.add(entry.notification);
+        }
+        return result;
+    }
+
+    /**
+     * @return the size of the log in bytes
+     * @throws IOException if the size can't be read
+     */
+    public synchronized long getSize() throws IOException {
+        return channel.size();
+    }
+
+    /**
+     * Forces the log to disk and closes it.
+     */
+    public void close() {
+        syncer.shutdown();
+        synchronized (this) {
+            try {
+                channel.force(false);
+                channel.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not close " + file, e);
+            }
+        }
+    }
+
+    private void write(final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        dirty = true;
+    }
+
+    /**
+     * Forces the records appended since the last sync to disk.
+     */
+    void sync() {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        FileChannel current;
+        synchronized (this) {
+            current = channel;
+        }
+        try {
+            // outside the lock so appends don't wait for the disk
+            current.force(false);
+        } catch (IOException e) {
+            // closed by a compaction, which forced the new log itself
+            dirty = true;
+        }
+    }
+
+    /**
+     * Reads the log, keeping the pending notifications and cutting off a torn
+     * record at the end.
+     */
+    private void recover() throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            FileChannel in = raf.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocate((int) in.size());
+            while (buffer.hasRemaining() && in.read(buffer) >= 0) {
+                // keep reading
+            }
+            buffer.flip();
+
+            int records = 0;
+            int validEnd = 0;
+            CRC32 crc = new CRC32();
+            while (buffer.remaining() >= HEADER_LENGTH) {
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+                if (length <= 0 || length > buffer.remaining()) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                buffer.get(payload);
+                crc.reset();
+                crc.update(payload, 0, length);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                apply(ByteBuffer.wrap(payload));
+                records++;
+                validEnd = buffer.position();
+            }
+            if (validEnd < in.size()) {
+                LOGGER.warning("Discarding " + (in.size() - validEnd) + " bytes of incomplete records in " + file);
+                in.truncate(validEnd);
+            }
+            garbage = records - pending.size();
+        } finally {
+            raf.close();
+        }
+        if (!pending.isEmpty()) {
+            LOGGER.info("Recovered " + pending.size() + " unsent notifications from " + file);
+        }
+    }
+
+    private void apply(final ByteBuffer payload) {
+        byte type = payload.get();
+        long id = payload.getLong();
+        nextId = Math.max(nextId, id + 1);
+        if (type == DONE) {
+            pending.remove(id);
+        } else if (type == PENDING) {
+            long appended = payload.getLong();
+            byte flags = payload.get();
+            String job = readString(payload);
+            String recipient = readString(payload);
+            String number = readString(payload);
+            String message = readString(payload);
+            String url = readString(payload);
+            pending.put(id, new Entry(new Notification(job, recipient, number, message, url, (flags & SMS) != 0,
+                    (flags & CALL) != 0).withId(id), appended));
+        }
+    }
+
+    /**
+     * Rewrites the log with only the pending records.
+     */
+    private void compact() throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (Entry entry : pending.values()) {
+            writeRecord(bytes, pendingRecord(entry.notification, entry.appended));
+        }
+        FileChannel out = new RandomAccessFile(tmp, "rw").getChannel();
+        try {
+            out.truncate(0);
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            out.force(false);
+        } finally {
+            out.close();
+        }
+        if (channel != null) {
+            channel.close();
+        }
+        if (!tmp.renameTo(file)) {
+            // Windows doesn't replace an existing file on rename
+            if (!file.delete() || !tmp.renameTo(file)) {
+                throw new IOException("Could not replace " + file + " with " + tmp);
+            }
+        }
+        channel = openForAppend(file);
+        garbage = 0;
+    }
+
+    private static FileChannel openForAppend(final File file) throws IOException {
+        FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+        channel.position(channel.size());
+        return channel;
+    }
+
+    private static byte[] pendingRecord(final Notification notification, final long appended) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(72 + notification.getMessage().length());
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(PENDING);
+        out.writeLong(notification.getId());
+        out.writeLong(appended);
+        out.writeByte((notification.isSms() ? SMS : 0) | (notification.isCall() ? CALL : 0));
+        writeString(out, notification.getJob());
+        writeString(out, notification.getRecipient());
+        writeString(out, notification.getNumber());
+        writeString(out, notification.getMessage());
+        writeString(out, notification.getUrl());
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static byte[] doneRecord(final long id) {
+        return ByteBuffer.allocate(9).put(DONE).putLong(id).array();
+    }
+
+    private static void writeRecord(final ByteArrayOutputStream bytes, final byte[] payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(payload.length);
+        out.writeInt((int) crc.getValue());
+        out.write(payload);
+        out.flush();
+    }
+
+    private static void writeString(final DataOutputStream out, final String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] utf8 = s.getBytes("UTF-8");
+            out.writeInt(utf8.length);
+            out.write(utf8);
+        }
+    }
+
+    private static String readString(final ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] utf8 = new byte[length];
+        in.get(utf8);
+        try {
+            return new String(utf8, "UTF-8");
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return the log file under JENKINS_HOME
+     */
+    static File getDefaultFile() {
+        Hudson hudson = Hudson.getInstance();
+        return hudson == null ? null : new File(hudson.getRootDir(), FILE_NAME);
+    }
+
+    /**
+     * Sends the notifications left over from before the restart.
+     */
+    @Initializer(after = InitMilestone.JOB_LOADED)
+    public static void replayPending() {
+        Hudson hudson = Hudson.getInstance();
+        if (hudson == null) {
+            return;
+        }
+        TwilioNotifier.DescriptorImpl descriptor = hudson.getDescriptorByType(TwilioNotifier.DescriptorImpl.class);
+        if (descriptor != null) {
+            descriptor.replayOutbox();
+        }
+    }
+}
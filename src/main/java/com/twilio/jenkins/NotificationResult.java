@@ -0,0 +1,188 @@
+package com.twilio.jenkins;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The aggregated result of notifying all recipients of one build.
+ */
+public final class NotificationResult {
+
+    /**
+     * Is told the result once the notifications handed to
+     * {@link TwilioNotifier.DescriptorImpl#submit} were sent, so the caller
+     * doesn't have to wait for Twilio.
+     */
+    public interface Callback {
+        /**
+         * Called once the notifications were sent, from the thread that sent
+         * them. Notifications collected for a digest or held back for an
+         * escalation are counted as deferred.
+         *
+         * @param result the result
+         */
+        void done(NotificationResult result);
+    }
+
+    /**
+     * The result of sending one notification on one channel.
+     */
+    public static final class Outcome {
+        private final Notification notification;
+        private final Channel channel;
+        private final String sid;
+        private final Throwable error;
+
+        Outcome(final Notification notification, final Channel channel, final Throwable error) {
+            this(notification, channel, null, error);
+        }
+
+        Outcome(final Notification notification, final Channel channel, final String sid, final Throwable error) {
+            this.notification = notification;
+            this.channel = channel;
+            this.sid = sid;
+            this.error = error;
+        }
+
+        public Notification getNotification() {
+            return this.notification;
+        }
+
+        public Channel getChannel() {
+            return this.channel;
+        }
+
+        public boolean isSuccess() {
+            return this.error == null;
+        }
+
+        /**
+         * @return the SID Twilio gave the message or call, or null if it wasn't sent or isn't known
+         */
+        public String getSid() {
+            return this.sid;
+        }
+
+        /**
+         * @return the reason the notification couldn't be sent, or null if it was sent
+         */
+        public Throwable getError() {
+            return this.error;
+        }
+
+        @Override
+        public String toString() {
+            return this.channel + " to " + this.notification.getRecipient() + " (" + this.notification.getNumber()
+                    + "): " + (this.error != null ? "failed, " + this.error.getMessage()
+                            : this.sid != null ? "sent, " + this.sid : "sent");
+        }
+    }
+
+    private final List<Outcome> outcomes;
+    private final int failed;
+    private final int deferred;
+
+    NotificationResult(final List<Outcome> outcomes) {
+        this(outcomes, 0);
+    }
+
+    NotificationResult(final List<Outcome> outcomes, final int deferred) {
+        this.outcomes = Collections.unmodifiableList(outcomes);
+        this.deferred = deferred;
+        int f = 0;
+        for (Outcome outcome : outcomes) {
+            if (!outcome.isSuccess()) {
+                f++;
+            }
+        }
+        this.failed = f;
+    }
+
+    /**
+     * @return the outcomes, in the order the recipients were listed
+     */
+    public List<Outcome> getOutcomes() {
+        return this.outcomes;
+    }
+
+    /**
+     * Returns the notifications that are done: every channel was either sent
+     * or failed for a reason retrying won't fix.
+     *
+     * @return the finished notifications
+     */
+    public List<Notification> getFinished() {
+        final Map<Notification, Boolean> finished = new LinkedHashMap<Notification, Boolean>();
+        for (Outcome outcome : this.outcomes) {
+            boolean done = outcome.isSuccess() || !RetryingTransport.isRetryable(outcome.getError());
+            Boolean previous = finished.get(outcome.getNotification());
+            finished.put(outcome.getNotification(), previous == null ? done : previous && done);
+        }
+        final List<Notification> result = new ArrayList<Notification>();
+        for (Map.Entry<Notification, Boolean> entry : finished.entrySet()) {
+            if (entry.getValue()) {
+                result.add(entry.getKey());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the notifications that aren't done, each on only the channels
+     * that failed for a reason retrying may fix, so that a channel that was
+     * sent isn't sent again.
+     *
+     * @return the unfinished notifications, on the channels left to send
+     */
+    public List<Notification> getUnfinished() {
+        final Map<Notification, Notification> unfinished = new LinkedHashMap<Notification, Notification>();
+        for (Outcome outcome : this.outcomes) {
+            if (outcome.isSuccess() || !RetryingTransport.isRetryable(outcome.getError())) {
+                continue;
+            }
+            final Notification notification = outcome.getNotification();
+            final Notification previous = unfinished.get(notification);
+            final boolean sms = outcome.getChannel() == Channel.SMS || (previous != null && previous.isSms());
+            final boolean call = outcome.getChannel() == Channel.CALL || (previous != null && previous.isCall());
+            unfinished.put(notification, notification.withChannels(sms, call));
+        }
+        return new ArrayList<Notification>(unfinished.values());
+    }
+
+    /**
+     * @return the SIDs of the messages and calls that were sent, in the order of the outcomes
+     */
+    public List<String> getSids() {
+        final List<String> sids = new ArrayList<String>();
+        for (Outcome outcome : this.outcomes) {
+            if (outcome.getSid() != null) {
+                sids.add(outcome.getSid());
+            }
+        }
+        return sids;
+    }
+
+    public int getSentCount() {
+        return this.outcomes.size() - this.failed;
+    }
+
+    public int getFailedCount() {
+        return this.failed;
+    }
+
+    /**
+     * @return the number of notifications held back to be sent later, e.g. in a digest
+     */
+    public int getDeferredCount() {
+        return this.deferred;
+    }
+
+    @Override
+    public String toString() {
+        String result = getSentCount() + " sent, " + getFailedCount() + " failed";
+        return this.deferred > 0 ? result + ", " + this.deferred + " deferred" : result;
+    }
+}
@@ -0,0 +1,139 @@
+package com.twilio.jenkins;
+
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.Saveable;
+import hudson.model.User;
+import hudson.model.listeners.SaveableListener;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * A {@link PhoneNumberIndex} maps user ids to the phone numbers and call
+ * schedules from their {@link MobilePhoneProperty}, so culprits can be
+ * resolved without reading the properties of every user on every build.
+ *
+ * Users are looked up lazily and kept until the configuration of the user is
+ * saved or the property is changed. Every invalidation bumps a generation;
+ * a lookup that raced with one doesn't keep what it read, since that may be
+ * the property from before the change.
+ */
+public final class PhoneNumberIndex {
+    private static final Logger LOGGER = Logger.getLogger(PhoneNumberIndex.class.getName());
+
+    static final PhoneNumberIndex INSTANCE = new PhoneNumberIndex();
+
+    /**
+     * Cached for users without a phone number, so they aren't looked up again.
+     */
+    private static final Entry NO_NUMBER = new Entry(null, null);
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    private final AtomicLong generation = new AtomicLong();
+
+    PhoneNumberIndex() {
+    }
+
+    /**
+     * Returns the phone number of a user.
+     *
+     * @param user the user
+     * @return the phone number, or null if the user doesn't have one
+     */
+    public String getNumber(final User user) {
+        return lookup(user).number;
+    }
+
+    /**
+     * Returns the hours a user may be called.
+     *
+     * @param user the user
+     * @return the schedule, or null if the user may be called at any time
+     */
+    public CallSchedule getCallSchedule(final User user) {
+        return lookup(user).schedule;
+    }
+
+    private Entry lookup(final User user) {
+        final String id = user.getId();
+        Entry entry = entries.get(id);
+        if (entry == null) {
+            final long read = generation.get();
+            entry = NO_NUMBER;
+            MobilePhoneProperty property = user.getProperty(MobilePhoneProperty.class);
+            if (property != null && property.getMobilephone() != null) {
+                String normalized = PhoneNumbers.normalize(property.getMobilephone(),
+                        PhoneNumbers.getConfiguredDefaultCountry());
+                if (normalized != null) {
+                    entry = new Entry(normalized, property.getCallSchedule());
+                } else if (property.getMobilephone().trim().length() > 0) {
+                    LOGGER.warning("Not notifying user " + id + ". "
+                            + PhoneNumbers.describeInvalid(property.getMobilephone().trim()));
+                }
+            }
+            final Entry cached = entries.putIfAbsent(id, entry);
+            if (cached != null) {
+                return cached;
+            }
+            if (generation.get() != read) {
+                // invalidated while reading, what was read may already be stale
+                entries.remove(id, entry);
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Forgets the phone number and schedule of a user, it is read again on the next lookup.
+     *
+     * @param id the id of the user
+     */
+    public void invalidate(final String id) {
+        if (id != null) {
+            generation.incrementAndGet();
+            entries.remove(id);
+        }
+    }
+
+    /**
+     * Forgets the phone numbers and schedules of all users, e.g. because the
+     * default country changed.
+     */
+    public void clear() {
+        generation.incrementAndGet();
+        entries.clear();
+    }
+
+    /**
+     * @return the number of users in the index
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    private static final class Entry {
+        final String number;
+        final CallSchedule schedule;
+
+        Entry(final String number, final CallSchedule schedule) {
+            this.number = number;
+            this.schedule = schedule;
+        }
+    }
+
+    /**
+     * Drops the cached phone number of a user whose configuration was saved.
+     */
+    @Extension
+    public static final class Invalidator extends SaveableListener {
+        @Override
+        public void onChange(final Saveable o, final XmlFile file) {
+            if (o instanceof User) {
+                INSTANCE.invalidate(((User) o).getId());
+            }
+        }
+    }
+}
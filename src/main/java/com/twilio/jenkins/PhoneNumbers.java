@@ -0,0 +1,251 @@
+package com.twilio.jenkins;
+
+import hudson.model.Hudson;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * {@link PhoneNumbers} parses and normalizes the phone numbers entered in the
+ * configuration.
+ *
+ * Numbers may contain spaces, dashes, dots, slashes and parentheses, which
+ * are dropped. A number starting with <code>+</code> or <code>00</code> is
+ * taken as international and normalized to E.164. A number without a country
+ * code is only accepted in the default country, which is derived from the
+ * from phone number: a ten digit number, with or without the leading 1, is
+ * taken to be North American if the notifications are sent from a North
+ * American number. Other countries write their national numbers in too many
+ * ways to tell them apart, so their numbers must have the country code, and
+ * so must every number if the sender isn't North American. Entries that are
+ * skipped for this are logged, since earlier versions took every ten digit
+ * number to be North American.
+ *
+ * An entry starting with <code>@</code> names a recipient group from the
+ * global configuration instead of a number.
+ */
+final class PhoneNumbers {
+    private static final Logger LOGGER = Logger.getLogger(PhoneNumbers.class.getName());
+
+    /**
+     * The maximum number of digits of an E.164 number.
+     */
+    static final int MAX_DIGITS = 15;
+
+    /**
+     * Starts an entry that names a recipient group.
+     */
+    static final char GROUP_PREFIX = '@';
+
+    /**
+     * The country code of the North American Numbering Plan, the only
+     * default country.
+     */
+    static final String NORTH_AMERICA = "1";
+
+    private static final String[] NONE = new String[0];
+
+    private PhoneNumbers() {
+    }
+
+    /**
+     * Normalizes a phone number that has a country code.
+     *
+     * @param raw the number as entered
+     * @return the normalized number, or null if it isn't a phone number with a country code
+     */
+    static String normalize(final String raw) {
+        return normalize(raw, null);
+    }
+
+    /**
+     * Normalizes a phone number.
+     *
+     * @param raw the number as entered
+     * @param defaultCountry the country code of a number without one, see
+     *        {@link #getDefaultCountry(String)}; null to only accept numbers
+     *        with a country code
+     * @return the normalized number, or null if it isn't a phone number or
+     *         it is ambiguous
+     */
+    static String normalize(final String raw, final String defaultCountry) {
+        if (raw == null) {
+            return null;
+        }
+        final StringBuilder digits = new StringBuilder(raw.length() + 1);
+        boolean international = false;
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits.append(c);
+            } else if (c == '+') {
+                // only in front of the first digit
+                if (international || digits.length() > 0) {
+                    return null;
+                }
+                international = true;
+            } else if (c != ' ' && c != '-' && c != '.' && c != '/' && c != '(' && c != ')' && c != '\t') {
+                return null;
+            }
+        }
+        if (!international && digits.length() > 2 && digits.charAt(0) == '0' && digits.charAt(1) == '0') {
+            digits.delete(0, 2);
+            international = true;
+        }
+        final int length = digits.length();
+        if (length == 0 || length > MAX_DIGITS) {
+            return null;
+        }
+        if (international) {
+            return digits.charAt(0) == '0' ? null : digits.insert(0, '+').toString();
+        }
+        if (!NORTH_AMERICA.equals(defaultCountry)) {
+            return null;
+        }
+        if (length == 10 && isNorthAmerican(digits, 0)) {
+            return digits.insert(0, "+1").toString();
+        }
+        if (length == 11 && digits.charAt(0) == '1' && isNorthAmerican(digits, 1)) {
+            return digits.insert(0, '+').toString();
+        }
+        return null;
+    }
+
+    /**
+     * Returns the country numbers without a country code are taken to be in,
+     * which is that of the number notifications are sent from if it is North
+     * American.
+     *
+     * @param fromPhoneNumber the from phone number of the global configuration
+     * @return {@link #NORTH_AMERICA}, or null if every number needs a country code
+     */
+    static String getDefaultCountry(final String fromPhoneNumber) {
+        final String from = normalize(fromPhoneNumber);
+        return from != null && from.length() == 12 && from.startsWith("+" + NORTH_AMERICA) && isNorthAmerican(from, 2)
+                ? NORTH_AMERICA : null;
+    }
+
+    /**
+     * @return the default country of the global configuration, or null if
+     *         there is none or Jenkins isn't running
+     */
+    static String getConfiguredDefaultCountry() {
+        final Hudson hudson = Hudson.getInstance();
+        final TwilioNotifier.DescriptorImpl descriptor = hudson == null ? null
+                : hudson.getDescriptorByType(TwilioNotifier.DescriptorImpl.class);
+        return descriptor == null ? null : descriptor.getDefaultCountry();
+    }
+
+    /**
+     * Explains why an entry isn't taken as a phone number.
+     *
+     * @param entry the entry, trimmed
+     * @return the reason, ending in the entry
+     */
+    static String describeInvalid(final String entry) {
+        final String northAmerican = normalize(entry, NORTH_AMERICA);
+        if (northAmerican != null) {
+            return "Missing the country code, numbers without one are only taken as North American when sending"
+                    + " from a North American number; if it is one, enter " + northAmerican + ": " + entry;
+        }
+        return "Not a phone number, or missing the country code, such as +46 70 123 45 67: " + entry;
+    }
+
+    /**
+     * North American area codes and exchanges don't start with 0 or 1.
+     */
+    private static boolean isNorthAmerican(final CharSequence digits, final int offset) {
+        return digits.charAt(offset) >= '2' && digits.charAt(offset + 3) >= '2';
+    }
+
+    /**
+     * Parses a comma separated list of phone numbers. Empty entries and group
+     * names are skipped, and so are entries that aren't phone numbers or are
+     * ambiguous, with a warning. Numbers that are the same once normalized
+     * are only kept once.
+     *
+     * @param list the comma separated list, may be null
+     * @param defaultCountry the country code of numbers without one, or null
+     * @return the normalized numbers in the order they were entered
+     */
+    static String[] parseList(final String list, final String defaultCountry) {
+        if (list == null) {
+            return NONE;
+        }
+        final Set<String> numbers = new LinkedHashSet<String>();
+        int start = 0;
+        while (start <= list.length()) {
+            int end = list.indexOf(',', start);
+            if (end < 0) {
+                end = list.length();
+            }
+            String entry = list.substring(start, end).trim();
+            if (!isGroup(entry)) {
+                String number = normalize(entry, defaultCountry);
+                if (number != null) {
+                    numbers.add(number);
+                } else if (entry.length() > 0) {
+                    LOGGER.warning("Skipping a phone number. " + describeInvalid(entry));
+                }
+            }
+            start = end + 1;
+        }
+        return numbers.toArray(new String[numbers.size()]);
+    }
+
+    /**
+     * Parses the recipient groups named in a comma separated list.
+     *
+     * @param list the comma separated list, may be null
+     * @return the group names without the prefix, each once, in the order they were entered
+     */
+    static String[] parseGroups(final String list) {
+        if (list == null || list.indexOf(GROUP_PREFIX) < 0) {
+            return NONE;
+        }
+        final Set<String> groups = new LinkedHashSet<String>();
+        int start = 0;
+        while (start <= list.length()) {
+            int end = list.indexOf(',', start);
+            if (end < 0) {
+                end = list.length();
+            }
+            String entry = list.substring(start, end).trim();
+            if (isGroup(entry) && entry.length() > 1) {
+                groups.add(entry.substring(1).trim());
+            }
+            start = end + 1;
+        }
+        return groups.toArray(new String[groups.size()]);
+    }
+
+    private static boolean isGroup(final String entry) {
+        return entry.length() > 0 && entry.charAt(0) == GROUP_PREFIX;
+    }
+
+    /**
+     * Finds the first entry of a comma separated list that is neither a
+     * phone number nor a group name, or is a number without a country code
+     * outside the default country.
+     *
+     * @param list the comma separated list
+     * @param defaultCountry the country code of numbers without one, or null
+     * @return the invalid entry, trimmed, or null if all entries are valid
+     */
+    static String findInvalid(final String list, final String defaultCountry) {
+        int start = 0;
+        while (start <= list.length()) {
+            int end = list.indexOf(',', start);
+            if (end < 0) {
+                end = list.length();
+            }
+            String entry = list.substring(start, end).trim();
+            if (isGroup(entry) ? entry.length() == 1 : entry.length() > 0 && normalize(entry, defaultCountry) == null) {
+                return entry;
+            }
+            start = end + 1;
+        }
+        return null;
+    }
+}
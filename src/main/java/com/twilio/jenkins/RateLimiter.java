@@ -0,0 +1,78 @@
+package com.twilio.jenkins;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token bucket {@link RateLimiter}. Tokens are added at a fixed rate up to
+ * a burst size of one second's worth, and each request takes one. Callers
+ * that find the bucket empty reserve a future token and sleep until it is
+ * due, so waiting callers are served in order without spinning.
+ */
+public final class RateLimiter {
+
+    private final double permitsPerNano;
+    private final double maxPermits;
+    private double permits;
+    private long lastRefill;
+
+    /**
+     * Creates a limiter.
+     *
+     * @param permitsPerSecond the sustained rate; 0 or less means unlimited
+     */
+    public RateLimiter(final double permitsPerSecond) {
+        this.permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.maxPermits = Math.max(1, permitsPerSecond);
+        this.permits = this.maxPermits;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * @return false if this limiter lets everything through
+     */
+    public boolean isLimited() {
+        return permitsPerNano > 0;
+    }
+
+    /**
+     * Waits for a permit.
+     *
+     * @param deadlineNanos the {@link System#nanoTime()} after which to give up
+     * @return true if a permit was acquired, false if it wouldn't be available before the deadline
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean acquire(final long deadlineNanos) throws InterruptedException {
+        if (!isLimited()) {
+            return true;
+        }
+        long wait = reserve(deadlineNanos);
+        if (wait < 0) {
+            return false;
+        }
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+        return true;
+    }
+
+    /**
+     * Takes a permit, possibly one that only becomes available in the future.
+     *
+     * @return how long to wait for the permit, or -1 if that is past the deadline
+     */
+    private synchronized long reserve(final long deadlineNanos) {
+        final long now = System.nanoTime();
+        permits = Math.min(maxPermits, permits + (now - lastRefill) * permitsPerNano);
+        lastRefill = now;
+        if (permits >= 1) {
+            permits -= 1;
+            return 0;
+        }
+        long wait = (long) Math.ceil((1 - permits) / permitsPerNano);
+        if (now + wait - deadlineNanos > 0) {
+            return -1;
+        }
+        permits -= 1;
+        return wait;
+    }
+}
@@ -0,0 +1,43 @@
+package com.twilio.jenkins;
+
+import org.kohsuke.stapler.DataBoundConstructor;
+
+/**
+ * A named list of phone numbers in the global configuration, such as an
+ * on-call rotation. Jobs name it in their to list as <code>@name</code>
+ * instead of repeating the numbers, so changing the group changes who every
+ * one of them notifies.
+ */
+public final class RecipientGroup {
+
+    private final String name;
+    private final String numbers;
+
+    @DataBoundConstructor
+    public RecipientGroup(final String name, final String numbers) {
+        this.name = name == null ? "" : name.trim();
+        this.numbers = numbers;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * @return the comma separated numbers as entered
+     */
+    public String getNumbers() {
+        return this.numbers;
+    }
+
+    /**
+     * Parses the numbers; the global configuration indexes them whenever it
+     * changes.
+     *
+     * @param defaultCountry the country code of numbers without one, or null
+     * @return the normalized numbers, without duplicates
+     */
+    String[] parseNumbers(final String defaultCountry) {
+        return PhoneNumbers.parseList(this.numbers, defaultCountry);
+    }
+}
@@ -0,0 +1,111 @@
+package com.twilio.jenkins;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.twilio.sdk.TwilioRestException;
+
+/**
+ * A {@link RetryingTransport} throttles the requests of another transport
+ * with a rate limiter per channel, and retries requests Twilio rejected
+ * because of rate limits or server errors. Retries back off exponentially
+ * with full jitter until the retry deadline of the notification passes.
+ */
+public final class RetryingTransport implements NotificationFanOut.Transport {
+    private static final Logger LOGGER = Logger.getLogger(RetryingTransport.class.getName());
+
+    /**
+     * Twilio's error code for "Too Many Requests".
+     */
+    static final int TOO_MANY_REQUESTS = 20429;
+
+    static final long BASE_DELAY_MILLIS = 500;
+    static final long MAX_DELAY_MILLIS = 30000;
+
+    private static final Random JITTER = new Random();
+
+    private final NotificationFanOut.Transport transport;
+    private final RateLimiter smsLimiter;
+    private final RateLimiter callLimiter;
+    private final long deadlineMillis;
+
+    /**
+     * Creates a transport.
+     *
+     * @param transport the transport to throttle and retry
+     * @param smsLimiter the limiter for text messages
+     * @param callLimiter the limiter for calls
+     * @param deadlineMillis how long after the first attempt a notification may still be retried
+     */
+    public RetryingTransport(final NotificationFanOut.Transport transport, final RateLimiter smsLimiter,
+            final RateLimiter callLimiter, final long deadlineMillis) {
+        this.transport = transport;
+        this.smsLimiter = smsLimiter;
+        this.callLimiter = callLimiter;
+        this.deadlineMillis = deadlineMillis;
+    }
+
+    public String send(final Notification notification, final Channel channel) throws Exception {
+        final RateLimiter limiter = channel == Channel.SMS ? smsLimiter : callLimiter;
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+        for (int attempt = 0;; attempt++) {
+            if (!limiter.acquire(deadline)) {
+                throw new IOException("Rate limit for " + channel + " leaves no room before the retry deadline");
+            }
+            try {
+                return transport.send(notification, channel);
+            } catch (Exception e) {
+                if (!isRetryable(e)) {
+                    throw e;
+                }
+                long delay = backoff(attempt);
+                if (System.nanoTime() + delay - deadline > 0) {
+                    throw e;
+                }
+                NotificationMetrics.INSTANCE.count(NotificationMetrics.Event.RETRIED, notification, channel);
+                if (LOGGER.isLoggable(Level.INFO)) {
+                    LOGGER.info("Retrying " + channel + " to " + notification.getNumber() + " in "
+                            + TimeUnit.NANOSECONDS.toMillis(delay) + "ms: " + e.getMessage());
+                }
+                TimeUnit.NANOSECONDS.sleep(delay);
+            }
+        }
+    }
+
+    /**
+     * @return a random delay between 0 and the exponential backoff for the attempt, in nanoseconds
+     */
+    static long backoff(final int attempt) {
+        long cap = Math.min(MAX_DELAY_MILLIS, BASE_DELAY_MILLIS << Math.min(attempt, 16));
+        double jitter;
+        synchronized (JITTER) {
+            jitter = JITTER.nextDouble();
+        }
+        return TimeUnit.MILLISECONDS.toNanos((long) (cap * jitter));
+    }
+
+    /**
+     * Decides whether a failure is worth retrying: Twilio rate limiting,
+     * Twilio server errors and network errors are, anything else (bad
+     * numbers, bad credentials) is not.
+     *
+     * @param e the failure
+     * @return true if the request may succeed when sent again
+     */
+    static boolean isRetryable(final Throwable e) {
+        if (e instanceof TwilioRestException) {
+            int code = ((TwilioRestException) e).getErrorCode();
+            // 0 means the error response wasn't a Twilio error document, e.g. from a proxy
+            return code == 0 || code == TOO_MANY_REQUESTS || (code >= 20500 && code < 20600);
+        }
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
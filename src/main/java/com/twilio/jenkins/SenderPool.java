@@ -0,0 +1,145 @@
+package com.twilio.jenkins;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A {@link SenderPool} picks the number a text message is sent from, so that
+ * a burst of messages isn't held to the send rate of a single number.
+ *
+ * Every recipient has a home number, picked by hashing their number, so they
+ * keep hearing from the same sender. When the home number has more messages
+ * in flight than a second number picked the same way, the message goes out
+ * from that one instead; bursts spread over the pool while quiet recipients
+ * stay where they are. Picking is lock-free: one array of in-flight counters
+ * is all the state.
+ *
+ * Every number has a rate limiter of its own. A message waiting for its
+ * sender's limiter counts as in flight, so a sender that is held back looks
+ * busy and the next message for one of its recipients spills over to another
+ * number.
+ */
+public final class SenderPool {
+
+    private final String[] numbers;
+    private final AtomicIntegerArray inFlight;
+    private final RateLimiter[] limiters;
+    private final long maxWaitNanos;
+
+    /**
+     * Creates a pool that sends as fast as Twilio lets it.
+     *
+     * @param primary the number calls are placed from, always in the pool
+     * @param others more numbers to send text messages from, may be empty
+     */
+    public SenderPool(final String primary, final String[] others) {
+        this(primary, others, 0, 0);
+    }
+
+    /**
+     * Creates a pool.
+     *
+     * @param primary the number calls are placed from, always in the pool
+     * @param others more numbers to send text messages from, may be empty
+     * @param permitsPerSecond the number of messages each number may send
+     *        per second; 0 or less means unlimited
+     * @param maxWaitMillis how long a message may wait for its sender's limit
+     */
+    public SenderPool(final String primary, final String[] others, final double permitsPerSecond,
+            final long maxWaitMillis) {
+        final Set<String> all = new LinkedHashSet<String>();
+        all.add(primary);
+        all.addAll(Arrays.asList(others));
+        this.numbers = all.toArray(new String[all.size()]);
+        this.inFlight = new AtomicIntegerArray(this.numbers.length);
+        this.limiters = new RateLimiter[this.numbers.length];
+        for (int i = 0; i < this.limiters.length; i++) {
+            this.limiters[i] = new RateLimiter(permitsPerSecond);
+        }
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+    }
+
+    /**
+     * @return the number calls are placed from
+     */
+    public String getPrimary() {
+        return this.numbers[0];
+    }
+
+    public int size() {
+        return this.numbers.length;
+    }
+
+    /**
+     * Picks the number to send a message to a recipient from. Every pick
+     * must be followed by a {@link #release} once the message was sent.
+     *
+     * @param to the number of the recipient
+     * @return the index of the sender
+     */
+    public int acquire(final String to) {
+        final int n = this.numbers.length;
+        int pick = 0;
+        if (n > 1) {
+            final int hash = spread(to.hashCode());
+            pick = (hash & Integer.MAX_VALUE) % n;
+            final int load = this.inFlight.get(pick);
+            if (load > 0) {
+                final int other = (pick + 1 + ((hash >>> 16) & Integer.MAX_VALUE) % (n - 1)) % n;
+                if (this.inFlight.get(other) < load) {
+                    pick = other;
+                }
+            }
+        }
+        this.inFlight.incrementAndGet(pick);
+        return pick;
+    }
+
+    /**
+     * @param index the index of a sender
+     * @return its number
+     */
+    public String get(final int index) {
+        return this.numbers[index];
+    }
+
+    /**
+     * Waits until a sender may send another message under its rate limit.
+     *
+     * @param index the index of a sender picked with {@link #acquire}
+     * @return false if its limit leaves no room before the maximum wait
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitPermit(final int index) throws InterruptedException {
+        return this.limiters[index].acquire(System.nanoTime() + this.maxWaitNanos);
+    }
+
+    /**
+     * Tells the pool that a message picked with {@link #acquire} was sent.
+     *
+     * @param index the index of the sender
+     */
+    public void release(final int index) {
+        this.inFlight.decrementAndGet(index);
+    }
+
+    /**
+     * @param index the index of a sender
+     * @return the number of messages in flight from it
+     */
+    int getInFlight(final int index) {
+        return this.inFlight.get(index);
+    }
+
+    /**
+     * Mixes the bits of a hash code, since those of strings that only differ
+     * in their last digits don't differ much.
+     */
+    private static int spread(final int h) {
+        int x = h * 0x9E3779B9;
+        return x ^ (x >>> 15);
+    }
+}
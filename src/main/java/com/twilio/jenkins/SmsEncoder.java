@@ -0,0 +1,253 @@
+package com.twilio.jenkins;
+
+import java.text.Normalizer;
+
+/**
+ * {@link SmsEncoder} works out how a text message is encoded and into how
+ * many segments it is split, which is what Twilio bills for and what the
+ * rate limits count.
+ *
+ * A message that only uses the GSM 03.38 alphabet is sent as 7-bit
+ * characters, 160 of them in a single segment or 153 in each segment of a
+ * longer message; the characters of the extension table, such as
+ * <code>[</code> or <code>&euro;</code>, take two. A single other character
+ * switches the whole message to UCS-2, with 70 or 67 characters per segment.
+ * So before counting, punctuation that word processors like, such as curly
+ * quotes and dashes, and accented letters outside the alphabet are replaced
+ * by their plain equivalents, as long as that makes the whole message GSM-7.
+ */
+public final class SmsEncoder {
+
+    /**
+     * The ways a text message can be encoded.
+     */
+    public enum Encoding {
+        GSM7(160, 153),
+        UCS2(70, 67);
+
+        private final int single;
+        private final int multi;
+
+        Encoding(final int single, final int multi) {
+            this.single = single;
+            this.multi = multi;
+        }
+    }
+
+    /**
+     * Stands in for a shortened url before it is known.
+     */
+    private static final String SHORT_URL = " https://tinyurl.com/xxxxxxxx";
+
+    private static final String ELLIPSIS = "...";
+
+    private static final String BASIC = "@\u00A3$\u00A5\u00E8\u00E9\u00F9\u00EC\u00F2\u00C7\n\u00D8\u00F8\r\u00C5\u00E5"
+            + "\u0394_\u03A6\u0393\u039B\u03A9\u03A0\u03A8\u03A3\u0398\u039E\u00C6\u00E6\u00DF\u00C9"
+            + " !\"#\u00A4%&'()*+,-./0123456789:;<=>?"
+            + "\u00A1ABCDEFGHIJKLMNOPQRSTUVWXYZ\u00C4\u00D6\u00D1\u00DC\u00A7"
+            + "\u00BFabcdefghijklmnopqrstuvwxyz\u00E4\u00F6\u00F1\u00FC\u00E0";
+
+    private static final String EXTENSION = "\f^{}\\[~]|\u20AC";
+
+    /**
+     * The number of septets of the characters below U+0400, 0 for those
+     * outside the alphabet. The euro sign is the only one above.
+     */
+    private static final byte[] SEPTETS = new byte[0x400];
+
+    static {
+        for (int i = 0; i < BASIC.length(); i++) {
+            SEPTETS[BASIC.charAt(i)] = 1;
+        }
+        for (int i = 0; i < EXTENSION.length() - 1; i++) {
+            SEPTETS[EXTENSION.charAt(i)] = 2;
+        }
+    }
+
+    private SmsEncoder() {
+    }
+
+    /**
+     * @param text a text message
+     * @return the encoding it is sent in
+     */
+    public static Encoding getEncoding(final CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (septets(text.charAt(i)) == 0) {
+                return Encoding.UCS2;
+            }
+        }
+        return Encoding.GSM7;
+    }
+
+    /**
+     * @param text a text message
+     * @return the number of segments it is sent in, 1 for an empty one
+     */
+    public static int getSegments(final CharSequence text) {
+        return getSegments(text, getEncoding(text));
+    }
+
+    private static int getSegments(final CharSequence text, final Encoding encoding) {
+        int total = 0;
+        for (int i = 0; i < text.length(); i++) {
+            total += units(text.charAt(i), encoding);
+        }
+        if (total <= encoding.single) {
+            return 1;
+        }
+        // a character taking two units is never split over two segments
+        int segments = 1;
+        int used = 0;
+        for (int i = 0; i < text.length(); i++) {
+            int units = units(text.charAt(i), encoding);
+            if (encoding == Encoding.UCS2 && Character.isHighSurrogate(text.charAt(i)) && i + 1 < text.length()) {
+                units = 2;
+                i++;
+            }
+            if (used + units > encoding.multi) {
+                segments++;
+                used = 0;
+            }
+            used += units;
+        }
+        return segments;
+    }
+
+    /**
+     * Returns whether a message fits into a number of segments once
+     * transliterated, with room for the shortened url of the build.
+     *
+     * @param message the message
+     * @param withUrl whether the url of the build is appended to it
+     * @param maxSegments the number of segments
+     * @return whether it fits
+     */
+    public static boolean fits(final String message, final boolean withUrl, final int maxSegments) {
+        return getSegments(transliterate(withUrl ? message + SHORT_URL : message)) <= maxSegments;
+    }
+
+    /**
+     * Replaces the characters outside the GSM-7 alphabet by plain ones, if
+     * that makes the whole message GSM-7.
+     *
+     * @param text a text message
+     * @return the message in GSM-7, or the message itself if it can't be
+     */
+    public static String transliterate(final String text) {
+        if (getEncoding(text) == Encoding.GSM7) {
+            return text;
+        }
+        final StringBuilder sb = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            if (septets(c) > 0) {
+                sb.append(c);
+                continue;
+            }
+            final String plain = transliterate(c);
+            if (plain == null) {
+                return text;
+            }
+            sb.append(plain);
+        }
+        return sb.toString();
+    }
+
+    private static String transliterate(final char c) {
+        switch (c) {
+            case '\u2018': case '\u2019': case '\u201A': case '\u2032': case '`': case '\u00B4':
+                return "'";
+            case '\u201C': case '\u201D': case '\u201E': case '\u2033': case '\u00AB': case '\u00BB':
+                return "\"";
+            case '\u2010': case '\u2011': case '\u2013': case '\u2014': case '\u2015': case '\u2212':
+                return "-";
+            case '\u2026':
+                return ELLIPSIS;
+            case '\u00A0': case '\u2002': case '\u2003': case '\u2009': case '\t':
+                return " ";
+            case '\u2022': case '\u00B7':
+                return "*";
+            case '\u0141':
+                return "L";
+            case '\u0142':
+                return "l";
+            case '\u0110':
+                return "D";
+            case '\u0111':
+                return "d";
+            default:
+                break;
+        }
+        // an accented letter without its accents, e.g. a for \u00E1
+        final String decomposed = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD);
+        final StringBuilder sb = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++) {
+            final char d = decomposed.charAt(i);
+            if (Character.getType(d) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            if (septets(d) == 0) {
+                return null;
+            }
+            sb.append(d);
+        }
+        return sb.length() == 0 ? null : sb.toString();
+    }
+
+    /**
+     * Makes a message and what follows it fit into a number of segments:
+     * transliterates it, and then cuts the message at a word, marking the
+     * cut with an ellipsis. The suffix, such as the url of the build, is
+     * kept whole; if it doesn't fit even after an empty message it is
+     * dropped instead.
+     *
+     * @param message the message
+     * @param suffix what is appended to the message, may be empty
+     * @param maxSegments the segments to fit into, 0 for any number
+     * @return the message and the suffix, in at most the given segments
+     */
+    public static String fit(final String message, final String suffix, final int maxSegments) {
+        final String text = transliterate(message + suffix);
+        if (maxSegments <= 0 || getSegments(text) <= maxSegments) {
+            return text;
+        }
+        final String plain = transliterate(message);
+        final String tail = transliterate(suffix);
+        final Encoding encoding = getEncoding(text);
+        if (getSegments(ELLIPSIS + tail, encoding) > maxSegments) {
+            return tail.length() == 0 ? plain : fit(message, "", maxSegments);
+        }
+        // the longest prefix that fits; longer ones never take fewer segments
+        int low = 0;
+        int high = plain.length();
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (getSegments(plain.substring(0, mid) + ELLIPSIS + tail, encoding) <= maxSegments) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        int cut = low;
+        if (cut > 0 && Character.isHighSurrogate(plain.charAt(cut - 1))) {
+            cut--;
+        }
+        final int space = plain.lastIndexOf(' ', cut);
+        if (space > 0 && cut - space < 20) {
+            cut = space;
+        }
+        return plain.substring(0, cut).trim() + ELLIPSIS + tail;
+    }
+
+    private static int septets(final char c) {
+        if (c < SEPTETS.length) {
+            return SEPTETS[c];
+        }
+        return c == '\u20AC' ? 2 : 0;
+    }
+
+    private static int units(final char c, final Encoding encoding) {
+        return encoding == Encoding.GSM7 ? septets(c) : 1;
+    }
+}
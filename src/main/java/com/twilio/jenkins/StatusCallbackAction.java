@@ -0,0 +1,77 @@
+package com.twilio.jenkins;
+
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.Hudson;
+import hudson.model.UnprotectedRootAction;
+
+import java.io.IOException;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+/**
+ * Takes the status callbacks Twilio posts to <code>/twilio-status/</code>
+ * as a text message or call it was asked to send makes progress, and hands
+ * them to the {@link DeliveryTracker}. Twilio doesn't log in, so the action
+ * is unprotected; only requests signed with the auth token are taken.
+ */
+@Extension
+public class StatusCallbackAction implements UnprotectedRootAction {
+
+    static final String URL_NAME = "twilio-status";
+
+    public String getIconFileName() {
+        return null;
+    }
+
+    public String getDisplayName() {
+        return "Twilio status callback";
+    }
+
+    public String getUrlName() {
+        return URL_NAME;
+    }
+
+    /**
+     * Records the status of a message or call.
+     */
+    @SuppressWarnings("unchecked")
+    public void doIndex(final StaplerRequest req, final StaplerResponse rsp) throws IOException {
+        final Hudson hudson = Hudson.getInstance();
+        final TwilioNotifier.DescriptorImpl descriptor = hudson == null ? null
+                : hudson.getDescriptorByType(TwilioNotifier.DescriptorImpl.class);
+        final String url = descriptor == null ? null : descriptor.getStatusCallbackUrl();
+        if (url == null) {
+            rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        if (!TwilioSignature.isValid(descriptor.getAuthToken(), url, (Map<String, String[]>) req.getParameterMap(),
+                req.getHeader(TwilioSignature.HEADER))) {
+            rsp.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+        // messages report MessageStatus, or SmsStatus from older accounts; calls report CallStatus
+        final String sid = first(req, "MessageSid", "SmsSid", "CallSid");
+        final String status = first(req, "MessageStatus", "SmsStatus", "CallStatus");
+        if (sid == null || status == null) {
+            rsp.sendError(HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+        descriptor.getDeliveryTracker().update(sid, status);
+        rsp.setStatus(HttpServletResponse.SC_NO_CONTENT);
+    }
+
+    private static String first(final StaplerRequest req, final String... names) {
+        for (String name : names) {
+            String value = Util.fixEmptyAndTrim(req.getParameter(name));
+            if (value != null) {
+                return value;
+            }
+        }
+        return null;
+    }
+}
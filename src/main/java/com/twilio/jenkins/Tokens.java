@@ -0,0 +1,31 @@
+package com.twilio.jenkins;
+
+import java.security.SecureRandom;
+
+/**
+ * {@link Tokens} creates the random tokens that stand in for a call or an
+ * escalation in the urls Jenkins hands out to Twilio and to recipients.
+ */
+final class Tokens {
+
+    private static final int TOKEN_BYTES = 16;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private Tokens() {
+    }
+
+    /**
+     * @return a new token of 32 hexadecimal digits
+     */
+    static String next() {
+        final byte[] bytes = new byte[TOKEN_BYTES];
+        synchronized (RANDOM) {
+            RANDOM.nextBytes(bytes);
+        }
+        final StringBuilder sb = new StringBuilder(TOKEN_BYTES * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,224 @@
+package com.twilio.jenkins;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.HttpConnection;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.ExecutionContext;
+import org.apache.http.protocol.HttpContext;
+
+import com.twilio.sdk.TwilioRestClient;
+import com.twilio.sdk.resource.instance.Account;
+
+/**
+ * A {@link TwilioConnection} is a long-lived {@link TwilioRestClient} for one
+ * set of credentials, backed by a pool of keep-alive connections that is
+ * shared by all builds. It also keeps track of how often pooled connections
+ * are reused.
+ *
+ * Senders {@link #retain()} the client while they use it, so that closing it
+ * after it was replaced only shuts the pool down once they are done.
+ */
+public final class TwilioConnection {
+
+    static final int MAX_CONNECTIONS = 20;
+    static final int CONNECT_TIMEOUT_MILLIS = 5000;
+    static final int READ_TIMEOUT_MILLIS = 30000;
+
+    private final String accountSid;
+    private final String authToken;
+    private final String endpoint;
+    private final PoolingClientConnectionManager connectionManager;
+    private final TwilioRestClient client;
+    private final Account account;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong reusedConnections = new AtomicLong();
+
+    private int users;
+    private boolean closed;
+
+    /**
+     * Creates a client for the given credentials.
+     *
+     * @param accountSid the Twilio account SID
+     * @param authToken the Twilio auth token
+     */
+    public TwilioConnection(final String accountSid, final String authToken) {
+        this(accountSid, authToken, null);
+    }
+
+    /**
+     * Creates a client for the given credentials that talks to another
+     * endpoint than the Twilio API, such as a local fake.
+     *
+     * @param accountSid the Twilio account SID
+     * @param authToken the Twilio auth token
+     * @param endpoint the base url of the API, or null for the Twilio API
+     */
+    public TwilioConnection(final String accountSid, final String authToken, final String endpoint) {
+        this.accountSid = accountSid;
+        this.authToken = authToken;
+        this.endpoint = endpoint;
+
+        this.connectionManager = new PoolingClientConnectionManager();
+        this.connectionManager.setMaxTotal(MAX_CONNECTIONS);
+        this.connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS);
+
+        final DefaultHttpClient httpClient = new DefaultHttpClient(this.connectionManager);
+        HttpConnectionParams.setConnectionTimeout(httpClient.getParams(), CONNECT_TIMEOUT_MILLIS);
+        HttpConnectionParams.setSoTimeout(httpClient.getParams(), READ_TIMEOUT_MILLIS);
+        httpClient.getCredentialsProvider().setCredentials(AuthScope.ANY,
+                new UsernamePasswordCredentials(accountSid, authToken));
+        httpClient.addRequestInterceptor(new HttpRequestInterceptor() {
+            public void process(final HttpRequest request, final HttpContext context) {
+                requests.incrementAndGet();
+                // A connection that already carried a request came from the pool
+                HttpConnection connection = (HttpConnection) context.getAttribute(ExecutionContext.HTTP_CONNECTION);
+                if (connection != null && connection.getMetrics().getRequestCount() > 0) {
+                    reusedConnections.incrementAndGet();
+                }
+            }
+        });
+
+        this.client = endpoint == null ? new TwilioRestClient(accountSid, authToken)
+                : new TwilioRestClient(accountSid, authToken, endpoint);
+        this.client.setHttpclient(httpClient);
+        this.account = this.client.getAccount();
+    }
+
+    /**
+     * Checks whether this client was created for the given credentials and
+     * endpoint.
+     *
+     * @param accountSid the Twilio account SID
+     * @param authToken the Twilio auth token
+     * @param endpoint the base url of the API, or null for the Twilio API
+     * @return true if the credentials and endpoint are the ones of this client
+     */
+    public boolean isFor(final String accountSid, final String authToken, final String endpoint) {
+        return equal(this.accountSid, accountSid) && equal(this.authToken, authToken) && equal(this.endpoint, endpoint);
+    }
+
+    private static boolean equal(final String a, final String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    public TwilioRestClient getClient() {
+        return this.client;
+    }
+
+    /**
+     * @return the main account, the one the client authenticates as
+     */
+    public Account getAccount() {
+        return this.account;
+    }
+
+    /**
+     * Marks the client as used, until {@link #release()}, so closing it waits.
+     *
+     * @return false if the client is closed and must not be used
+     */
+    public synchronized boolean retain() {
+        if (this.closed) {
+            return false;
+        }
+        this.users++;
+        return true;
+    }
+
+    /**
+     * Marks a use of the client as done, shutting the pool down if it was the
+     * last one of a closed client.
+     */
+    public void release() {
+        final boolean last;
+        synchronized (this) {
+            this.users--;
+            last = this.closed && this.users == 0;
+        }
+        if (last) {
+            this.connectionManager.shutdown();
+        }
+    }
+
+    /**
+     * Closes the idle pooled connections right away, and shuts the pool down
+     * once every sender that retained the client released it.
+     */
+    public void close() {
+        final boolean unused;
+        synchronized (this) {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            unused = this.users == 0;
+        }
+        if (unused) {
+            this.connectionManager.shutdown();
+        } else {
+            this.connectionManager.closeIdleConnections(0, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * @return the number of connections currently used by a request
+     */
+    public int getLeasedConnections() {
+        return getStats().getLeased();
+    }
+
+    /**
+     * @return the number of idle connections kept open in the pool
+     */
+    public int getAvailableConnections() {
+        return getStats().getAvailable();
+    }
+
+    /**
+     * @return the number of requests waiting for a connection
+     */
+    public int getPendingConnections() {
+        return getStats().getPending();
+    }
+
+    public int getMaxConnections() {
+        return getStats().getMax();
+    }
+
+    /**
+     * @return the number of requests sent to Twilio
+     */
+    public long getRequestCount() {
+        return this.requests.get();
+    }
+
+    /**
+     * @return the number of requests sent on a connection that was reused from the pool
+     */
+    public long getReusedConnectionCount() {
+        return this.reusedConnections.get();
+    }
+
+    /**
+     * @return the fraction of requests that reused a pooled connection, between 0 and 1
+     */
+    public double getConnectionReuseRate() {
+        long total = this.requests.get();
+        return total == 0 ? 0 : (double) this.reusedConnections.get() / total;
+    }
+
+    private PoolStats getStats() {
+        return this.connectionManager.getTotalStats();
+    }
+}
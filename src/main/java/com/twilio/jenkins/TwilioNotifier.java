@@ -3,6 +3,11 @@ package com.twilio.jenkins;
 import hudson.Extension;
 import hudson.Functions;
 import hudson.Launcher;
+import hudson.Util;
+import hudson.matrix.MatrixAggregatable;
+import hudson.matrix.MatrixAggregator;
+import hudson.matrix.MatrixBuild;
+import hudson.matrix.MatrixRun;
 import hudson.model.*;
 import hudson.scm.ChangeLogSet;
 import hudson.scm.ChangeLogSet.Entry;
@@ -12,26 +17,20 @@ import hudson.tasks.Notifier;
 import hudson.tasks.Publisher;
 import hudson.util.FormValidation;
 
+import java.io.File;
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
-import java.net.URLEncoder;
 import java.util.*;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import net.sf.json.JSONObject;
 
-import org.apache.commons.httpclient.HttpClient;
-import org.apache.commons.httpclient.HttpStatus;
-import org.apache.commons.httpclient.methods.GetMethod;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerRequest;
 
-import com.twilio.sdk.TwilioRestClient;
-import com.twilio.sdk.TwilioRestException;
-import com.twilio.sdk.resource.factory.CallFactory;
-import com.twilio.sdk.resource.factory.SmsFactory;
-import com.twilio.sdk.resource.instance.Account;
 
 /**
  * A {@link TwilioNotifier} is a {@link Notifier} that uses the Rest API of
@@ -43,9 +42,24 @@ import com.twilio.sdk.resource.instance.Account;
  *
  * @author Christer Fahlgren (christer@twilio.com)
  */
-public class TwilioNotifier extends Notifier {
+public class TwilioNotifier extends Notifier implements MatrixAggregatable {
 	private static final Logger LOGGER = Logger.getLogger(TwilioNotifier.class.getName());
 
+    static final int DEFAULT_DISPATCH_POOL_SIZE = 4;
+    static final int DEFAULT_DISPATCH_QUEUE_CAPACITY = 1000;
+    static final int DEFAULT_FAN_OUT_CONCURRENCY = 8;
+    static final int DEFAULT_DIGEST_MAX_SIZE = 10;
+    static final int DEFAULT_RETRY_DEADLINE_SECONDS = 120;
+    static final int DEFAULT_FLAP_THRESHOLD = 4;
+    static final long ESCALATION_TICK_MILLIS = 1000;
+    static final long OUTBOX_RETRY_TICK_MILLIS = TimeUnit.SECONDS.toMillis(15);
+
+    /**
+     * The maximum number of changelog entries scanned for authors when a build
+     * has no culprits.
+     */
+    static final int MAX_CHANGELOG_ENTRIES = 500;
+
     /**
      * The message to send/read to the recipient.
      */
@@ -79,11 +93,47 @@ public class TwilioNotifier extends Notifier {
     private final Boolean callNotification;
 
     private final String culpritMessage;
-    private final Map<String, String> substitutionAttributes;
 
     /**
-     * Databound constructor matching the corresponding Jelly configuration
-     * items.
+     * The message, parsed once.
+     */
+    private transient MessageTemplate messageTemplate;
+
+    /**
+     * The culprit message, parsed once, or null to use the message.
+     */
+    private transient MessageTemplate culpritMessageTemplate;
+
+    /**
+     * The to list, parsed into normalized numbers without duplicates, and
+     * parsed again when the default country changes.
+     */
+    private transient volatile ParsedToList toNumbers;
+
+    /**
+     * The recipient groups named in the to list, resolved when notifying so
+     * changes to the groups apply right away.
+     */
+    private transient String[] toGroups;
+
+    /**
+     * When the numbers of the to list may be called, as understood by
+     * {@link CallSchedule}; empty for any time.
+     */
+    private final String callHours;
+
+    /**
+     * The call hours, parsed once, or null to call at any time.
+     */
+    private transient CallSchedule callSchedule;
+
+    /**
+     * Notify once for a whole matrix build instead of once per configuration.
+     */
+    private final Boolean aggregateMatrix;
+
+    /**
+     * Creates a notifier that calls at any time.
      *
      * @param message
      *            the message to send
@@ -104,10 +154,41 @@ public class TwilioNotifier extends Notifier {
 	 * @param culpritMessage
 	 * 			  message to send to culprits
      */
-    @DataBoundConstructor
     public TwilioNotifier(final String message, final String toList, final String onlyOnFailureOrRecovery,
             final String includeUrl, final String smsNotification, final String callNotification,
             final String sendToCulprits, final String culpritMessage) {
+        this(message, toList, onlyOnFailureOrRecovery, includeUrl, smsNotification, callNotification,
+                sendToCulprits, culpritMessage, null);
+    }
+
+    /**
+     * Creates a notifier that notifies for every configuration of a matrix
+     * build.
+     *
+     * @param callHours
+     *            when the to list may be called, texted instead otherwise
+     */
+    public TwilioNotifier(final String message, final String toList, final String onlyOnFailureOrRecovery,
+            final String includeUrl, final String smsNotification, final String callNotification,
+            final String sendToCulprits, final String culpritMessage, final String callHours) {
+        this(message, toList, onlyOnFailureOrRecovery, includeUrl, smsNotification, callNotification,
+                sendToCulprits, culpritMessage, callHours, null);
+    }
+
+    /**
+     * Databound constructor matching the corresponding Jelly configuration
+     * items.
+     *
+     * @param callHours
+     *            when the to list may be called, texted instead otherwise
+     * @param aggregateMatrix
+     *            whether to notify once for a whole matrix build
+     */
+    @DataBoundConstructor
+    public TwilioNotifier(final String message, final String toList, final String onlyOnFailureOrRecovery,
+            final String includeUrl, final String smsNotification, final String callNotification,
+            final String sendToCulprits, final String culpritMessage, final String callHours,
+            final String aggregateMatrix) {
         this.message = message;
         this.toList = toList;
         this.onlyOnFailureOrRecovery = convertToBoolean(onlyOnFailureOrRecovery);
@@ -116,18 +197,49 @@ public class TwilioNotifier extends Notifier {
         this.callNotification = convertToBoolean(callNotification);
         this.sendToCulprits = convertToBoolean(sendToCulprits);
         this.culpritMessage = culpritMessage;
+        this.callHours = callHours;
+        this.aggregateMatrix = convertToBoolean(aggregateMatrix);
+        compileTemplates();
+    }
 
-        substitutionAttributes = new HashMap<String, String>();
+    /**
+     * Parses the templates and the to list again after the configuration was loaded from disk.
+     *
+     * @return this
+     */
+    protected Object readResolve() {
+        compileTemplates();
+        return this;
+    }
 
+    private void compileTemplates() {
+        this.toNumbers = null;
+        this.toGroups = PhoneNumbers.parseGroups(this.toList);
+        try {
+            this.callSchedule = CallSchedule.parse(this.callHours);
+        } catch (IllegalArgumentException e) {
+            LOGGER.warning("Ignoring the call hours \"" + this.callHours + "\": " + e.getMessage());
+            this.callSchedule = null;
+        }
+        this.messageTemplate = MessageTemplate.compile(this.message);
+        if (this.culpritMessage == null || this.culpritMessage.trim().isEmpty()) {
+            this.culpritMessageTemplate = null;
+        } else {
+            this.culpritMessageTemplate = MessageTemplate.compile(this.culpritMessage);
+        }
     }
 
+    /**
+     * Substitutes the <code>%NAME%</code> placeholders in a message. This
+     * parses the message on every call; the send loops use the templates
+     * compiled in the constructor instead.
+     *
+     * @param inputString the message
+     * @param substitutionMap the placeholder values
+     * @return the message with the placeholders substituted
+     */
     protected static String substituteAttributes(String inputString, Map<String, String> substitutionMap) {
-        String result = inputString;
-        for (String key : substitutionMap.keySet()) {
-            String replaceValue = substitutionMap.get(key);
-            result = result.replaceAll(key, replaceValue);
-        }
-        return result;
+        return MessageTemplate.compile(inputString).render(substitutionMap);
     }
 
     /**
@@ -147,23 +259,19 @@ public class TwilioNotifier extends Notifier {
      */
     @SuppressWarnings({"UnusedDeclaration"})
 	public FormValidation doCheckToList(@QueryParameter String value) {
-        if (validatePhoneNoList(value))
-            return FormValidation.ok();
-        else
-            return FormValidation
-                    .error("The to list must consist of at least one phone number. Multiple numbers are comma separated.");
-    }
-
-    private boolean validatePhoneNoList(String toList) {
-
-        String[] nrs = toList.split(",");
-        if (nrs == null)
-            return false;
-        for (String number : nrs) {
-            if (!number.matches("^([0-9\\(\\)\\/\\+ \\-]*)$"))
-                return false;
+        if (value == null || value.trim().isEmpty()) {
+            return FormValidation.warning("Only the culprits will be notified. Multiple numbers are comma separated.");
+        }
+        String invalid = PhoneNumbers.findInvalid(value, getDescriptor().getDefaultCountry());
+        if (invalid != null) {
+            return FormValidation.error(getDescriptor().getInvalidNumberMessage(invalid));
         }
-        return false;
+        for (String group : PhoneNumbers.parseGroups(value)) {
+            if (getDescriptor().getRecipientGroupNumbers(group) == null) {
+                return FormValidation.warning("There is no recipient group named " + group);
+            }
+        }
+        return FormValidation.ok();
     }
 
     /**
@@ -186,6 +294,32 @@ public class TwilioNotifier extends Notifier {
         return this.culpritMessage;
     }
 
+    /**
+     * Getter for the call hours.
+     *
+     * @return the call hours
+     */
+	@SuppressWarnings({"UnusedDeclaration"})
+    public String getCallHours() {
+        return this.callHours;
+    }
+
+    /**
+     * Validates the call hours.
+     *
+     * @param value the call hours to validate
+     * @return {@link FormValidation#ok()} if valid, {@link FormValidation#error(String)} if not valid
+     */
+	@SuppressWarnings({"UnusedDeclaration"})
+    public FormValidation doCheckCallHours(@QueryParameter String value) {
+        try {
+            CallSchedule.parse(value);
+            return FormValidation.ok();
+        } catch (IllegalArgumentException e) {
+            return FormValidation.error(e.getMessage());
+        }
+    }
+
     /**
      * Getter for callNotification.
      *
@@ -216,6 +350,20 @@ public class TwilioNotifier extends Notifier {
         return this.sendToCulprits;
     }
 
+    /**
+     * Getter for aggregateMatrix flag.
+     *
+     * @return the aggregateMatrix flag
+     */
+	@SuppressWarnings({"UnusedDeclaration"})
+    public Boolean getAggregateMatrix() {
+        return this.aggregateMatrix;
+    }
+
+    private boolean isAggregateMatrix() {
+        return this.aggregateMatrix != null && this.aggregateMatrix;
+    }
+
     /**
      * Converts a string to a Boolean.
      *
@@ -256,47 +404,173 @@ public class TwilioNotifier extends Notifier {
 
     @Override
     public boolean perform(final AbstractBuild<?, ?> build, final Launcher launcher, final BuildListener listener) {
-		if(build == null) return false;
+        if (isAggregateMatrix() && build instanceof MatrixRun) {
+            // the parent build notifies once for all configurations
+            return true;
+        }
+        return notifyFor(build, null, listener);
+    }
+
+    /**
+     * Collects the results of the configurations of a matrix build, to
+     * notify once when it finished.
+     *
+     * @return the aggregator, or null to notify for every configuration
+     */
+    public MatrixAggregator createAggregator(final MatrixBuild build, final Launcher launcher,
+            final BuildListener listener) {
+        if (!isAggregateMatrix()) {
+            return null;
+        }
+        return new MatrixResultAggregator(this, build, launcher, listener);
+    }
 
-		substitutionAttributes.put("%PROJECT%", build.getProject().getDisplayName());
-		substitutionAttributes.put("%BUILD%", build.getDisplayName());
-		substitutionAttributes.put("%STATUS%", build.getResult().toString());
+    /**
+     * Notifies for a build.
+     *
+     * @param build the build
+     * @param configurations which configurations of a matrix build were not
+     *        successful, appended to <code>%STATUS%</code>; or null
+     * @param listener the listener of the build
+     * @return true
+     */
+    boolean notifyFor(final AbstractBuild<?, ?> build, final String configurations, final BuildListener listener) {
+        final long start = System.nanoTime();
+        try {
+            return sendNotifications(build, configurations, listener);
+        } finally {
+            NotificationMetrics.INSTANCE.recordSince(NotificationMetrics.Timer.PERFORM, start);
+        }
+    }
 
+    private boolean sendNotifications(final AbstractBuild<?, ?> build, final String configurations,
+            final BuildListener listener) {
+		if(build == null) return false;
 
-		if (!shouldNotify(build)) {
-			LOGGER.warning("Not notifying: " + build.getDisplayName());
+		final String job = build.getProject().getFullName();
+		final EscalationScheduler escalations = getDescriptor().getCurrentEscalationScheduler();
+		if (escalations != null && build.getResult() == Result.SUCCESS) {
+			int cancelled = escalations.cancel(job);
+			if (cancelled > 0) {
+				listener.getLogger().println("TwilioNotifier: cancelled " + cancelled + " pending calls, the job recovered");
+			}
+		}
+		final boolean notify = shouldNotify(build);
+		FlapDetector.Decision decision = notify ? FlapDetector.Decision.NOTIFY : FlapDetector.Decision.SUPPRESS;
+		if (getDescriptor().isFlapDetectionEnabled()) {
+			decision = getDescriptor().getFlapDetector().record(job, build.getResult(), notify,
+					System.currentTimeMillis());
+		}
+		if (decision == FlapDetector.Decision.SUPPRESS) {
+			if (notify) {
+				listener.getLogger().println("TwilioNotifier: already notified for this result recently, not notifying");
+			}
+			if (LOGGER.isLoggable(Level.FINE)) {
+				LOGGER.fine("Not notifying: " + build.getDisplayName());
+			}
 			return true;
 		}
-		LOGGER.info("Notifying: " + build.getProject().getDisplayName() + " " + build.getDisplayName());
-
-		// Get the main account (The one we used to authenticate the client)
-		final TwilioRestClient client = new TwilioRestClient(getDescriptor().getAccountSID(), getDescriptor().getAuthToken());
-		final Account mainAccount = client.getAccount();
 
-		Set<User> culpritList = getCulpritList(build);
+		final Set<User> culpritList = getCulpritList(build);
 		String culpritString = culpritStringFromList(culpritList);
-		LOGGER.info("Culprits: " + culpritString);
-		substitutionAttributes.put("%CULPRITS%", culpritString);
-
-		// Send an sms
-		final SmsFactory smsFactory = mainAccount.getSmsFactory();
-		final CallFactory callFactory = mainAccount.getCallFactory();
-		final String[] toArray = getToList().split(",");
-		final String url = getDescriptor().getUrl() + build.getUrl();
-		
-		sendToToNumbers(toArray, url, callFactory, smsFactory);
+		if (LOGGER.isLoggable(Level.FINE)) {
+			LOGGER.fine("Notifying: " + build.getProject().getDisplayName() + " " + build.getDisplayName()
+					+ ", culprits: " + culpritString);
+		}
 
-		if (sendToCulprits) {
-			sendToCulprits(url, callFactory, culpritList, smsFactory);
+		// Only the long url goes into the notifications, it is shortened when the text is sent. Calls
+		// get it too, in case they become a text outside of call hours; the transport only appends it to texts.
+		// null in configurations saved before the flag existed
+		final String url = Boolean.TRUE.equals(this.includeUrl) ? getDescriptor().getUrl() + build.getUrl() : null;
+		final String status = configurations == null ? build.getResult().toString()
+				: build.getResult() + " " + configurations;
+		final NotificationContext context = fitCulprits(new NotificationContext(job,
+				build.getProject().getDisplayName(), build.getDisplayName(), status, culpritString, url),
+				culpritList);
+
+		final List<Notification> notifications;
+		// a digest lists the flapping text and the texts sent instead of a call, not just the result
+		final Set<Notification> verbatim = new HashSet<Notification>();
+		if (decision == FlapDetector.Decision.FLAPPING) {
+			String flapping = build.getProject().getDisplayName() + " is flapping, its result changed "
+					+ getDescriptor().getFlapDetector().getChanges(job) + " times in the last "
+					+ FlapDetector.HISTORY + " builds. " + build.getDisplayName() + " is " + build.getResult()
+					+ ". No more notifications for it for a while.";
+			listener.getLogger().println("TwilioNotifier: " + flapping);
+			notifications = createNotifications(context, culpritList, flapping);
+			verbatim.addAll(notifications);
+		} else {
+			notifications = createNotifications(context, culpritList);
+			if (!this.smsNotification) {
+				for (Notification notification : notifications) {
+					if (notification.isSms()) {
+						verbatim.add(notification);
+					}
+				}
+			}
+		}
+		final String buildName = build.getProject().getDisplayName() + " " + build.getDisplayName();
+		NotificationResult.Callback callback = null;
+		if (getDescriptor().getStatusCallbackUrl() != null) {
+			final DeliveryAction deliveries = new DeliveryAction();
+			build.addAction(deliveries);
+			callback = new NotificationResult.Callback() {
+				public void done(final NotificationResult sent) {
+					// a build that is still running is saved when it completes
+					if (deliveries.add(sent) && !build.isBuilding()) {
+						try {
+							build.save();
+						} catch (IOException e) {
+							LOGGER.log(Level.WARNING, "Could not save the deliveries of " + buildName, e);
+						}
+					}
+				}
+			};
+		}
+		NotificationResult result = getDescriptor().submit(buildName, context.getSummary(), notifications, verbatim,
+				callback);
+		listener.getLogger().println("TwilioNotifier: " + result);
+		if (!result.getSids().isEmpty()) {
+			listener.getLogger().println("TwilioNotifier: Twilio SIDs " + result.getSids());
 		}
 
         return true;
     }
 
-	private void sendToCulprits(String absoluteBuildURL, CallFactory callFactory, Set<User> culpritList, SmsFactory smsFactory) {
-		LOGGER.info("Sending to culprits");
+	/**
+	 * Creates the notifications for a build. Only reads the configuration of
+	 * this notifier, so concurrent builds can call it at the same time.
+	 *
+	 * @param context the build to notify for
+	 * @param culpritList the users who broke the build
+	 * @return the notifications for the to list and the culprits
+	 */
+	List<Notification> createNotifications(final NotificationContext context, final Set<User> culpritList) {
+		return createNotifications(context, culpritList, null);
+	}
+
+	/**
+	 * Creates the notifications for a build.
+	 *
+	 * @param context the build to notify for
+	 * @param culpritList the users who broke the build
+	 * @param fixedMessage the message to send to everybody instead of the configured ones, or null
+	 * @return the notifications for the to list and the culprits
+	 */
+	List<Notification> createNotifications(final NotificationContext context, final Set<User> culpritList,
+			final String fixedMessage) {
+		final List<Notification> notifications = new ArrayList<Notification>();
+		collectToNumbers(context, resolveToNumbers(), fixedMessage, notifications);
+		if (sendToCulprits) {
+			collectCulprits(context, culpritList, fixedMessage, notifications);
+		}
+		return notifications;
+	}
+
+	private void collectCulprits(NotificationContext context, Set<User> culpritList, String fixedMessage,
+			List<Notification> notifications) {
 		if(culpritList == null || culpritList.isEmpty()) {
-			LOGGER.info("Not sending messages to culprits since there aren't any");
+			LOGGER.fine("Not sending messages to culprits since there aren't any");
 			return;
 		}
 		for (final User to : culpritList) {
@@ -305,109 +579,127 @@ public class TwilioNotifier extends Notifier {
 				continue;
 			}
 
-			MobilePhoneProperty property = to.getProperty(MobilePhoneProperty.class);
-			if(property == null) {
-				LOGGER.warning("User " + to.getDisplayName() + " doesn't have the MobilePhoneProperty");
-				continue;
-			}
-
-			String toNumber = property.getMobilephone();
+			String toNumber = PhoneNumberIndex.INSTANCE.getNumber(to);
 			if(toNumber == null || toNumber.isEmpty()) {
-				LOGGER.warning("User " + to.getDisplayName() + " doesn't have a phone number listed");
+				if (LOGGER.isLoggable(Level.FINE)) {
+					LOGGER.fine("User " + to.getDisplayName() + " doesn't have a phone number listed");
+				}
 				continue;
 			}
 
-			LOGGER.info("Preparing to notify to " + to.getDisplayName() + " at " + toNumber);
-
-			final Map<String, String> localSubAttrs = new HashMap<String, String>(substitutionAttributes);
-			localSubAttrs.put("%CULPRIT-NAME%", to.getDisplayName());
+			final Map<String, String> localSubAttrs = context.getAttributes(to.getDisplayName());
 
 			String messageToSend;
-			if (this.culpritMessage == null || this.culpritMessage.trim().isEmpty()) {
-				LOGGER.info("Empty culprit message. Using the generic message instead");
-				messageToSend = substituteAttributes(this.message, localSubAttrs);
+			if (fixedMessage != null) {
+				messageToSend = fixedMessage;
+			} else if (this.culpritMessageTemplate == null) {
+				messageToSend = this.messageTemplate.render(localSubAttrs);
 			} else {
-				LOGGER.info("Using the specified culprit message.");
-				messageToSend = substituteAttributes(this.culpritMessage, localSubAttrs);
+				messageToSend = this.culpritMessageTemplate.render(localSubAttrs);
 			}
 
-			final String message = messageToSend;
-
-			if (this.smsNotification) {
-				LOGGER.info("Sending SMS notification to culprit");
-				String smsMsg = message;
-				if (this.includeUrl) {
-					try {
-						LOGGER.info("Tinyifying URL");
-						smsMsg += " " + createTinyUrl(absoluteBuildURL);
-					} catch (IOException e) {
-						logException(e);
-					}
-				}
+			notifications.add(newNotification(context, to.getDisplayName(), toNumber, messageToSend,
+					PhoneNumberIndex.INSTANCE.getCallSchedule(to)));
+		}
+	}
 
-				try {
-					LOGGER.info("Sending SMS message to " + to.getDisplayName() + "(" + toNumber + "): " + smsMsg);
-					sendSMS(smsMsg, smsFactory, getDescriptor().fromPhoneNumber, toNumber);
-				} catch (TwilioRestException e) {
-					logException(e);
-				}
-			}
-			if (this.callNotification) {
-				try {
-					LOGGER.info("Sending phone call message to " + to.getDisplayName() + "(" + toNumber + "): " + message);
-					call(message, callFactory, getDescriptor().fromPhoneNumber, toNumber);
-				} catch (TwilioRestException e) {
-					logException(e);
-				} catch (UnsupportedEncodingException e) {
-					logException(e);
-				}
+	/**
+	 * @return the numbers of the to list and of the groups it names, each once
+	 */
+	private String[] resolveToNumbers() {
+		final String country = PhoneNumbers.getConfiguredDefaultCountry();
+		ParsedToList cached = this.toNumbers;
+		if (cached == null || !Util.fixNull(country).equals(Util.fixNull(cached.country))) {
+			cached = new ParsedToList(country, PhoneNumbers.parseList(this.toList, country));
+			this.toNumbers = cached;
+		}
+		final String[] parsed = cached.numbers;
+		if (this.toGroups.length == 0) {
+			return parsed;
+		}
+		final Set<String> numbers = new LinkedHashSet<String>(Arrays.asList(parsed));
+		for (String group : this.toGroups) {
+			String[] groupNumbers = getDescriptor().getRecipientGroupNumbers(group);
+			if (groupNumbers == null) {
+				LOGGER.warning("There is no recipient group named " + group);
+				continue;
 			}
+			numbers.addAll(Arrays.asList(groupNumbers));
 		}
+		return numbers.toArray(new String[numbers.size()]);
 	}
 
-	private void sendToToNumbers(String[] toArray, String absoluteBuildURL, CallFactory callFactory, SmsFactory smsFactory) {
-		if (toArray != null) {
-			LOGGER.info("Sending to To List");
-			for (String to : toArray) {
-				if(to == null || to.trim().isEmpty()) {
-					LOGGER.info("Not sending to To list since it was empty");
-					continue;
-				}
-				to = to.trim();
-				LOGGER.info("Sending to " + to);
-
-				final String message = substituteAttributes(this.message, this.substitutionAttributes);
+	/**
+	 * The numbers of the to list and the default country they were parsed
+	 * for, replaced together so a build never pairs one with the other's.
+	 */
+	private static final class ParsedToList {
+		final String country;
+		final String[] numbers;
+
+		ParsedToList(final String country, final String[] numbers) {
+			this.country = country;
+			this.numbers = numbers;
+		}
+	}
 
-				if (this.smsNotification) {
-					LOGGER.info("Sending SMS to " + to);
-					String smsMsg = message;
-					if (this.includeUrl) {
-						try {
-							smsMsg += " " + createTinyUrl(absoluteBuildURL);
-						} catch (IOException e) {
-							logException(e);
-						}
-					}
+	private void collectToNumbers(NotificationContext context, String[] toArray, String fixedMessage,
+			List<Notification> notifications) {
+		if (toArray.length == 0) {
+			LOGGER.fine("Not sending to To list since it was empty");
+			return;
+		}
+		// The message is the same for every number on the list
+		final String message = fixedMessage != null ? fixedMessage : this.messageTemplate.render(context.getAttributes());
+		for (String to : toArray) {
+			notifications.add(newNotification(context, to, to, message, this.callSchedule));
+		}
+	}
 
-					try {
-						LOGGER.info("Sending SMS message to " + to + " " + smsMsg);
-						sendSMS(smsMsg, smsFactory, getDescriptor().fromPhoneNumber, to);
-					} catch (TwilioRestException e) {
-						logException(e);
-					}
-				}
-				if (this.callNotification) {
-					LOGGER.info("Sending Call to " + to);
-					try {
-						call(message, callFactory, getDescriptor().fromPhoneNumber, to);
-					} catch (TwilioRestException e) {
-						logException(e);
-					} catch (UnsupportedEncodingException e) {
-						logException(e);
-					}
-				}
+	/**
+	 * Creates a notification on the configured channels, with a text message
+	 * instead of the call outside of the recipient's call hours. The text
+	 * message takes the usual way, into the outbox and any digest.
+	 */
+	private Notification newNotification(NotificationContext context, String recipient, String number,
+			String message, CallSchedule schedule) {
+		final boolean callAllowed = schedule == null || schedule.allowsCall(System.currentTimeMillis());
+		final Notification notification = new Notification(context.getJob(), recipient, number, message,
+				context.getUrl(), this.smsNotification || (this.callNotification && !callAllowed),
+				this.callNotification && callAllowed);
+		if (this.callNotification && !callAllowed) {
+			if (LOGGER.isLoggable(Level.FINE)) {
+				LOGGER.fine("Texting instead of calling " + recipient + " outside of " + schedule);
 			}
+			NotificationMetrics.INSTANCE.count(NotificationMetrics.Event.SUPPRESSED, notification, Channel.CALL);
 		}
+		return notification;
+	}
+
+	/**
+	 * Collapses the culprits to the first one and a count when listing all of
+	 * them would take the text message past the segment budget.
+	 */
+	private NotificationContext fitCulprits(final NotificationContext context, final Set<User> culpritList) {
+		final int budget = getDescriptor().getSmsSegmentBudget();
+		if (budget <= 0 || !this.smsNotification || culpritList.size() <= 2) {
+			return context;
+		}
+		final String message = this.messageTemplate.render(context.getAttributes());
+		if (SmsEncoder.fits(message, context.getUrl() != null, budget)) {
+			return context;
+		}
+		return context.withCulprits(collapsedCulpritStringFromList(culpritList));
+	}
+
+	/**
+	 * @return the first culprit and how many others there are, e.g. "William and 2 others"
+	 */
+	protected static String collapsedCulpritStringFromList(Collection<? extends ModelObject> culprits) {
+		if (culprits == null || culprits.size() <= 2) {
+			return culpritStringFromList(culprits);
+		}
+		return culprits.iterator().next().getDisplayName() + " and " + (culprits.size() - 1) + " others";
 	}
 
 	protected static String culpritStringFromList(Collection<? extends ModelObject> culprits) {
@@ -432,7 +724,8 @@ public class TwilioNotifier extends Notifier {
     /**
      * Determine if this build represents a failure or recovery. A build failure
      * includes both failed and unstable builds. A recovery is defined as a
-     * successful build that follows a build that was not successful. Always
+     * successful build that follows a build that was not successful; builds
+     * that are still running, which have no result yet, are skipped. Always
      * returns false for aborted builds.
      *
      * @param build
@@ -443,7 +736,10 @@ public class TwilioNotifier extends Notifier {
         if (build.getResult() == Result.FAILURE || build.getResult() == Result.UNSTABLE) {
             return true;
         } else if (build.getResult() == Result.SUCCESS) {
-            final AbstractBuild<?, ?> previousBuild = build.getPreviousBuild();
+            AbstractBuild<?, ?> previousBuild = build.getPreviousBuild();
+            while (previousBuild != null && previousBuild.getResult() == null) {
+                previousBuild = previousBuild.getPreviousBuild();
+            }
             return previousBuild != null && previousBuild.getResult() != Result.SUCCESS;
         } else {
             return false;
@@ -462,52 +758,19 @@ public class TwilioNotifier extends Notifier {
 		return this.onlyOnFailureOrRecovery != null && (!this.onlyOnFailureOrRecovery || isFailureOrRecovery(build));
     }
 
-    /**
-     * Sends a text message.
-     *
-     * @param message Message to send to the phone number
-     * @param smsFactory Twilio SMS Factory from the Twilio main account
-     * @param from the phone number to send this from
-     * @param to the phone number to send this to
-     * @throws TwilioRestException Thrown when there is an error from the Twilio servers
-     */
-    private void sendSMS(final String message, final SmsFactory smsFactory, final String from, final String to)
-            throws TwilioRestException {
-        final Map<String, String> smsParams = new HashMap<String, String>();
-        smsParams.put("To", to);
-        smsParams.put("From", from);
-        smsParams.put("Body", message);
-        smsFactory.create(smsParams);
-    }
-
-    /**
-     * Calls and tts the message.
-     *
-     * @param message Message to be spoken
-     * @param callFactory Twilio Call Factory from the Twilio main account
-     * @param from the phone number to send this from
-     * @param to the phone number to send this to
-     * @throws TwilioRestException Thrown when there is an error from the Twilio servers
-     * @throws UnsupportedEncodingException The message is URL encoded. This is the exception thrown if there's an error when this happens
-     */
-    private void call(final String message, final CallFactory callFactory, final String from, final String to)
-            throws TwilioRestException, UnsupportedEncodingException {
-        final Map<String, String> callParams = new HashMap<String, String>();
-        callParams.put("To", to);
-        callParams.put("From", from);
-
-        final String url = "http://twimlets.com/echo?Twiml="
-                + URLEncoder.encode("<Response><Say>" + message + "</Say></Response>", "UTF-8");
-        callParams.put("Url", url);
-        callFactory.create(callParams);
-    }
-
     private Set<User> getCulpritList(final AbstractBuild<?, ?> build) {
 		final Set<User> culprits = new HashSet<User>(build.getCulprits());
 		if(culprits.size() <= 0) {
 			ChangeLogSet<? extends Entry> changeSet = build.getChangeSet();
 			if(changeSet != null) {
+				int scanned = 0;
 				for (final Entry entry : changeSet) {
+					if (++scanned > MAX_CHANGELOG_ENTRIES) {
+						if (LOGGER.isLoggable(Level.FINE)) {
+							LOGGER.fine("Only looked for culprits in the first " + MAX_CHANGELOG_ENTRIES + " changes");
+						}
+						break;
+					}
 					User author = entry.getAuthor();
 					culprits.add(author);
 				}
@@ -516,26 +779,6 @@ public class TwilioNotifier extends Notifier {
 		return culprits;
     }
 
-    /**
-     * Creates a tiny url out of a longer url.
-     *
-     * @param url URL to tiny-ify
-     * @return Returns the url returned from tinyurl.com
-     * @throws IOException thrown when there are any network connection problems to the tinyurl.com servers
-     */
-    private static String createTinyUrl(final String url) throws IOException {
-        final HttpClient client = new HttpClient();
-        final GetMethod gm = new GetMethod("http://tinyurl.com/api-create.php?url=" + url.replace(" ", "%20"));
-
-        final int status = client.executeMethod(gm);
-        if (status == HttpStatus.SC_OK) {
-            return gm.getResponseBodyAsString();
-        } else {
-            throw new IOException("Non-OK response code back from tinyurl: " + status);
-        }
-
-    }
-
     // Overridden for better type safety.
     // If your plugin doesn't really define any property on Descriptor,
     // you don't have to do this.
@@ -545,18 +788,9 @@ public class TwilioNotifier extends Notifier {
     }
 
     public BuildStepMonitor getRequiredMonitorService() {
-        return BuildStepMonitor.BUILD;
+        return BuildStepMonitor.NONE;
     }
 
-	private void logException(Throwable e) {
-		StringBuilder sb = new StringBuilder(e.getMessage()).append("\n");
-		StackTraceElement[] stackTrace = e.getStackTrace();
-		for (StackTraceElement element : stackTrace) {
-			sb.append("\t").append(element.toString()).append("\n");
-		}
-		LOGGER.severe(sb.toString());
-	}
-
     @Extension
     public static final class DescriptorImpl extends BuildStepDescriptor<Publisher> {
         public String accountsid;
@@ -569,11 +803,166 @@ public class TwilioNotifier extends Notifier {
             return this.fromPhoneNumber;
         }
 
+        /**
+         * More numbers to send text messages from, comma separated, for more
+         * messages per second than one number can send.
+         */
+        public String senderNumbers;
+
+        /**
+         * The Messaging Service to send text messages through instead of the
+         * sender numbers, or null.
+         */
+        public String messagingServiceSid;
+
         public String hudsonUrl;
 
+        /**
+         * The base url of the Twilio REST API, or null for api.twilio.com.
+         * Lets the plugin be pointed at a fake server for load testing.
+         */
+        public String apiBaseUrl;
+
+        /**
+         * The tinyurl.com-compatible endpoint used to shorten build urls.
+         */
+        public String shortenerUrl = UrlShortener.DEFAULT_ENDPOINT;
+
+        /**
+         * Whether notifications are queued and sent by a worker pool instead of
+         * on the build executor.
+         */
+        public boolean asyncDispatch;
+
+        public int dispatchPoolSize = DEFAULT_DISPATCH_POOL_SIZE;
+
+        public int dispatchQueueCapacity = DEFAULT_DISPATCH_QUEUE_CAPACITY;
+
+        public String dispatchOverflowPolicy = NotificationDispatcher.OverflowPolicy.CALLER_RUNS.name();
+
+        /**
+         * The maximum number of Twilio requests in flight at the same time.
+         */
+        public int fanOutConcurrency = DEFAULT_FAN_OUT_CONCURRENCY;
+
+        /**
+         * How long notifications to the same number are collected into one
+         * digest; 0 sends every notification right away.
+         */
+        public int digestWindowSeconds;
+
+        /**
+         * The number of collected notifications that sends a digest early.
+         */
+        public int digestMaxSize = DEFAULT_DIGEST_MAX_SIZE;
+
+        /**
+         * The maximum number of text messages per second sent to Twilio, across
+         * all builds; 0 means unlimited.
+         */
+        public double smsPerSecond;
+
+        /**
+         * The maximum number of calls per second placed through Twilio, across
+         * all builds; 0 means unlimited.
+         */
+        public double callsPerSecond;
+
+        /**
+         * How long a rate limited or failed request is retried.
+         */
+        public int retryDeadlineSeconds = DEFAULT_RETRY_DEADLINE_SECONDS;
+
+        /**
+         * Whether the log records of sent notifications include the message.
+         */
+        public boolean logMessageBodies;
+
+        /**
+         * Whether calls fetch their TwiML from twimlets.com instead of
+         * Jenkins, for a Jenkins that Twilio can't reach.
+         */
+        public boolean useTwimlets;
+
+        /**
+         * How long the same result of a job, or that it is flapping, isn't
+         * notified again; 0 turns flap detection off.
+         */
+        public int flapWindowSeconds;
+
+        /**
+         * The number of result changes within the last
+         * {@link FlapDetector#HISTORY} builds that counts as flapping.
+         */
+        public int flapThreshold = DEFAULT_FLAP_THRESHOLD;
+
+        /**
+         * How long after the text message the call of a notification is
+         * placed unless acknowledged; 0 sends both right away.
+         */
+        public int escalationDelaySeconds;
+
+        /**
+         * The named lists of numbers jobs can notify as <code>@name</code>.
+         */
+        public List<RecipientGroup> recipientGroups = new ArrayList<RecipientGroup>();
+
+        /**
+         * Whether Twilio reports the status of every message and call to
+         * Jenkins, and builds show it.
+         */
+        public boolean trackDeliveries;
+
+        /**
+         * The number of segments a text message is cut to fit into; 0 sends
+         * it whole.
+         */
+        public int smsSegmentBudget;
+
+        /**
+         * Whether a notification whose delivery failed is sent again on the
+         * other channel.
+         */
+        public boolean resendOnFailure;
+
+        /**
+         * The numbers of every recipient group by name, replaced as a whole
+         * when the groups change.
+         */
+        private transient volatile Map<String, String[]> recipientGroupIndex = Collections.emptyMap();
+
+        private transient NotificationDispatcher dispatcher;
+
+        private transient RateLimiter smsLimiter;
+
+        private transient RateLimiter callLimiter;
+
+        private transient DigestCoalescer digestCoalescer;
+
+        private transient FlapDetector flapDetector;
+
+        private transient EscalationScheduler escalationScheduler;
+
+        private transient DeliveryTracker deliveryTracker;
+
+        private transient NotificationOutbox outbox;
+
+        private transient boolean outboxUnavailable;
+
+        private transient ScheduledThreadPoolExecutor outboxRetrier;
+
+        private transient NotificationFanOut fanOut;
+
+        private transient UrlShortener urlShortener;
+
+        private transient SenderPool senderPool;
+
+        private transient TwilioConnection twilioConnection;
+
         public DescriptorImpl() {
             super(TwilioNotifier.class);
             load();
+            indexRecipientGroups();
         }
 
         @Override
@@ -583,6 +972,44 @@ public class TwilioNotifier extends Notifier {
             this.accountsid = formData.getString("accountSID");
             this.authtoken = formData.getString("authtoken");
             this.fromPhoneNumber = formData.getString("fromPhoneNumber");
+            this.senderNumbers = Util.fixEmptyAndTrim(formData.optString("senderNumbers"));
+            this.messagingServiceSid = Util.fixEmptyAndTrim(formData.optString("messagingServiceSid"));
+            this.asyncDispatch = formData.optBoolean("asyncDispatch");
+            this.logMessageBodies = formData.optBoolean("logMessageBodies");
+            this.useTwimlets = formData.optBoolean("useTwimlets");
+            this.dispatchPoolSize = positiveOrDefault(formData.optInt("dispatchPoolSize"), DEFAULT_DISPATCH_POOL_SIZE);
+            this.dispatchQueueCapacity = positiveOrDefault(formData.optInt("dispatchQueueCapacity"),
+                    DEFAULT_DISPATCH_QUEUE_CAPACITY);
+            this.dispatchOverflowPolicy = getOverflowPolicy(formData.optString("dispatchOverflowPolicy")).name();
+            this.fanOutConcurrency = positiveOrDefault(formData.optInt("fanOutConcurrency"), DEFAULT_FAN_OUT_CONCURRENCY);
+            this.shortenerUrl = Util.fixEmptyAndTrim(formData.optString("shortenerUrl"));
+            this.apiBaseUrl = Util.fixEmptyAndTrim(formData.optString("apiBaseUrl"));
+            this.digestWindowSeconds = Math.max(0, formData.optInt("digestWindowSeconds"));
+            this.digestMaxSize = positiveOrDefault(formData.optInt("digestMaxSize"), DEFAULT_DIGEST_MAX_SIZE);
+            this.smsPerSecond = Math.max(0, formData.optDouble("smsPerSecond", 0));
+            this.callsPerSecond = Math.max(0, formData.optDouble("callsPerSecond", 0));
+            this.retryDeadlineSeconds = Math.max(0, formData.optInt("retryDeadlineSeconds",
+                    DEFAULT_RETRY_DEADLINE_SECONDS));
+            this.flapWindowSeconds = Math.max(0, formData.optInt("flapWindowSeconds"));
+            this.flapThreshold = positiveOrDefault(formData.optInt("flapThreshold"), DEFAULT_FLAP_THRESHOLD);
+            this.escalationDelaySeconds = Math.max(0, formData.optInt("escalationDelaySeconds"));
+            this.trackDeliveries = formData.optBoolean("trackDeliveries");
+            this.resendOnFailure = formData.optBoolean("resendOnFailure");
+            this.smsSegmentBudget = Math.max(0, formData.optInt("smsSegmentBudget"));
+            final Object groups = formData.opt("recipientGroups");
+            this.recipientGroups = groups == null ? new ArrayList<RecipientGroup>()
+                    : req.bindJSONToList(RecipientGroup.class, groups);
+            indexRecipientGroups();
+            // the numbers of users may have been read for another default country
+            PhoneNumberIndex.INSTANCE.clear();
+            replaceSenderPool();
+            replaceRateLimiters();
+            reconfigureFlapDetector();
+            flushDigests();
+            replaceDispatcher();
+            replaceFanOut();
+            replaceUrlShortener();
+            replaceTwilioConnection();
             save();
             return super.configure(req, formData);
         }
@@ -604,6 +1031,1056 @@ public class TwilioNotifier extends Notifier {
             return this.hudsonUrl;
         }
 
+        public boolean isAsyncDispatch() {
+            return this.asyncDispatch;
+        }
+
+        @SuppressWarnings({"UnusedDeclaration"})
+        public boolean isLogMessageBodies() {
+            return this.logMessageBodies;
+        }
+
+        @SuppressWarnings({"UnusedDeclaration"})
+        public boolean isUseTwimlets() {
+            return this.useTwimlets;
+        }
+
+        /**
+         * @return the absolute url calls fetch their TwiML from, or null to
+         *         use twimlets.com
+         */
+        String getTwimlUrl() {
+            if (this.useTwimlets) {
+                return null;
+            }
+            return getActionUrl(TwimlAction.URL_NAME);
+        }
+
+        /**
+         * @return the absolute url calls are acknowledged at, or null if the
+         *         Jenkins url isn't known
+         */
+        String getAckUrl() {
+            return getActionUrl(EscalationAction.URL_NAME);
+        }
+
+        /**
+         * @return the absolute url Twilio reports the status of messages and
+         *         calls to, or null if delivery tracking is off or the Jenkins
+         *         url isn't known
+         */
+        String getStatusCallbackUrl() {
+            if (!this.trackDeliveries) {
+                return null;
+            }
+            return getActionUrl(StatusCallbackAction.URL_NAME);
+        }
+
+        private String getActionUrl(final String urlName) {
+            if (this.hudsonUrl == null) {
+                return null;
+            }
+            return (this.hudsonUrl.endsWith("/") ? this.hudsonUrl : this.hudsonUrl + "/") + urlName + "/";
+        }
+
+        @SuppressWarnings({"UnusedDeclaration"})
+        public int getDispatchPoolSize() {
+            return this.dispatchPoolSize;
+        }
+
+        @SuppressWarnings({"UnusedDeclaration"})
+        public int getDispatchQueueCapacity() {
+            return this.dispatchQueueCapacity;
+        }
+
+        @SuppressWarnings({"UnusedDeclaration"})
+        public String getDispatchOverflowPolicy() {
+            return this.dispatchOverflowPolicy;
+        }
+
+        @SuppressWarnings({"UnusedDeclaration"})
+        public NotificationDispatcher.OverflowPolicy[] getOverflowPolicies() {
+            return NotificationDispatcher.OverflowPolicy.values();
+        }
+
+        @SuppressWarnings({"UnusedDeclaration"})
+        public int getFanOutConcurrency() {
+            return this.fanOutConcurrency;
+        }
+
+        /**
+         * Takes over the notifications of a build: records them in the outbox
+         * and sends them, either right away or from the background queue, and
+         * either one by one or in digests.
+         *
+         * @param label what the notifications are for, used for logging
+         * @param summary the line describing the build in a digest
+         * @param notifications the notifications to send
+         * @return the result if the notifications were sent right away, or
+         *         how many were deferred
+         */
+        NotificationResult submit(final String label, final String summary, final List<Notification> notifications) {
+            return submit(label, summary, notifications, null);
+        }
+
+        /**
+         * Takes over the notifications of a build like
+         * {@link #submit(String, String, List)}, and tells a callback the
+         * result once they were sent. With background sending on this
+         * returns right away, and the callback is called from the worker
+         * thread once Twilio answered.
+         *
+         * @param label what the notifications are for, used for logging
+         * @param summary the line describing the build in a digest
+         * @param notifications the notifications to send
+         * @param callback is told the result, including the SIDs of the
+         *        messages and calls; may be null
+         * @return the result if the notifications were sent right away, or
+         *         how many were deferred
+         */
+        NotificationResult submit(final String label, final String summary, final List<Notification> notifications,
+                final NotificationResult.Callback callback) {
+            return submit(label, summary, notifications, Collections.<Notification>emptySet(), callback);
+        }
+
+        /**
+         * Takes over the notifications of a build like
+         * {@link #submit(String, String, List, NotificationResult.Callback)},
+         * with some that say more than the summary of the build.
+         *
+         * @param label what the notifications are for, used for logging
+         * @param summary the line describing the build in a digest
+         * @param notifications the notifications to send
+         * @param verbatim those of the notifications whose own message
+         *        describes them in a digest or a grouped call instead of the
+         *        summary, such as the flapping text
+         * @param callback is told the result, including the SIDs of the
+         *        messages and calls; may be null
+         * @return the result if the notifications were sent right away, or
+         *         how many were deferred
+         */
+        NotificationResult submit(final String label, final String summary, final List<Notification> notifications,
+                final Set<Notification> verbatim, final NotificationResult.Callback callback) {
+            final List<Notification> sendable = new ArrayList<Notification>(notifications.size());
+            final List<String> summaries = new ArrayList<String>(notifications.size());
+            final List<String> notes = new ArrayList<String>(notifications.size());
+            for (Notification notification : notifications) {
+                if (!notification.isSms() && !notification.isCall()) {
+                    continue;
+                }
+                String line = verbatim.contains(notification) ? notification.getMessage() : summary;
+                String note = null;
+                if (isEscalationEnabled() && notification.isSms() && notification.isCall()) {
+                    note = escalate(notification, line);
+                    sendable.add(notification.with(note == null ? notification.getMessage()
+                            : notification.getMessage() + " " + note, true, false));
+                } else {
+                    sendable.add(notification);
+                }
+                summaries.add(line);
+                notes.add(note);
+            }
+            final List<Notification> journaled = journal(sendable);
+            if (!isAsyncDispatch()) {
+                return done(callback, route(label, summaries, notes, journaled));
+            }
+            boolean queued = getDispatcher().dispatch(new Dispatched(journaled) {
+                public void run() {
+                    done(callback, route(label, summaries, notes, journaled));
+                }
+
+                @Override
+                public void discarded() {
+                    super.discarded();
+                    done(callback, new NotificationResult(new ArrayList<NotificationResult.Outcome>()));
+                }
+
+                @Override
+                public String toString() {
+                    return "Twilio notification for " + label;
+                }
+            });
+            if (!queued) {
+                LOGGER.warning("Notification queue is full, not notifying for " + label);
+                suppress(journaled);
+                done(callback, new NotificationResult(new ArrayList<NotificationResult.Outcome>()));
+            }
+            return new NotificationResult(new ArrayList<NotificationResult.Outcome>(), queued ? journaled.size() : 0);
+        }
+
+        private static NotificationResult done(final NotificationResult.Callback callback,
+                final NotificationResult result) {
+            if (callback != null) {
+                try {
+                    callback.done(result);
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Notification callback failed", e);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Holds back the call of a notification that also sends a text
+         * message, until the delay passes without an acknowledgement. It
+         * joins the call pending for the same number, if there is one.
+         *
+         * @param notification the notification
+         * @param summary the line describing the build in a call for several builds
+         * @return the text that tells how to acknowledge the call, to append
+         *         to the text message, or null if Jenkins has no url
+         */
+        private String escalate(final Notification notification, final String summary) {
+            final String token = getEscalationScheduler().schedule(
+                    notification.with(notification.getMessage(), false, true), summary,
+                    TimeUnit.SECONDS.toMillis(this.escalationDelaySeconds));
+            final String ackUrl = getAckUrl();
+            return ackUrl == null ? null : "Reply or open " + ackUrl + token + " to cancel the follow-up call.";
+        }
+
+        /**
+         * Sends notifications right away or collects them for digests.
+         *
+         * @param label what the notifications are for, used for logging
+         * @param summaries the line describing each notification in a digest
+         * @param notes what a digest has to say for each notification
+         *        besides its line, or null
+         * @param notifications the notifications
+         * @return the result
+         */
+        private NotificationResult route(final String label, final List<String> summaries, final List<String> notes,
+                final List<Notification> notifications) {
+            if (!isDigestEnabled()) {
+                return deliver(label, notifications);
+            }
+            final DigestCoalescer digests = getDigestCoalescer();
+            for (int i = 0; i < notifications.size(); i++) {
+                digests.offer(notifications.get(i), summaries.get(i), notes.get(i));
+            }
+            NotificationResult result = new NotificationResult(new ArrayList<NotificationResult.Outcome>(),
+                    notifications.size());
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine("Collected for digests for " + label + ": " + result);
+            }
+            return result;
+        }
+
+        /**
+         * Sends notifications to Twilio right away and logs their outcomes in
+         * recipient order. Notifications that are done are removed from the
+         * outbox.
+         *
+         * @param label what the notifications are for, used for logging
+         * @param notifications the notifications to send
+         * @return the aggregated result
+         */
+        NotificationResult deliver(final String label, final List<Notification> notifications) {
+            return deliver(label, notifications, true);
+        }
+
+        /**
+         * Sends notifications like {@link #deliver(String, List)}.
+         *
+         * @param label what the notifications are for, used for logging
+         * @param notifications the notifications to send
+         * @param resendable whether they may be sent again on the other
+         *        channel if their delivery fails
+         * @return the aggregated result
+         */
+        private NotificationResult deliver(final String label, final List<Notification> notifications,
+                final boolean resendable) {
+            final String statusCallbackUrl = getStatusCallbackUrl();
+            final TwilioConnection connection = retainTwilioConnection();
+            final NotificationResult result;
+            try {
+                final NotificationFanOut.Transport transport = new RetryingTransport(new TwilioTransport(connection,
+                        getSenderPool(), this.messagingServiceSid, getUrlShortener(), getTwimlUrl(), statusCallbackUrl,
+                        this.smsSegmentBudget), getSmsLimiter(), getCallLimiter(),
+                        TimeUnit.SECONDS.toMillis(this.retryDeadlineSeconds));
+                result = getFanOut().send(notifications, transport);
+            } finally {
+                connection.release();
+            }
+            if (statusCallbackUrl != null) {
+                track(result, resendable);
+            }
+
+            for (NotificationResult.Outcome outcome : result.getOutcomes()) {
+                NotificationMetrics.INSTANCE.count(outcome.isSuccess() ? NotificationMetrics.Event.SENT
+                        : NotificationMetrics.Event.FAILED, outcome.getNotification(), outcome.getChannel());
+            }
+            // One record per notification in recipient order, whatever order the requests completed in
+            NotificationLog.log(LOGGER, result.getOutcomes(), this.logMessageBodies);
+            complete(result.getFinished());
+            // only the channels that failed are sent again, the recipient already has the others
+            retryLater(result.getUnfinished());
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine("Notified for " + label + ": " + result);
+            }
+            return result;
+        }
+
+        /**
+         * Starts tracking the messages and calls Twilio took. Only those of
+         * notifications sent on a single channel are sent again, the others
+         * already reached the recipient both ways.
+         */
+        private void track(final NotificationResult result, final boolean resendable) {
+            final DeliveryTracker tracker = getDeliveryTracker();
+            for (NotificationResult.Outcome outcome : result.getOutcomes()) {
+                if (outcome.getSid() != null) {
+                    Notification notification = outcome.getNotification();
+                    tracker.sent(outcome.getSid(), notification, outcome.getChannel(),
+                            resendable && !(notification.isSms() && notification.isCall()));
+                }
+            }
+        }
+
+        /**
+         * Sends a notification whose delivery failed again, on the other
+         * channel.
+         */
+        private void resend(final DeliveryTracker.Delivery delivery, final Notification notification) {
+            if (!this.resendOnFailure) {
+                return;
+            }
+            final boolean call = delivery.getChannel() == Channel.SMS;
+            LOGGER.info("Twilio reported " + delivery + ", " + (call ? "calling" : "texting") + " instead");
+            final List<Notification> journaled = journal(Collections.singletonList(
+                    notification.with(notification.getMessage(), !call, call)));
+            boolean queued = getDispatcher().dispatch(new Dispatched(journaled) {
+                public void run() {
+                    deliver("resend", journaled, false);
+                }
+            });
+            if (!queued) {
+                LOGGER.warning("Notification queue is full, not notifying " + notification.getRecipient() + " again");
+                suppress(journaled);
+            }
+        }
+
+        public boolean isTrackDeliveries() {
+            return this.trackDeliveries;
+        }
+
+        @SuppressWarnings({"UnusedDeclaration"})
+        public boolean isResendOnFailure() {
+            return this.resendOnFailure;
+        }
+
+        /**
+         * Returns the delivery tracker, reading the last snapshot on first
+         * use. It is kept when the configuration changes.
+         *
+         * @return the delivery tracker shared by all builds
+         */
+        public synchronized DeliveryTracker getDeliveryTracker() {
+            if (this.deliveryTracker == null) {
+                this.deliveryTracker = new DeliveryTracker(DeliveryTracker.getDefaultFile(),
+                        DeliveryTracker.RETENTION_MILLIS, DeliveryTracker.MAX_DELIVERIES);
+                this.deliveryTracker.setFailureListener(new DeliveryTracker.FailureListener() {
+                    public void failed(final DeliveryTracker.Delivery delivery, final Notification notification) {
+                        resend(delivery, notification);
+                    }
+                });
+            }
+            return this.deliveryTracker;
+        }
+
+        /**
+         * @return the delivery tracker, or null if nothing was tracked yet
+         */
+        public synchronized DeliveryTracker getCurrentDeliveryTracker() {
+            return this.deliveryTracker;
+        }
+
+        private List<Notification> journal(final List<Notification> notifications) {
+            final NotificationOutbox outbox = getOutbox();
+            if (outbox == null || notifications.isEmpty()) {
+                return notifications;
+            }
+            try {
+                return outbox.append(notifications);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not record notifications in the outbox, sending them anyway", e);
+                return notifications;
+            }
+        }
+
+        private void complete(final List<Notification> notifications) {
+            final NotificationOutbox outbox = getOutbox();
+            if (outbox == null) {
+                return;
+            }
+            for (Notification notification : notifications) {
+                if (notification.getId() > 0) {
+                    outbox.complete(notification.getId());
+                }
+            }
+        }
+
+        /**
+         * Schedules notifications that failed for a reason retrying may fix to
+         * be sent again from the outbox, on the channels they are given on.
+         * Without an outbox they are lost.
+         */
+        private void retryLater(final List<Notification> notifications) {
+            final NotificationOutbox outbox = getOutbox();
+            if (outbox == null) {
+                return;
+            }
+            for (Notification notification : notifications) {
+                if (notification.getId() > 0) {
+                    outbox.retryLater(notification);
+                }
+            }
+        }
+
+        /**
+         * Returns the outbox, opening it on first use and starting to retry
+         * the notifications that failed.
+         *
+         * @return the outbox, or null if it can't be opened
+         */
+        synchronized NotificationOutbox getOutbox() {
+            if (this.outbox == null && !this.outboxUnavailable) {
+                File file = NotificationOutbox.getDefaultFile();
+                try {
+                    if (file != null) {
+                        this.outbox = new NotificationOutbox(file);
+                    }
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Could not open " + file + ", notifications won't survive a restart", e);
+                }
+                this.outboxUnavailable = this.outbox == null;
+                if (this.outbox != null) {
+                    this.outboxRetrier = new ScheduledThreadPoolExecutor(1,
+                            new NotificationDispatcher.DaemonThreadFactory("TwilioNotifier outbox retry"));
+                    this.outboxRetrier.scheduleWithFixedDelay(new Runnable() {
+                        public void run() {
+                            try {
+                                retryOutbox();
+                            } catch (RuntimeException e) {
+                                LOGGER.log(Level.WARNING, "Could not retry the notifications in the outbox", e);
+                            }
+                        }
+                    }, OUTBOX_RETRY_TICK_MILLIS, OUTBOX_RETRY_TICK_MILLIS, TimeUnit.MILLISECONDS);
+                }
+            }
+            return this.outbox;
+        }
+
+        /**
+         * Gives up on the notifications in the outbox that are too old, and
+         * sends those whose retry is due again.
+         */
+        void retryOutbox() {
+            final NotificationOutbox outbox = getOutbox();
+            if (outbox == null) {
+                return;
+            }
+            final long now = System.currentTimeMillis();
+            final List<Notification> expired = outbox.expire(now);
+            if (!expired.isEmpty()) {
+                LOGGER.warning("Gave up on " + expired.size() + " notifications that weren't sent within "
+                        + TimeUnit.MILLISECONDS.toMinutes(NotificationOutbox.MAX_AGE_MILLIS) + " minutes");
+            }
+            final List<Notification> due = outbox.takeDue(now);
+            if (!due.isEmpty()) {
+                deliver("retry", due);
+            }
+        }
+
+        /**
+         * Sends the notifications that were still in the outbox when Jenkins
+         * went down, except those too old to still matter.
+         */
+        void replayOutbox() {
+            final NotificationOutbox outbox = getOutbox();
+            if (outbox == null) {
+                return;
+            }
+            final List<Notification> expired = outbox.expire(System.currentTimeMillis());
+            if (!expired.isEmpty()) {
+                LOGGER.info("Dropping " + expired.size() + " notifications left over from before the restart, they "
+                        + "are older than " + TimeUnit.MILLISECONDS.toMinutes(NotificationOutbox.MAX_AGE_MILLIS)
+                        + " minutes");
+            }
+            final List<Notification> pending = outbox.getPending();
+            if (pending.isEmpty()) {
+                return;
+            }
+            LOGGER.info("Sending " + pending.size() + " notifications left over from before the restart");
+            boolean queued = getDispatcher().dispatch(new Dispatched(pending) {
+                public void run() {
+                    deliver("restart", pending);
+                }
+            });
+            if (!queued) {
+                LOGGER.warning("Notification queue is full, not sending the notifications left over from before the "
+                        + "restart");
+                suppress(pending);
+            }
+        }
+
+        /**
+         * Sends journaled notifications from the dispatcher queue. If the
+         * queue drops them to make room for newer ones, they are counted as
+         * suppressed and removed from the outbox, like when the queue was
+         * already full.
+         */
+        private abstract class Dispatched implements NotificationDispatcher.Task {
+            private final List<Notification> journaled;
+
+            Dispatched(final List<Notification> journaled) {
+                this.journaled = journaled;
+            }
+
+            public void discarded() {
+                suppress(this.journaled);
+            }
+        }
+
+        /**
+         * Gives up on journaled notifications that a full queue didn't take.
+         */
+        private void suppress(final List<Notification> notifications) {
+            for (Notification notification : notifications) {
+                NotificationMetrics.INSTANCE.count(NotificationMetrics.Event.SUPPRESSED, notification);
+            }
+            complete(notifications);
+        }
+
+        @SuppressWarnings({"UnusedDeclaration"})
+        public double getSmsPerSecond() {
+            return this.smsPerSecond;
+        }
+
+        @SuppressWarnings({"UnusedDeclaration"})
+        public double getCallsPerSecond() {
+            return this.callsPerSecond;
+        }
+
+        @SuppressWarnings({"UnusedDeclaration"})
+        public int getRetryDeadlineSeconds() {
+            return this.retryDeadlineSeconds;
+        }
+
+        /**
+         * Returns the rate limiter shared by all text messages. Only text
+         * messages sent through a Messaging Service are held to it; each
+         * number of the sender pool has a limiter of its own.
+         *
+         * @return the rate limiter shared by all text messages
+         */
+        synchronized RateLimiter getSmsLimiter() {
+            if (this.smsLimiter == null) {
+                this.smsLimiter = new RateLimiter(this.messagingServiceSid == null ? 0 : this.smsPerSecond);
+            }
+            return this.smsLimiter;
+        }
+
+        public int getSmsSegmentBudget() {
+            return this.smsSegmentBudget;
+        }
+
+        @SuppressWarnings({"UnusedDeclaration"})
+        public String getSenderNumbers() {
+            return this.senderNumbers;
+        }
+
+        @SuppressWarnings({"UnusedDeclaration"})
+        public String getMessagingServiceSid() {
+            return this.messagingServiceSid;
+        }
+
+        /**
+         * Returns the numbers text messages are sent from, creating the pool
+         * on first use.
+         *
+         * @return the sender pool shared by all builds
+         */
+        synchronized SenderPool getSenderPool() {
+            if (this.senderPool == null) {
+                // normalized like the others, so the primary isn't in the pool twice
+                final String primary = PhoneNumbers.normalize(this.fromPhoneNumber, getDefaultCountry());
+                final String[] others = PhoneNumbers.parseList(this.senderNumbers, getDefaultCountry());
+                this.senderPool = new SenderPool(primary != null ? primary : this.fromPhoneNumber, others,
+                        this.smsPerSecond, TimeUnit.SECONDS.toMillis(this.retryDeadlineSeconds));
+            }
+            return this.senderPool;
+        }
+
+        private synchronized void replaceSenderPool() {
+            this.senderPool = null;
+        }
+
+        /**
+         * @return the rate limiter shared by all calls
+         */
+        synchronized RateLimiter getCallLimiter() {
+            if (this.callLimiter == null) {
+                this.callLimiter = new RateLimiter(this.callsPerSecond);
+            }
+            return this.callLimiter;
+        }
+
+        private synchronized void replaceRateLimiters() {
+            this.smsLimiter = null;
+            this.callLimiter = null;
+        }
+
+        public boolean isDigestEnabled() {
+            return this.digestWindowSeconds > 0;
+        }
+
+        @SuppressWarnings({"UnusedDeclaration"})
+        public int getDigestWindowSeconds() {
+            return this.digestWindowSeconds;
+        }
+
+        @SuppressWarnings({"UnusedDeclaration"})
+        public int getDigestMaxSize() {
+            return this.digestMaxSize;
+        }
+
+        /**
+         * Returns the digest coalescer, creating it on first use.
+         *
+         * @return the digest coalescer shared by all builds
+         */
+        public synchronized DigestCoalescer getDigestCoalescer() {
+            if (this.digestCoalescer == null) {
+                this.digestCoalescer = new DigestCoalescer(TimeUnit.SECONDS.toMillis(this.digestWindowSeconds),
+                        positiveOrDefault(this.digestMaxSize, DEFAULT_DIGEST_MAX_SIZE), new DigestCoalescer.Sink() {
+                            public void send(final Notification digest, final List<Notification> merged) {
+                                if (merged.size() > 1) {
+                                    for (Notification notification : merged) {
+                                        NotificationMetrics.INSTANCE.count(NotificationMetrics.Event.SUPPRESSED,
+                                                notification);
+                                    }
+                                }
+                                NotificationResult result = deliver("digest", Collections.singletonList(digest));
+                                final List<Notification> unfinished = result.getUnfinished();
+                                final Notification rest = unfinished.isEmpty() ? null : unfinished.get(0);
+                                retryDigest(merged, rest);
+                            }
+                        });
+            }
+            return this.digestCoalescer;
+        }
+
+        /**
+         * Settles the notifications merged into a digest once it was sent.
+         * If the text message of the digest failed, the texts of the merged
+         * notifications are sent again one by one; if its call failed, the
+         * call of the digest is journaled to be placed again on its own. A
+         * channel that went out isn't repeated.
+         *
+         * @param merged the notifications merged into the digest
+         * @param rest the digest on the channels left to send, or null if it is done
+         */
+        private void retryDigest(final List<Notification> merged, final Notification rest) {
+            final List<Notification> texts = new ArrayList<Notification>();
+            final List<Notification> done = new ArrayList<Notification>();
+            for (Notification notification : merged) {
+                if (rest != null && rest.isSms() && notification.isSms()) {
+                    texts.add(notification.withChannels(true, false));
+                } else {
+                    done.add(notification);
+                }
+            }
+            complete(done);
+            retryLater(texts);
+            if (rest != null && rest.isCall()) {
+                retryLater(journal(Collections.singletonList(rest.with(rest.getMessage(), false, true))));
+            }
+        }
+
+        public boolean isFlapDetectionEnabled() {
+            return this.flapWindowSeconds > 0;
+        }
+
+        @SuppressWarnings({"UnusedDeclaration"})
+        public int getFlapWindowSeconds() {
+            return this.flapWindowSeconds;
+        }
+
+        @SuppressWarnings({"UnusedDeclaration"})
+        public int getFlapThreshold() {
+            return this.flapThreshold;
+        }
+
+        /**
+         * Returns the flap detector, creating it on first use.
+         *
+         * @return the flap detector shared by all builds
+         */
+        public synchronized FlapDetector getFlapDetector() {
+            if (this.flapDetector == null) {
+                this.flapDetector = new FlapDetector(TimeUnit.SECONDS.toMillis(this.flapWindowSeconds),
+                        positiveOrDefault(this.flapThreshold, DEFAULT_FLAP_THRESHOLD));
+            }
+            return this.flapDetector;
+        }
+
+        /**
+         * @return the flap detector, or null if no build was recorded yet
+         */
+        public synchronized FlapDetector getCurrentFlapDetector() {
+            return this.flapDetector;
+        }
+
+        private synchronized void reconfigureFlapDetector() {
+            if (this.flapDetector != null) {
+                this.flapDetector.configure(TimeUnit.SECONDS.toMillis(this.flapWindowSeconds),
+                        positiveOrDefault(this.flapThreshold, DEFAULT_FLAP_THRESHOLD));
+            }
+        }
+
+        @SuppressWarnings({"UnusedDeclaration"})
+        public List<RecipientGroup> getRecipientGroups() {
+            return this.recipientGroups;
+        }
+
+        /**
+         * Returns the numbers of a recipient group.
+         *
+         * @param name the name of the group
+         * @return the normalized numbers, not to be modified, or null if there is no such group
+         */
+        String[] getRecipientGroupNumbers(final String name) {
+            return this.recipientGroupIndex.get(name);
+        }
+
+        private void indexRecipientGroups() {
+            final Map<String, String[]> index = new HashMap<String, String[]>();
+            final String country = getDefaultCountry();
+            if (this.recipientGroups != null) {
+                for (RecipientGroup group : this.recipientGroups) {
+                    if (group.getName().length() > 0 && !index.containsKey(group.getName())) {
+                        index.put(group.getName(), group.parseNumbers(country));
+                    }
+                }
+            }
+            this.recipientGroupIndex = index;
+        }
+
+        public boolean isEscalationEnabled() {
+            return this.escalationDelaySeconds > 0;
+        }
+
+        @SuppressWarnings({"UnusedDeclaration"})
+        public int getEscalationDelaySeconds() {
+            return this.escalationDelaySeconds;
+        }
+
+        /**
+         * Returns the escalation scheduler, creating it on first use. It is
+         * kept when the configuration changes, so pending calls aren't lost.
+         *
+         * @return the escalation scheduler shared by all builds
+         */
+        public synchronized EscalationScheduler getEscalationScheduler() {
+            if (this.escalationScheduler == null) {
+                this.escalationScheduler = new EscalationScheduler(ESCALATION_TICK_MILLIS,
+                        new EscalationScheduler.Sink() {
+                            public void escalate(final Notification call) {
+                                final List<Notification> journaled = journal(Collections.singletonList(call));
+                                boolean queued = getDispatcher().dispatch(new Dispatched(journaled) {
+                                    public void run() {
+                                        // the recipient already got the text message
+                                        deliver("escalation", journaled, false);
+                                    }
+                                });
+                                if (!queued) {
+                                    LOGGER.warning("Notification queue is full, not calling " + call.getRecipient());
+                                    suppress(journaled);
+                                }
+                            }
+                        });
+            }
+            return this.escalationScheduler;
+        }
+
+        /**
+         * @return the escalation scheduler, or null if no call was held back yet
+         */
+        public synchronized EscalationScheduler getCurrentEscalationScheduler() {
+            return this.escalationScheduler;
+        }
+
+        /**
+         * Sends the digests collected so far right away.
+         */
+        void flushDigests() {
+            final DigestCoalescer flushing;
+            synchronized (this) {
+                flushing = this.digestCoalescer;
+                this.digestCoalescer = null;
+            }
+            // outside the lock, sending may take as long as the retry deadline
+            if (flushing != null) {
+                flushing.flushAll();
+            }
+        }
+
+        /**
+         * Returns the Twilio client for the configured credentials, creating
+         * it on first use and whenever the credentials or the endpoint change.
+         *
+         * @return the Twilio client shared by all builds
+         */
+        public synchronized TwilioConnection getTwilioConnection() {
+            if (this.twilioConnection == null
+                    || !this.twilioConnection.isFor(this.accountsid, this.authtoken, this.apiBaseUrl)) {
+                if (this.twilioConnection != null) {
+                    this.twilioConnection.close();
+                }
+                this.twilioConnection = new TwilioConnection(this.accountsid, this.authtoken, this.apiBaseUrl);
+            }
+            return this.twilioConnection;
+        }
+
+        /**
+         * Returns the Twilio client like {@link #getTwilioConnection()}, and
+         * retains it so it isn't shut down while sending if it is replaced.
+         *
+         * @return the Twilio client, to be released once the requests are done
+         */
+        private synchronized TwilioConnection retainTwilioConnection() {
+            final TwilioConnection connection = getTwilioConnection();
+            // closed only under this lock, after it was replaced
+            connection.retain();
+            return connection;
+        }
+
+        /**
+         * Returns the Twilio client without creating it, for the connection
+         * pool statistics on the configuration page.
+         *
+         * @return the Twilio client, or null if nothing was sent yet
+         */
+        @SuppressWarnings({"UnusedDeclaration"})
+        public synchronized TwilioConnection getCurrentTwilioConnection() {
+            return this.twilioConnection;
+        }
+
+        private synchronized void replaceTwilioConnection() {
+            if (this.twilioConnection != null
+                    && !this.twilioConnection.isFor(this.accountsid, this.authtoken, this.apiBaseUrl)) {
+                this.twilioConnection.close();
+                this.twilioConnection = null;
+            }
+        }
+
+        @SuppressWarnings({"UnusedDeclaration"})
+        public String getApiBaseUrl() {
+            return this.apiBaseUrl;
+        }
+
+        public String getShortenerUrl() {
+            return this.shortenerUrl != null ? this.shortenerUrl : UrlShortener.DEFAULT_ENDPOINT;
+        }
+
+        /**
+         * Returns the url shortener, creating it on first use.
+         *
+         * @return the url shortener shared by all builds
+         */
+        public synchronized UrlShortener getUrlShortener() {
+            if (this.urlShortener == null) {
+                this.urlShortener = new UrlShortener(getShortenerUrl());
+            }
+            return this.urlShortener;
+        }
+
+        private synchronized void replaceUrlShortener() {
+            if (this.urlShortener != null && !this.urlShortener.getEndpoint().equals(getShortenerUrl())) {
+                this.urlShortener.shutdown();
+                this.urlShortener = null;
+            }
+        }
+
+        /**
+         * Returns the fan-out engine, creating it on first use.
+         *
+         * @return the fan-out engine shared by all builds
+         */
+        public synchronized NotificationFanOut getFanOut() {
+            if (this.fanOut == null) {
+                this.fanOut = new NotificationFanOut(positiveOrDefault(this.fanOutConcurrency,
+                        DEFAULT_FAN_OUT_CONCURRENCY));
+            }
+            return this.fanOut;
+        }
+
+        private synchronized void replaceFanOut() {
+            if (this.fanOut != null) {
+                this.fanOut.shutdown();
+                this.fanOut = null;
+            }
+        }
+
+        /**
+         * Returns the dispatcher, creating it on first use.
+         *
+         * @return the dispatcher for queued notifications
+         */
+        public synchronized NotificationDispatcher getDispatcher() {
+            if (this.dispatcher == null) {
+                this.dispatcher = new NotificationDispatcher(positiveOrDefault(this.dispatchPoolSize,
+                        DEFAULT_DISPATCH_POOL_SIZE), positiveOrDefault(this.dispatchQueueCapacity,
+                        DEFAULT_DISPATCH_QUEUE_CAPACITY), getOverflowPolicy(this.dispatchOverflowPolicy));
+            }
+            return this.dispatcher;
+        }
+
+        /**
+         * Waits for queued notifications to be sent.
+         *
+         * @param timeout the maximum time to wait
+         * @param unit the unit of the timeout
+         */
+        void drainDispatcher(final long timeout, final TimeUnit unit) {
+            final NotificationDispatcher draining;
+            synchronized (this) {
+                draining = this.dispatcher;
+                this.dispatcher = null;
+            }
+            // outside the lock, the queued notifications need it to be sent
+            if (draining != null) {
+                draining.drain(timeout, unit);
+            }
+        }
+
+        /**
+         * Lets the current dispatcher finish its queue and creates a new one
+         * with the current settings on next use.
+         */
+        private synchronized void replaceDispatcher() {
+            if (this.dispatcher != null) {
+                this.dispatcher.shutdown();
+                this.dispatcher = null;
+            }
+        }
+
+        private static NotificationDispatcher.OverflowPolicy getOverflowPolicy(final String name) {
+            try {
+                return NotificationDispatcher.OverflowPolicy.valueOf(name);
+            } catch (RuntimeException e) {
+                return NotificationDispatcher.OverflowPolicy.CALLER_RUNS;
+            }
+        }
+
+        private static int positiveOrDefault(final int value, final int defaultValue) {
+            return value > 0 ? value : defaultValue;
+        }
+
+        @SuppressWarnings({"UnusedDeclaration"})
+        public FormValidation doCheckDispatchPoolSize(@QueryParameter String value) {
+            return FormValidation.validatePositiveInteger(value);
+        }
+
+        @SuppressWarnings({"UnusedDeclaration"})
+        public FormValidation doCheckDispatchQueueCapacity(@QueryParameter String value) {
+            return FormValidation.validatePositiveInteger(value);
+        }
+
+        @SuppressWarnings({"UnusedDeclaration"})
+        public FormValidation doCheckFanOutConcurrency(@QueryParameter String value) {
+            return FormValidation.validatePositiveInteger(value);
+        }
+
+        @SuppressWarnings({"UnusedDeclaration"})
+        public FormValidation doCheckRetryDeadlineSeconds(@QueryParameter String value) {
+            return FormValidation.validateNonNegativeInteger(value);
+        }
+
+        @SuppressWarnings({"UnusedDeclaration"})
+        public FormValidation doCheckSmsSegmentBudget(@QueryParameter String value) {
+            return FormValidation.validateNonNegativeInteger(value);
+        }
+
+        @SuppressWarnings({"UnusedDeclaration"})
+        public FormValidation doCheckDigestWindowSeconds(@QueryParameter String value) {
+            return FormValidation.validateNonNegativeInteger(value);
+        }
+
+        @SuppressWarnings({"UnusedDeclaration"})
+        public FormValidation doCheckDigestMaxSize(@QueryParameter String value) {
+            return FormValidation.validatePositiveInteger(value);
+        }
+
+        @SuppressWarnings({"UnusedDeclaration"})
+        public FormValidation doCheckFlapWindowSeconds(@QueryParameter String value) {
+            return FormValidation.validateNonNegativeInteger(value);
+        }
+
+        @SuppressWarnings({"UnusedDeclaration"})
+        public FormValidation doCheckFlapThreshold(@QueryParameter String value) {
+            return FormValidation.validatePositiveInteger(value);
+        }
+
+        @SuppressWarnings({"UnusedDeclaration"})
+        public FormValidation doCheckSenderNumbers(@QueryParameter String value) {
+            if (value == null) {
+                return FormValidation.ok();
+            }
+            String invalid = PhoneNumbers.findInvalid(value, getDefaultCountry());
+            if (invalid == null && PhoneNumbers.parseGroups(value).length > 0) {
+                invalid = PhoneNumbers.GROUP_PREFIX + PhoneNumbers.parseGroups(value)[0];
+            }
+            if (invalid != null) {
+                return FormValidation.error(getInvalidNumberMessage(invalid));
+            }
+            return FormValidation.ok();
+        }
+
+        @SuppressWarnings({"UnusedDeclaration"})
+        public FormValidation doCheckFromPhoneNumber(@QueryParameter String value) {
+            if (Util.fixEmptyAndTrim(value) != null && PhoneNumbers.normalize(value) == null) {
+                return FormValidation.error("Not a phone number with a country code, such as +1 415 555 1234: "
+                        + value.trim());
+            }
+            return FormValidation.ok();
+        }
+
+        /**
+         * @return the country code of numbers entered without one, or null if
+         *         every number needs one
+         */
+        String getDefaultCountry() {
+            return PhoneNumbers.getDefaultCountry(this.fromPhoneNumber);
+        }
+
+        /**
+         * Explains why an entry isn't accepted as a phone number.
+         *
+         * @param invalid the entry
+         * @return the message of the form validation
+         */
+        String getInvalidNumberMessage(final String invalid) {
+            if (invalid.length() > 0 && invalid.charAt(0) == PhoneNumbers.GROUP_PREFIX) {
+                return "Not a phone number: " + invalid;
+            }
+            return PhoneNumbers.describeInvalid(invalid);
+        }
+
+        @SuppressWarnings({"UnusedDeclaration"})
+        public FormValidation doCheckMessagingServiceSid(@QueryParameter String value) {
+            String sid = Util.fixEmptyAndTrim(value);
+            if (sid != null && !(sid.startsWith("MG") && sid.length() == 34)) {
+                return FormValidation.warning("Messaging Service SIDs start with MG and are 34 characters long");
+            }
+            return FormValidation.ok();
+        }
+
+        @SuppressWarnings({"UnusedDeclaration"})
+        public FormValidation doCheckEscalationDelaySeconds(@QueryParameter String value) {
+            return FormValidation.validateNonNegativeInteger(value);
+        }
+
         @Override
         public boolean isApplicable(final Class<? extends AbstractProject> jobType) {
             return true;
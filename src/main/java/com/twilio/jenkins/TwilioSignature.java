@@ -0,0 +1,76 @@
+package com.twilio.jenkins;
+
+import java.io.UnsupportedEncodingException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Map;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.commons.codec.binary.Base64;
+
+/**
+ * {@link TwilioSignature} checks the <code>X-Twilio-Signature</code> header
+ * Twilio signs its webhook requests with: the base64 HMAC-SHA1, keyed with
+ * the auth token, of the url followed by every POST parameter name and value
+ * in the order of the names.
+ */
+final class TwilioSignature {
+
+    static final String HEADER = "X-Twilio-Signature";
+
+    private TwilioSignature() {
+    }
+
+    /**
+     * Computes the signature of a request.
+     *
+     * @param authToken the auth token of the account
+     * @param url the full url Twilio requested, including any query
+     * @param params the POST parameters
+     * @return the signature
+     */
+    static String compute(final String authToken, final String url, final Map<String, String[]> params) {
+        final StringBuilder data = new StringBuilder(url);
+        final String[] names = params.keySet().toArray(new String[params.size()]);
+        Arrays.sort(names);
+        for (String name : names) {
+            for (String value : params.get(name)) {
+                data.append(name).append(value);
+            }
+        }
+        try {
+            Mac mac = Mac.getInstance("HmacSHA1");
+            mac.init(new SecretKeySpec(authToken.getBytes("UTF-8"), "HmacSHA1"));
+            return new String(Base64.encodeBase64(mac.doFinal(data.toString().getBytes("UTF-8"))), "US-ASCII");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA1 is not available", e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Checks the signature of a request.
+     *
+     * @param authToken the auth token of the account
+     * @param url the full url Twilio requested, including any query
+     * @param params the POST parameters
+     * @param signature the value of the signature header, may be null
+     * @return whether the request came from Twilio
+     */
+    static boolean isValid(final String authToken, final String url, final Map<String, String[]> params,
+            final String signature) {
+        if (authToken == null || signature == null) {
+            return false;
+        }
+        try {
+            return MessageDigest.isEqual(compute(authToken, url, params).getBytes("US-ASCII"),
+                    signature.getBytes("US-ASCII"));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
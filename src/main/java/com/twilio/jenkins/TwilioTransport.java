@@ -0,0 +1,251 @@
+package com.twilio.jenkins;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.twilio.sdk.TwilioRestClient;
+import com.twilio.sdk.TwilioRestException;
+import com.twilio.sdk.TwilioRestResponse;
+import com.twilio.sdk.resource.factory.CallFactory;
+import com.twilio.sdk.resource.factory.SmsFactory;
+import com.twilio.sdk.resource.instance.Account;
+
+/**
+ * A {@link TwilioTransport} sends notifications as text messages and calls
+ * through the Twilio REST API.
+ */
+public class TwilioTransport implements NotificationFanOut.Transport {
+    private static final Logger LOGGER = Logger.getLogger(TwilioTransport.class.getName());
+
+    private final SmsFactory smsFactory;
+    private final CallFactory callFactory;
+    private final String from;
+    private final SenderPool senders;
+    private final TwilioRestClient client;
+    private final String messagingServiceSid;
+    private final UrlShortener urlShortener;
+    private final String twimlUrl;
+    private final String statusCallbackUrl;
+    private final int smsSegmentBudget;
+
+    /**
+     * Creates a transport that has calls fetch their TwiML from twimlets.com.
+     *
+     * @param account the Twilio account to send from
+     * @param from the phone number to send from
+     * @param urlShortener shortens the build urls appended to text messages
+     */
+    public TwilioTransport(final Account account, final String from, final UrlShortener urlShortener) {
+        this(account, from, urlShortener, null);
+    }
+
+    /**
+     * Creates a transport.
+     *
+     * @param account the Twilio account to send from
+     * @param from the phone number to send from
+     * @param urlShortener shortens the build urls appended to text messages
+     * @param twimlUrl the absolute url of the {@link TwimlAction}, or null to
+     *        have calls fetch their TwiML from twimlets.com
+     */
+    public TwilioTransport(final Account account, final String from, final UrlShortener urlShortener,
+            final String twimlUrl) {
+        this(account, null, new SenderPool(from, new String[0]), null, urlShortener, twimlUrl, null, 0);
+    }
+
+    /**
+     * Creates a transport that sends text messages from a pool of numbers,
+     * or through a Messaging Service.
+     *
+     * @param connection the Twilio client to send with
+     * @param senders the numbers to send text messages from; calls are placed from the primary one
+     * @param messagingServiceSid the Messaging Service to send text messages through
+     *        instead of the pool, or null
+     * @param urlShortener shortens the build urls appended to text messages
+     * @param twimlUrl the absolute url of the {@link TwimlAction}, or null to
+     *        have calls fetch their TwiML from twimlets.com
+     */
+    public TwilioTransport(final TwilioConnection connection, final SenderPool senders,
+            final String messagingServiceSid, final UrlShortener urlShortener, final String twimlUrl) {
+        this(connection, senders, messagingServiceSid, urlShortener, twimlUrl, null, 0);
+    }
+
+    /**
+     * Creates a transport that has Twilio report the status of every message
+     * and call, and fits text messages into a number of segments.
+     *
+     * @param connection the Twilio client to send with
+     * @param senders the numbers to send text messages from; calls are placed from the primary one
+     * @param messagingServiceSid the Messaging Service to send text messages through
+     *        instead of the pool, or null
+     * @param urlShortener shortens the build urls appended to text messages
+     * @param twimlUrl the absolute url of the {@link TwimlAction}, or null to
+     *        have calls fetch their TwiML from twimlets.com
+     * @param statusCallbackUrl the absolute url of the {@link StatusCallbackAction},
+     *        or null to not be told
+     * @param smsSegmentBudget the number of segments a text message is cut
+     *        to fit into, or 0 to send it whole
+     */
+    public TwilioTransport(final TwilioConnection connection, final SenderPool senders,
+            final String messagingServiceSid, final UrlShortener urlShortener, final String twimlUrl,
+            final String statusCallbackUrl, final int smsSegmentBudget) {
+        this(connection.getAccount(), connection.getClient(), senders, messagingServiceSid, urlShortener, twimlUrl,
+                statusCallbackUrl, smsSegmentBudget);
+    }
+
+    private TwilioTransport(final Account account, final TwilioRestClient client, final SenderPool senders,
+            final String messagingServiceSid, final UrlShortener urlShortener, final String twimlUrl,
+            final String statusCallbackUrl, final int smsSegmentBudget) {
+        this.smsFactory = account.getSmsFactory();
+        this.callFactory = account.getCallFactory();
+        this.client = client;
+        this.from = senders.getPrimary();
+        this.senders = senders;
+        this.messagingServiceSid = client == null ? null : messagingServiceSid;
+        this.urlShortener = urlShortener;
+        this.twimlUrl = twimlUrl;
+        this.statusCallbackUrl = statusCallbackUrl;
+        this.smsSegmentBudget = smsSegmentBudget;
+    }
+
+    public String send(final Notification notification, final Channel channel) throws Exception {
+        if (channel == Channel.SMS) {
+            String message = smsMessage(notification);
+            long start = System.nanoTime();
+            try {
+                return sendSMS(message, notification.getNumber());
+            } finally {
+                NotificationMetrics.INSTANCE.recordSince(NotificationMetrics.Timer.SMS, start);
+            }
+        } else {
+            long start = System.nanoTime();
+            try {
+                return call(notification.getMessage(), notification.getNumber());
+            } finally {
+                NotificationMetrics.INSTANCE.recordSince(NotificationMetrics.Timer.CALL, start);
+            }
+        }
+    }
+
+    /**
+     * Returns the text message for a notification: the message followed by
+     * the tiny url of the build, or just the message if the url can't be
+     * shortened, in GSM-7 if it can be and cut to the segment budget. The
+     * shortener caches urls, so all recipients of a build share a single
+     * request.
+     */
+    private String smsMessage(final Notification notification) {
+        final String text = SmsEncoder.fit(notification.getMessage(), urlSuffix(notification), smsSegmentBudget);
+        final SmsEncoder.Encoding encoding = SmsEncoder.getEncoding(text);
+        final int segments = SmsEncoder.getSegments(text);
+        NotificationMetrics.INSTANCE.countSegments(encoding, segments);
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Text message to " + notification.getNumber() + " takes " + segments + " " + encoding
+                    + " segments");
+        }
+        return text;
+    }
+
+    private String urlSuffix(final Notification notification) {
+        if (notification.getUrl() == null) {
+            return "";
+        }
+        long start = System.nanoTime();
+        try {
+            return " " + urlShortener.shorten(notification.getUrl());
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not shorten " + notification.getUrl(), e);
+            return "";
+        } finally {
+            NotificationMetrics.INSTANCE.recordSince(NotificationMetrics.Timer.SHORTEN, start);
+        }
+    }
+
+    /**
+     * Sends a text message.
+     *
+     * @param message Message to send to the phone number
+     * @param to the phone number to send this to
+     * @return the SID of the message
+     * @throws TwilioRestException Thrown when there is an error from the Twilio servers
+     * @throws IOException if the rate limit of the sender leaves no room before the maximum wait
+     * @throws InterruptedException if interrupted while waiting for the rate limit of the sender
+     */
+    String sendSMS(final String message, final String to) throws TwilioRestException, IOException,
+            InterruptedException {
+        if (messagingServiceSid != null) {
+            return sendThroughMessagingService(message, to);
+        }
+        final int sender = senders.acquire(to);
+        try {
+            if (!senders.awaitPermit(sender)) {
+                throw new IOException("Rate limit of " + senders.get(sender)
+                        + " leaves no room before the retry deadline");
+            }
+            final Map<String, String> smsParams = new HashMap<String, String>();
+            smsParams.put("To", to);
+            smsParams.put("From", senders.get(sender));
+            smsParams.put("Body", message);
+            putStatusCallback(smsParams);
+            return smsFactory.create(smsParams).getSid();
+        } finally {
+            senders.release(sender);
+        }
+    }
+
+    /**
+     * Sends a text message through the Messaging Service, which picks the
+     * sender and queues the message on Twilio's side. The SMS resource of
+     * the SDK predates Messaging Services, so this posts to the Messages
+     * resource itself.
+     */
+    private String sendThroughMessagingService(final String message, final String to) throws TwilioRestException {
+        final Map<String, String> params = new HashMap<String, String>();
+        params.put("To", to);
+        params.put("MessagingServiceSid", messagingServiceSid);
+        params.put("Body", message);
+        putStatusCallback(params);
+        final TwilioRestResponse response = client.safeRequest("/" + TwilioRestClient.DEFAULT_VERSION + "/Accounts/"
+                + client.getAccountSid() + "/Messages.json", "POST", params);
+        final Map<String, Object> created = response.toMap();
+        return created == null || created.get("sid") == null ? null : created.get("sid").toString();
+    }
+
+    /**
+     * Calls and tts the message.
+     *
+     * @param message Message to be spoken
+     * @param to the phone number to send this to
+     * @return the SID of the call
+     * @throws TwilioRestException Thrown when there is an error from the Twilio servers
+     * @throws UnsupportedEncodingException The message is URL encoded. This is the exception thrown if there's an error when this happens
+     */
+    String call(final String message, final String to) throws TwilioRestException, UnsupportedEncodingException {
+        final Map<String, String> callParams = new HashMap<String, String>();
+        callParams.put("To", to);
+        callParams.put("From", from);
+
+        if (twimlUrl != null) {
+            callParams.put("Url", twimlUrl + TwimlCache.INSTANCE.put(message));
+            // a GET doesn't need a crumb when Jenkins has CSRF protection on
+            callParams.put("Method", "GET");
+        } else {
+            callParams.put("Url", "http://twimlets.com/echo?Twiml="
+                    + URLEncoder.encode(TwimlCache.toTwiml(message), "UTF-8"));
+        }
+        putStatusCallback(callParams);
+        return callFactory.create(callParams).getSid();
+    }
+
+    private void putStatusCallback(final Map<String, String> params) {
+        if (statusCallbackUrl != null) {
+            params.put("StatusCallback", statusCallbackUrl);
+            params.put("StatusCallbackMethod", "POST");
+        }
+    }
+}
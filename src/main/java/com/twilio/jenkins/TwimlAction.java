@@ -0,0 +1,53 @@
+package com.twilio.jenkins;
+
+import hudson.Extension;
+import hudson.model.UnprotectedRootAction;
+
+import java.io.IOException;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+/**
+ * Serves the TwiML of outgoing calls at
+ * <code>/twilio-twiml/&lt;token&gt;</code>, where Twilio fetches it when a
+ * call is answered. Twilio doesn't log in, so the action is unprotected; the
+ * random token from the {@link TwimlCache} is what keeps the messages from
+ * being read by anybody else.
+ */
+@Extension
+public class TwimlAction implements UnprotectedRootAction {
+
+    static final String URL_NAME = "twilio-twiml";
+
+    public String getIconFileName() {
+        return null;
+    }
+
+    public String getDisplayName() {
+        return "Twilio call TwiML";
+    }
+
+    public String getUrlName() {
+        return URL_NAME;
+    }
+
+    /**
+     * Answers Twilio's GET or POST for a token.
+     */
+    public void doDynamic(final StaplerRequest req, final StaplerResponse rsp) throws IOException {
+        String token = req.getRestOfPath();
+        if (token.startsWith("/")) {
+            token = token.substring(1);
+        }
+        final String twiml = TwimlCache.INSTANCE.get(token);
+        if (twiml == null) {
+            rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        rsp.setContentType("application/xml;charset=UTF-8");
+        rsp.getWriter().print(twiml);
+    }
+}
@@ -0,0 +1,137 @@
+package com.twilio.jenkins;
+
+import hudson.Util;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link TwimlCache} keeps the TwiML of outgoing calls in memory under
+ * short random tokens, for Twilio to fetch from the {@link TwimlAction} when
+ * the call is answered. The token is the only thing in the call url, so
+ * messages of any length can be spoken and nothing about them is given away
+ * by the url.
+ */
+public final class TwimlCache {
+
+    static final TwimlCache INSTANCE = new TwimlCache(TimeUnit.HOURS.toMillis(1));
+
+    /**
+     * Twilio doesn't speak more than 4096 characters in one Say verb.
+     */
+    static final int MAX_SAY_LENGTH = 4000;
+
+    private static final long SWEEP_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    private final long ttlMillis;
+    private volatile long nextSweep;
+
+    /**
+     * Creates a cache.
+     *
+     * @param ttlMillis how long Twilio may fetch the TwiML of a call after it was placed
+     */
+    TwimlCache(final long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * Stores the TwiML that speaks a message.
+     *
+     * @param message the message to speak
+     * @return the token to fetch it with
+     */
+    public String put(final String message) {
+        final long now = System.currentTimeMillis();
+        sweep(now);
+        final String token = Tokens.next();
+        entries.put(token, new Entry(toTwiml(message), now + ttlMillis));
+        return token;
+    }
+
+    /**
+     * Returns the TwiML stored for a token.
+     *
+     * @param token the token
+     * @return the TwiML, or null if the token is unknown or expired
+     */
+    public String get(final String token) {
+        final Entry entry = entries.get(token);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.isExpired(System.currentTimeMillis())) {
+            entries.remove(token, entry);
+            return null;
+        }
+        return entry.twiml;
+    }
+
+    /**
+     * @return the number of stored calls, including expired ones not swept yet
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Drops expired entries, at most once per interval.
+     */
+    private void sweep(final long now) {
+        if (now < nextSweep) {
+            return;
+        }
+        nextSweep = now + SWEEP_INTERVAL_MILLIS;
+        for (Iterator<Map.Entry<String, Entry>> i = entries.entrySet().iterator(); i.hasNext();) {
+            if (i.next().getValue().isExpired(now)) {
+                i.remove();
+            }
+        }
+    }
+
+    /**
+     * Builds the TwiML that speaks a message, split over several Say verbs
+     * at word boundaries if it is too long for one.
+     *
+     * @param message the message
+     * @return the TwiML document
+     */
+    static String toTwiml(final String message) {
+        final StringBuilder sb = new StringBuilder(message.length() + 96);
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?><Response>");
+        int start = 0;
+        while (start < message.length()) {
+            int end = Math.min(message.length(), start + MAX_SAY_LENGTH);
+            if (end < message.length()) {
+                int space = message.lastIndexOf(' ', end);
+                if (space > start) {
+                    end = space;
+                }
+            }
+            String part = message.substring(start, end).trim();
+            if (part.length() > 0) {
+                sb.append("<Say>").append(Util.xmlEscape(part)).append("</Say>");
+            }
+            start = end;
+        }
+        return sb.append("</Response>").toString();
+    }
+
+    private static final class Entry {
+        final String twiml;
+        final long expires;
+
+        Entry(final String twiml, final long expires) {
+            this.twiml = twiml;
+            this.expires = expires;
+        }
+
+        boolean isExpired(final long now) {
+            return now >= expires;
+        }
+    }
+}
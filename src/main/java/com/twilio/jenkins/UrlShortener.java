@@ -0,0 +1,148 @@
+package com.twilio.jenkins;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.methods.GetMethod;
+
+/**
+ * A {@link UrlShortener} turns build urls into tiny urls using a
+ * tinyurl.com-style endpoint: a GET of the endpoint followed by the url
+ * encoded long url, answering with the short url as plain text.
+ *
+ * All requests share one pool of keep-alive connections, and results are
+ * kept in a bounded LRU cache with a time to live, so the url of a build is
+ * shortened only once no matter how many recipients it is sent to.
+ */
+public final class UrlShortener {
+
+    /**
+     * The tinyurl.com endpoint.
+     */
+    public static final String DEFAULT_ENDPOINT = "http://tinyurl.com/api-create.php?url=";
+
+    static final int CONNECT_TIMEOUT_MILLIS = 5000;
+    static final int READ_TIMEOUT_MILLIS = 10000;
+    static final int MAX_CONNECTIONS = 10;
+    static final int CACHE_SIZE = 1000;
+    static final long CACHE_TTL_MILLIS = 60 * 60 * 1000L;
+
+    private final String endpoint;
+    private final MultiThreadedHttpConnectionManager connectionManager;
+    private final HttpClient client;
+    private final long ttlMillis;
+    private final Map<String, Entry> cache;
+
+    /**
+     * Creates a shortener with the default timeouts and cache settings.
+     *
+     * @param endpoint the shortener endpoint the url encoded long url is appended to
+     */
+    public UrlShortener(final String endpoint) {
+        this(endpoint, CONNECT_TIMEOUT_MILLIS, READ_TIMEOUT_MILLIS, CACHE_SIZE, CACHE_TTL_MILLIS);
+    }
+
+    /**
+     * Creates a shortener.
+     *
+     * @param endpoint the shortener endpoint the url encoded long url is appended to
+     * @param connectTimeoutMillis the connect timeout
+     * @param readTimeoutMillis the read timeout
+     * @param cacheSize the maximum number of cached urls
+     * @param ttlMillis how long a short url is cached
+     */
+    public UrlShortener(final String endpoint, final int connectTimeoutMillis, final int readTimeoutMillis,
+            final int cacheSize, final long ttlMillis) {
+        this.endpoint = endpoint;
+        this.ttlMillis = ttlMillis;
+        this.connectionManager = new MultiThreadedHttpConnectionManager();
+        this.connectionManager.getParams().setConnectionTimeout(connectTimeoutMillis);
+        this.connectionManager.getParams().setSoTimeout(readTimeoutMillis);
+        this.connectionManager.getParams().setDefaultMaxConnectionsPerHost(MAX_CONNECTIONS);
+        this.connectionManager.getParams().setMaxTotalConnections(MAX_CONNECTIONS);
+        this.connectionManager.getParams().setStaleCheckingEnabled(true);
+        this.client = new HttpClient(this.connectionManager);
+        this.client.getParams().setConnectionManagerTimeout(connectTimeoutMillis);
+        this.cache = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * @return the endpoint the url encoded long url is appended to
+     */
+    public String getEndpoint() {
+        return this.endpoint;
+    }
+
+    /**
+     * Shortens a url. Concurrent requests for the same url wait for a single
+     * request to the endpoint.
+     *
+     * @param url the url to shorten
+     * @return the short url
+     * @throws IOException thrown when the endpoint can't be reached or doesn't answer with 200
+     */
+    public String shorten(final String url) throws IOException {
+        final long now = System.currentTimeMillis();
+        Entry entry;
+        synchronized (cache) {
+            entry = cache.get(url);
+            if (entry == null || entry.isExpired(now)) {
+                entry = new Entry();
+                cache.put(url, entry);
+            }
+        }
+        return entry.get(url);
+    }
+
+    /**
+     * Closes the pooled connections.
+     */
+    public void shutdown() {
+        connectionManager.shutdown();
+    }
+
+    private String request(final String url) throws IOException {
+        final GetMethod gm = new GetMethod(endpoint + URLEncoder.encode(url, "UTF-8"));
+        try {
+            final int status = client.executeMethod(gm);
+            if (status == HttpStatus.SC_OK) {
+                return gm.getResponseBodyAsString().trim();
+            } else {
+                throw new IOException("Non-OK response code back from " + endpoint + ": " + status);
+            }
+        } finally {
+            gm.releaseConnection();
+        }
+    }
+
+    /**
+     * A cached short url. Failures are not cached, the next caller tries again.
+     */
+    private final class Entry {
+        private String value;
+        // read without the lock so a request in flight doesn't block the cache
+        private volatile long expires = Long.MAX_VALUE;
+
+        boolean isExpired(final long now) {
+            return now >= expires;
+        }
+
+        synchronized String get(final String url) throws IOException {
+            if (value == null) {
+                value = request(url);
+                expires = System.currentTimeMillis() + ttlMillis;
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.twilio.jenkins;
+
+import static org.junit.Assert.*;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+public class CallScheduleTest {
+
+    private static long at(final String zone, final int year, final int month, final int day, final int hour,
+            final int minute) {
+        Calendar c = Calendar.getInstance(TimeZone.getTimeZone(zone));
+        c.clear();
+        c.set(year, month - 1, day, hour, minute);
+        return c.getTimeInMillis();
+    }
+
+    @Test
+    public void testEmptyScheduleAllowsAnyTime() {
+        assertNull(CallSchedule.parse(null));
+        assertNull(CallSchedule.parse("  "));
+    }
+
+    @Test
+    public void testWorkingHours() {
+        // 2026-10-12 is a Monday
+        CallSchedule schedule = CallSchedule.parse("Mon-Fri 09:00-18:00, Sat 10:00-12:00; Europe/Stockholm");
+        assertTrue(schedule.allowsCall(at("Europe/Stockholm", 2026, 10, 12, 9, 0)));
+        assertTrue(schedule.allowsCall(at("Europe/Stockholm", 2026, 10, 16, 17, 59)));
+        assertFalse(schedule.allowsCall(at("Europe/Stockholm", 2026, 10, 16, 18, 0)));
+        assertFalse(schedule.allowsCall(at("Europe/Stockholm", 2026, 10, 12, 8, 59)));
+        assertTrue(schedule.allowsCall(at("Europe/Stockholm", 2026, 10, 17, 11, 0)));
+        assertFalse(schedule.allowsCall(at("Europe/Stockholm", 2026, 10, 18, 11, 0)));
+        // 9:00 in Stockholm is 3:00 in New York
+        assertFalse(schedule.allowsCall(at("America/New_York", 2026, 10, 14, 2, 59)));
+        assertTrue(schedule.allowsCall(at("America/New_York", 2026, 10, 14, 3, 0)));
+    }
+
+    @Test
+    public void testHoursPastMidnightAndIntoNextWeek() {
+        CallSchedule schedule = CallSchedule.parse("Sun 22:00-06:00; UTC");
+        assertTrue(schedule.allowsCall(at("UTC", 2026, 10, 18, 23, 0)));
+        assertTrue(schedule.allowsCall(at("UTC", 2026, 10, 19, 5, 59)));
+        assertFalse(schedule.allowsCall(at("UTC", 2026, 10, 19, 6, 0)));
+        assertFalse(schedule.allowsCall(at("UTC", 2026, 10, 18, 21, 59)));
+    }
+
+    @Test
+    public void testDaylightSavingTime() {
+        CallSchedule schedule = CallSchedule.parse("08:00-09:00; Europe/Stockholm");
+        // clocks go back on 2026-10-25, in the middle of the week of the 19th
+        assertTrue(schedule.allowsCall(at("Europe/Stockholm", 2026, 10, 24, 8, 30)));
+        assertTrue(schedule.allowsCall(at("Europe/Stockholm", 2026, 10, 26, 8, 30)));
+        assertFalse(schedule.allowsCall(at("Europe/Stockholm", 2026, 10, 26, 9, 30)));
+    }
+
+    @Test
+    public void testInvalidSchedules() {
+        assertInvalid("Mon-Fri 9-18; Mars/Olympus");
+        assertInvalid("Funday 09:00-18:00");
+        assertInvalid("Mon 09:00");
+        assertInvalid("Mon 25:00-26:00");
+        assertInvalid("Mon Tue 09:00-10:00");
+        assertInvalid(",;UTC");
+    }
+
+    private static void assertInvalid(final String spec) {
+        try {
+            CallSchedule.parse(spec);
+            fail(spec);
+        } catch (IllegalArgumentException e) {
+            assertNotNull(e.getMessage());
+        }
+    }
+}
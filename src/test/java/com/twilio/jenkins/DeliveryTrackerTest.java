@@ -0,0 +1,147 @@
+package com.twilio.jenkins;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DeliveryTrackerTest {
+    private static final Notification NOTIFICATION = new Notification("a", "alice", "+15551234567", "a FAILURE",
+            null, true, false);
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("twilio-deliveries", ".bin");
+        file.delete();
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+        new File(file.getPath() + ".tmp").delete();
+    }
+
+    @Test
+    public void testStatusUpdates() {
+        DeliveryTracker tracker = new DeliveryTracker();
+        tracker.sent("SM1", NOTIFICATION, Channel.SMS, false);
+        assertEquals(DeliveryTracker.QUEUED, tracker.get("SM1").getStatus());
+        assertTrue(tracker.update("SM1", "sent"));
+        assertEquals("sent", tracker.get("SM1").getStatus());
+        assertTrue(tracker.update("SM1", "delivered"));
+        assertTrue(tracker.get("SM1").isFinal());
+        assertFalse(tracker.update("SM2", "delivered"));
+        assertNull(tracker.get("SM2"));
+    }
+
+    @Test
+    public void testFinalStatusIsKeptWhenCallbacksArriveOutOfOrder() {
+        DeliveryTracker tracker = new DeliveryTracker();
+        tracker.sent("SM1", NOTIFICATION, Channel.SMS, false);
+        tracker.update("SM1", "delivered");
+        tracker.update("SM1", "sent");
+        assertEquals("delivered", tracker.get("SM1").getStatus());
+    }
+
+    @Test
+    public void testStatusReportedBeforeTheDeliveryIsTrackedIsApplied() {
+        final List<Notification> failed = new ArrayList<Notification>();
+        DeliveryTracker tracker = new DeliveryTracker();
+        tracker.setFailureListener(new DeliveryTracker.FailureListener() {
+            public void failed(final DeliveryTracker.Delivery delivery, final Notification notification) {
+                failed.add(notification);
+            }
+        });
+        assertFalse(tracker.update("SM1", "sent"));
+        assertFalse(tracker.update("SM1", "undelivered"));
+        assertFalse(tracker.update("SM1", "sent"));
+        assertNull(tracker.get("SM1"));
+
+        tracker.sent("SM1", NOTIFICATION, Channel.SMS, true);
+        assertEquals("undelivered", tracker.get("SM1").getStatus());
+        assertEquals(1, failed.size());
+
+        tracker.sent("SM2", NOTIFICATION, Channel.SMS, true);
+        assertEquals(DeliveryTracker.QUEUED, tracker.get("SM2").getStatus());
+        assertEquals(1, failed.size());
+    }
+
+    @Test
+    public void testOldestDeliveriesAreDropped() {
+        DeliveryTracker tracker = new DeliveryTracker(null, DeliveryTracker.RETENTION_MILLIS, 3);
+        for (int i = 1; i <= 5; i++) {
+            tracker.sent("SM" + i, NOTIFICATION, Channel.SMS, false);
+        }
+        assertEquals(3, tracker.size());
+        assertNull(tracker.get("SM2"));
+        assertNotNull(tracker.get("SM3"));
+        assertNotNull(tracker.get("SM5"));
+    }
+
+    @Test
+    public void testExpiredDeliveriesAreDropped() throws InterruptedException {
+        DeliveryTracker tracker = new DeliveryTracker(null, 10, DeliveryTracker.MAX_DELIVERIES);
+        tracker.sent("SM1", NOTIFICATION, Channel.SMS, false);
+        Thread.sleep(50);
+        tracker.sent("SM2", NOTIFICATION, Channel.SMS, false);
+        assertNull(tracker.get("SM1"));
+        assertNotNull(tracker.get("SM2"));
+    }
+
+    @Test
+    public void testFailedResendableDeliveryIsReportedOnce() {
+        final List<Notification> failed = new ArrayList<Notification>();
+        DeliveryTracker tracker = new DeliveryTracker();
+        tracker.setFailureListener(new DeliveryTracker.FailureListener() {
+            public void failed(final DeliveryTracker.Delivery delivery, final Notification notification) {
+                assertEquals(Channel.CALL, delivery.getChannel());
+                failed.add(notification);
+            }
+        });
+        tracker.sent("CA1", NOTIFICATION, Channel.CALL, true);
+        tracker.update("CA1", "ringing");
+        assertTrue(failed.isEmpty());
+        tracker.update("CA1", "no-answer");
+        tracker.update("CA1", "no-answer");
+        assertEquals(1, failed.size());
+        assertSame(NOTIFICATION, failed.get(0));
+
+        tracker.sent("CA2", NOTIFICATION, Channel.CALL, false);
+        tracker.update("CA2", "busy");
+        tracker.sent("CA3", NOTIFICATION, Channel.CALL, true);
+        tracker.update("CA3", "completed");
+        assertEquals(1, failed.size());
+    }
+
+    @Test
+    public void testDeliveriesSurviveASnapshot() throws IOException {
+        DeliveryTracker tracker = new DeliveryTracker(file, DeliveryTracker.RETENTION_MILLIS,
+                DeliveryTracker.MAX_DELIVERIES);
+        tracker.sent("SM1", NOTIFICATION, Channel.SMS, false);
+        tracker.update("SM1", "undelivered");
+        tracker.sent("CA1", new Notification("bob", "+15557654321", "a FAILURE", null, false, true),
+                Channel.CALL, false);
+        tracker.close();
+
+        tracker = new DeliveryTracker(file, DeliveryTracker.RETENTION_MILLIS, DeliveryTracker.MAX_DELIVERIES);
+        assertEquals(2, tracker.size());
+        DeliveryTracker.Delivery sms = tracker.get("SM1");
+        assertEquals(Channel.SMS, sms.getChannel());
+        assertEquals("a", sms.getJob());
+        assertEquals("alice", sms.getRecipient());
+        assertEquals("+15551234567", sms.getNumber());
+        assertEquals("undelivered", sms.getStatus());
+        DeliveryTracker.Delivery call = tracker.get("CA1");
+        assertNull(call.getJob());
+        assertEquals(DeliveryTracker.QUEUED, call.getStatus());
+        tracker.close();
+    }
+}
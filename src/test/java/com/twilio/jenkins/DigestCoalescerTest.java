@@ -0,0 +1,79 @@
+package com.twilio.jenkins;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class DigestCoalescerTest {
+    private final BlockingQueue<Notification> sent = new LinkedBlockingQueue<Notification>();
+
+    private final DigestCoalescer.Sink sink = new DigestCoalescer.Sink() {
+        public void send(Notification digest, List<Notification> merged) {
+            sent.add(digest);
+        }
+    };
+
+    @Test
+    public void testSizeCapFlushesOneDigest() throws InterruptedException {
+        DigestCoalescer coalescer = new DigestCoalescer(TimeUnit.MINUTES.toMillis(10), 3, sink);
+        coalescer.offer(notification("+15551234567", true, false), "a FAILURE");
+        coalescer.offer(notification("+15551234567", false, true), "b UNSTABLE");
+        coalescer.offer(notification("+15551234567", true, false), "c FAILURE");
+
+        Notification digest = sent.poll(5, TimeUnit.SECONDS);
+        assertNotNull(digest);
+        assertEquals("+15551234567", digest.getNumber());
+        assertEquals("3 builds need attention: a FAILURE, b UNSTABLE, c FAILURE", digest.getMessage());
+        assertTrue(digest.isSms());
+        assertTrue(digest.isCall());
+        assertEquals(0, coalescer.getPendingCount());
+        coalescer.flushAll();
+        assertTrue(sent.isEmpty());
+    }
+
+    @Test
+    public void testSingleNotificationIsSentUnchangedWhenTheWindowCloses() throws InterruptedException {
+        DigestCoalescer coalescer = new DigestCoalescer(50, 10, sink);
+        Notification notification = notification("+15551234567", true, true);
+        coalescer.offer(notification, "a FAILURE");
+        coalescer.offer(notification("+15557654321", true, false), "a FAILURE");
+
+        Notification first = sent.poll(5, TimeUnit.SECONDS);
+        Notification second = sent.poll(5, TimeUnit.SECONDS);
+        assertTrue(first == notification || second == notification);
+        assertNotNull(second);
+        assertTrue(sent.isEmpty());
+        coalescer.flushAll();
+    }
+
+    @Test
+    public void testFlushAllSendsPendingDigests() {
+        DigestCoalescer coalescer = new DigestCoalescer(TimeUnit.MINUTES.toMillis(10), 10, sink);
+        coalescer.offer(notification("+15551234567", true, false), "a FAILURE");
+        coalescer.offer(notification("+15551234567", true, false), "b FAILURE");
+        coalescer.flushAll();
+        assertEquals(1, sent.size());
+        assertEquals("2 builds need attention: a FAILURE, b FAILURE", sent.peek().getMessage());
+    }
+
+    @Test
+    public void testNotesAreKeptOncePerDigest() {
+        DigestCoalescer coalescer = new DigestCoalescer(TimeUnit.MINUTES.toMillis(10), 10, sink);
+        String ack = "Reply or open http://jenkins/twilio-ack/abc to cancel the follow-up call.";
+        coalescer.offer(notification("+15551234567", true, false), "a FAILURE", ack);
+        coalescer.offer(notification("+15551234567", true, false), "b is flapping.", null);
+        coalescer.offer(notification("+15551234567", true, false), "c FAILURE", ack);
+        coalescer.flushAll();
+        assertEquals("3 builds need attention: a FAILURE, b is flapping., c FAILURE. " + ack,
+                sent.peek().getMessage());
+    }
+
+    private static Notification notification(String number, boolean sms, boolean call) {
+        return new Notification(number, number, "message", "http://jenkins/job/a/1/", sms, call);
+    }
+}
@@ -0,0 +1,129 @@
+package com.twilio.jenkins;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class EscalationSchedulerTest {
+    private static final long TICK = 1000;
+
+    private final List<Notification> calls = new ArrayList<Notification>();
+    private EscalationScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        // the wheel only turns when the test says so
+        scheduler = new EscalationScheduler(TimeUnit.HOURS.toMillis(1), new EscalationScheduler.Sink() {
+            public void escalate(final Notification call) {
+                calls.add(call);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    private void tick(final long ticks) {
+        for (long i = 0; i < ticks; i++) {
+            scheduler.tick();
+        }
+    }
+
+    private static Notification call(final String job, final String number) {
+        return new Notification(job, "alice", number, "failed", null, false, true);
+    }
+
+    @Test
+    public void testUnacknowledgedCallIsPlacedAfterTheDelay() {
+        Notification call = call("job", "+14155551234");
+        scheduler.schedule(call, TimeUnit.HOURS.toMillis(3));
+        tick(2);
+        assertTrue(calls.isEmpty());
+        tick(1);
+        assertEquals(1, calls.size());
+        assertSame(call, calls.get(0));
+        assertEquals(0, scheduler.getPendingCount());
+    }
+
+    @Test
+    public void testCallsBeyondOneTurnWaitForTheirRound() {
+        scheduler.schedule(call("job", "+14155551234"), TimeUnit.HOURS.toMillis(EscalationScheduler.WHEEL_SIZE + 5));
+        tick(EscalationScheduler.WHEEL_SIZE + 4);
+        assertTrue(calls.isEmpty());
+        tick(1);
+        assertEquals(1, calls.size());
+    }
+
+    @Test
+    public void testAcknowledgedCallIsNotPlaced() {
+        String token = scheduler.schedule(call("job", "+14155551234"), TICK);
+        String other = scheduler.schedule(call("job", "+14155550000"), TICK);
+        assertTrue(scheduler.isPending(token));
+        assertTrue(scheduler.acknowledge(token));
+        assertFalse(scheduler.isPending(token));
+        assertFalse(scheduler.acknowledge(token));
+        assertFalse(scheduler.acknowledge("unknown"));
+        assertFalse(token.equals(other));
+        tick(1);
+        assertEquals(1, calls.size());
+        assertEquals("+14155550000", calls.get(0).getNumber());
+    }
+
+    @Test
+    public void testReplyAcknowledgesEveryCallToTheNumber() {
+        scheduler.schedule(call("a", "+14155551234"), TICK);
+        scheduler.schedule(call("b", "+14155551234"), TICK);
+        scheduler.schedule(call("b", "+14155550000"), TICK);
+        assertEquals(2, scheduler.acknowledgeNumber("+14155551234"));
+        assertEquals(0, scheduler.acknowledgeNumber("+14155551234"));
+        assertEquals(1, scheduler.getPendingCount());
+    }
+
+    @Test
+    public void testCallsToTheSameNumberAreGrouped() {
+        String token = scheduler.schedule(call("a", "+14155551234"), "a FAILURE", TICK);
+        assertEquals(token, scheduler.schedule(call("b", "+14155551234"), "b FAILURE", TimeUnit.HOURS.toMillis(5)));
+        String other = scheduler.schedule(call("c", "+14155550000"), "c FAILURE", TICK);
+        assertFalse(token.equals(other));
+        assertEquals(3, scheduler.getPendingCount());
+
+        tick(1);
+        assertEquals(2, calls.size());
+        Notification grouped = calls.get(0).getNumber().equals("+14155551234") ? calls.get(0) : calls.get(1);
+        assertEquals("2 builds need attention: a FAILURE, b FAILURE", grouped.getMessage());
+        assertNull(grouped.getJob());
+        assertTrue(grouped.isCall());
+        assertFalse(grouped.isSms());
+        assertEquals(0, scheduler.getPendingCount());
+    }
+
+    @Test
+    public void testAcknowledgingAGroupCancelsAllOfItsCalls() {
+        String token = scheduler.schedule(call("a", "+14155551234"), "a FAILURE", TICK);
+        scheduler.schedule(call("b", "+14155551234"), "b FAILURE", TICK);
+        assertTrue(scheduler.acknowledge(token));
+        assertEquals(0, scheduler.getPendingCount());
+        tick(1);
+        assertTrue(calls.isEmpty());
+    }
+
+    @Test
+    public void testRecoveryCancelsTheCallsOfTheJob() {
+        scheduler.schedule(call("a", "+14155551234"), TICK);
+        scheduler.schedule(call("a", "+14155550000"), TimeUnit.HOURS.toMillis(2));
+        scheduler.schedule(call("b", "+14155551234"), TICK);
+        assertEquals(2, scheduler.cancel("a"));
+        assertEquals(0, scheduler.cancel(null));
+        tick(2);
+        assertEquals(1, calls.size());
+        assertEquals("b", calls.get(0).getJob());
+    }
+}
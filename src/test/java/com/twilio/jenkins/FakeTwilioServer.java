@@ -0,0 +1,195 @@
+package com.twilio.jenkins;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * An in-process stand-in for the Twilio REST API and a tinyurl.com-style
+ * shortener, answering every request after a configurable latency. A share
+ * of the Twilio requests can be failed with a server error or rejected with
+ * a 429, the way Twilio rejects requests over the account's rate.
+ *
+ * Run {@link #main} to start one on a fixed port and set the Twilio API base
+ * url and the shortener endpoint of a local Jenkins to it.
+ */
+public class FakeTwilioServer {
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final AtomicInteger messages = new AtomicInteger();
+    private final AtomicInteger calls = new AtomicInteger();
+    private final AtomicInteger shortened = new AtomicInteger();
+    private final AtomicInteger errors = new AtomicInteger();
+    private final AtomicInteger tooManyRequests = new AtomicInteger();
+    private final Random random = new Random(42);
+    private volatile long latencyMillis;
+    private volatile double errorRate;
+    private volatile double tooManyRequestsRate;
+
+    /**
+     * Starts a server on a free local port.
+     *
+     * @param latencyMillis how long to wait before answering a request
+     * @throws IOException if the server can't be started
+     */
+    public FakeTwilioServer(final long latencyMillis) throws IOException {
+        this(0, latencyMillis);
+    }
+
+    /**
+     * Starts a server.
+     *
+     * @param port the port to listen on, 0 for a free one
+     * @param latencyMillis how long to wait before answering a request
+     * @throws IOException if the server can't be started
+     */
+    public FakeTwilioServer(final int port, final long latencyMillis) throws IOException {
+        this.latencyMillis = latencyMillis;
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        this.server.createContext("/2010-04-01/Accounts/", new HttpHandler() {
+            public void handle(final HttpExchange exchange) throws IOException {
+                String path = exchange.getRequestURI().getPath();
+                double roll = nextRoll();
+                if (roll < tooManyRequestsRate) {
+                    tooManyRequests.incrementAndGet();
+                    exchange.getResponseHeaders().set("Retry-After", "1");
+                    respond(exchange, 429, "{\"code\":20429,\"message\":\"Too Many Requests\",\"status\":429}");
+                } else if (roll < tooManyRequestsRate + errorRate) {
+                    errors.incrementAndGet();
+                    respond(exchange, 500, "{\"code\":20500,\"message\":\"Internal Server Error\",\"status\":500}");
+                } else if (path.endsWith("/Calls.json")) {
+                    int sid = calls.incrementAndGet();
+                    respond(exchange, 201, "{\"sid\":\"CA" + sid + "\",\"status\":\"queued\"}");
+                } else if (path.endsWith("/Messages.json")) {
+                    int sid = messages.incrementAndGet();
+                    respond(exchange, 201, "{\"sid\":\"SM" + sid + "\",\"status\":\"queued\"}");
+                } else {
+                    respond(exchange, 404, "{\"status\":404,\"message\":\"Not found\"}");
+                }
+            }
+        });
+        this.server.createContext("/shorten", new HttpHandler() {
+            public void handle(final HttpExchange exchange) throws IOException {
+                respond(exchange, 200, "http://tiny/" + shortened.incrementAndGet());
+            }
+        });
+        this.executor = Executors.newCachedThreadPool();
+        this.server.setExecutor(this.executor);
+        this.server.start();
+    }
+
+    private double nextRoll() {
+        synchronized (random) {
+            return random.nextDouble();
+        }
+    }
+
+    private void respond(final HttpExchange exchange, final int status, final String body) throws IOException {
+        InputStream in = exchange.getRequestBody();
+        while (in.read() >= 0) {
+            // drain the request so the connection can be kept alive
+        }
+        if (latencyMillis > 0) {
+            try {
+                Thread.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        byte[] bytes = body.getBytes("UTF-8");
+        exchange.getResponseHeaders().set("Content-Type", body.startsWith("{") ? "application/json" : "text/plain");
+        exchange.sendResponseHeaders(status, bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+    }
+
+    public void setLatencyMillis(final long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    /**
+     * @param errorRate the share of Twilio requests answered with a 500, between 0 and 1
+     */
+    public void setErrorRate(final double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * @param tooManyRequestsRate the share of Twilio requests answered with a 429, between 0 and 1
+     */
+    public void setTooManyRequestsRate(final double tooManyRequestsRate) {
+        this.tooManyRequestsRate = tooManyRequestsRate;
+    }
+
+    /**
+     * @return the base url to create the {@link TwilioConnection} with
+     */
+    public String getEndpoint() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * @return the endpoint to create the {@link UrlShortener} with
+     */
+    public String getShortenerEndpoint() {
+        return getEndpoint() + "/shorten?url=";
+    }
+
+    public int getMessageCount() {
+        return messages.get();
+    }
+
+    public int getCallCount() {
+        return calls.get();
+    }
+
+    public int getShortenedCount() {
+        return shortened.get();
+    }
+
+    /**
+     * @return the number of requests answered with a 500
+     */
+    public int getErrorCount() {
+        return errors.get();
+    }
+
+    /**
+     * @return the number of requests answered with a 429
+     */
+    public int getTooManyRequestsCount() {
+        return tooManyRequests.get();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Starts a server until the process is killed.
+     *
+     * @param args the port, the latency in milliseconds, the error rate and
+     *        the 429 rate, all optional
+     * @throws IOException if the server can't be started
+     */
+    public static void main(final String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8089;
+        long latency = args.length > 1 ? Long.parseLong(args[1]) : 100;
+        FakeTwilioServer server = new FakeTwilioServer(port, latency);
+        server.setErrorRate(args.length > 2 ? Double.parseDouble(args[2]) : 0);
+        server.setTooManyRequestsRate(args.length > 3 ? Double.parseDouble(args[3]) : 0);
+        System.out.println("Twilio API base url: " + server.getEndpoint());
+        System.out.println("URL shortener endpoint: " + server.getShortenerEndpoint());
+    }
+}
@@ -0,0 +1,70 @@
+package com.twilio.jenkins;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FakeTwilioServerTest {
+    private static final String MESSAGES = "/2010-04-01/Accounts/AC123/SMS/Messages.json";
+
+    private FakeTwilioServer server;
+
+    @Before
+    public void start() throws IOException {
+        server = new FakeTwilioServer(0);
+    }
+
+    @After
+    public void stop() {
+        server.stop();
+    }
+
+    @Test
+    public void testAnswersMessagesAndCalls() throws IOException {
+        assertEquals(201, post(MESSAGES));
+        assertEquals(201, post("/2010-04-01/Accounts/AC123/Calls.json"));
+        assertEquals(1, server.getMessageCount());
+        assertEquals(1, server.getCallCount());
+    }
+
+    @Test
+    public void testInjectsFailures() throws IOException {
+        server.setTooManyRequestsRate(1);
+        assertEquals(429, post(MESSAGES));
+        server.setTooManyRequestsRate(0);
+        server.setErrorRate(1);
+        assertEquals(500, post(MESSAGES));
+        server.setErrorRate(0);
+        assertEquals(201, post(MESSAGES));
+        assertEquals(1, server.getTooManyRequestsCount());
+        assertEquals(1, server.getErrorCount());
+        assertEquals(1, server.getMessageCount());
+    }
+
+    @Test
+    public void testAddsLatency() throws IOException {
+        server.setLatencyMillis(100);
+        long start = System.nanoTime();
+        post(MESSAGES);
+        assertTrue(System.nanoTime() - start >= 100 * 1000 * 1000L);
+    }
+
+    private int post(final String path) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(server.getEndpoint() + path).openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        OutputStream out = connection.getOutputStream();
+        out.write("To=%2B14155551234&Body=hello".getBytes("UTF-8"));
+        out.close();
+        int status = connection.getResponseCode();
+        connection.disconnect();
+        return status;
+    }
+}
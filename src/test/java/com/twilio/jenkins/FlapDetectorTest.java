@@ -0,0 +1,91 @@
+package com.twilio.jenkins;
+
+import static org.junit.Assert.*;
+
+import hudson.model.Result;
+
+import org.junit.Test;
+
+public class FlapDetectorTest {
+    private static final long WINDOW = 60000;
+
+    @Test
+    public void testSteadyJobIsNotified() {
+        FlapDetector detector = new FlapDetector(WINDOW, 4);
+        assertEquals(FlapDetector.Decision.NOTIFY, detector.record("job", Result.SUCCESS, true, 1000));
+        assertEquals(FlapDetector.Decision.NOTIFY, detector.record("job", Result.FAILURE, true, 2000));
+        assertEquals(FlapDetector.Decision.NOTIFY, detector.record("job", Result.SUCCESS, true, 3000));
+        assertEquals(2, detector.getChanges("job"));
+        assertEquals(0, detector.getChanges("other"));
+    }
+
+    @Test
+    public void testSameResultIsNotifiedOncePerWindow() {
+        FlapDetector detector = new FlapDetector(WINDOW, 4);
+        assertEquals(FlapDetector.Decision.NOTIFY, detector.record("job", Result.FAILURE, true, 1000));
+        assertEquals(FlapDetector.Decision.SUPPRESS, detector.record("job", Result.FAILURE, true, 2000));
+        assertEquals(FlapDetector.Decision.NOTIFY, detector.record("other", Result.FAILURE, true, 2000));
+        assertEquals(FlapDetector.Decision.NOTIFY, detector.record("job", Result.FAILURE, true, 1000 + WINDOW));
+    }
+
+    @Test
+    public void testSkippedBuildsAreStillRecorded() {
+        FlapDetector detector = new FlapDetector(WINDOW, 4);
+        assertEquals(FlapDetector.Decision.SUPPRESS, detector.record("job", Result.SUCCESS, false, 1000));
+        assertEquals(FlapDetector.Decision.SUPPRESS, detector.record("job", Result.FAILURE, false, 2000));
+        assertEquals(1, detector.getChanges("job"));
+    }
+
+    @Test
+    public void testAlternatingJobIsFlappingOncePerWindow() {
+        FlapDetector detector = new FlapDetector(WINDOW, 4);
+        long now = 1000;
+        int flapping = 0;
+        for (int i = 0; i < 20; i++) {
+            Result result = i % 2 == 0 ? Result.FAILURE : Result.SUCCESS;
+            if (detector.record("job", result, true, now++) == FlapDetector.Decision.FLAPPING) {
+                flapping++;
+            }
+        }
+        assertEquals(1, flapping);
+        assertEquals(FlapDetector.HISTORY - 1, detector.getChanges("job"));
+        assertEquals(FlapDetector.Decision.FLAPPING, detector.record("job", Result.FAILURE, true, now + WINDOW));
+    }
+
+    @Test
+    public void testJobThatSettlesIsNotifiedAgain() {
+        FlapDetector detector = new FlapDetector(WINDOW, 4);
+        long now = 1000;
+        for (int i = 0; i < 6; i++) {
+            detector.record("job", i % 2 == 0 ? Result.FAILURE : Result.SUCCESS, true, now++);
+        }
+        for (int i = 0; i < FlapDetector.HISTORY; i++) {
+            detector.record("job", Result.SUCCESS, false, now++);
+        }
+        assertEquals(0, detector.getChanges("job"));
+        assertEquals(FlapDetector.Decision.NOTIFY, detector.record("job", Result.FAILURE, true, now + WINDOW));
+    }
+
+    @Test
+    public void testHistoryIsKeptWhenReconfigured() {
+        FlapDetector detector = new FlapDetector(WINDOW, 4);
+        long now = 1000;
+        for (int i = 0; i < 4; i++) {
+            detector.record("job", i % 2 == 0 ? Result.FAILURE : Result.SUCCESS, true, now++);
+        }
+        assertEquals(3, detector.getChanges("job"));
+        detector.configure(WINDOW, 3);
+        assertEquals(3, detector.getChanges("job"));
+        assertEquals(FlapDetector.Decision.FLAPPING, detector.record("job", Result.SUCCESS, true, now));
+    }
+
+    @Test
+    public void testForgottenJobStartsAfresh() {
+        FlapDetector detector = new FlapDetector(WINDOW, 4);
+        detector.record("job", Result.FAILURE, true, 1000);
+        detector.record("job", Result.SUCCESS, true, 2000);
+        detector.forget("job");
+        assertEquals(0, detector.getChanges("job"));
+        assertEquals(FlapDetector.Decision.NOTIFY, detector.record("job", Result.SUCCESS, true, 3000));
+    }
+}
@@ -0,0 +1,59 @@
+package com.twilio.jenkins;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+    @Test
+    public void testBucketsCoverEveryValue() {
+        long[] values = {0, 1, 31, 32, 33, 63, 64, 1000, 123456789, Long.MAX_VALUE};
+        for (long value : values) {
+            int bucket = LatencyHistogram.bucket(value);
+            assertTrue(value + " above its bucket", value <= LatencyHistogram.highestInBucket(bucket));
+            if (bucket > 0) {
+                assertTrue(value + " below its bucket", value > LatencyHistogram.highestInBucket(bucket - 1));
+            }
+        }
+    }
+
+    @Test
+    public void testPercentilesAreWithinThreePercent() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 10000; i++) {
+            histogram.record(i);
+        }
+        assertEquals(10000, histogram.getCount());
+        assertEquals(5000.5, histogram.getMean(), 0.001);
+        assertEquals(10000, histogram.getMax());
+        assertEquals(5000, histogram.getPercentile(50), 5000 * 0.03);
+        assertEquals(9900, histogram.getPercentile(99), 9900 * 0.03);
+        assertEquals(10000, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void testEmptyHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentile(99));
+        assertEquals(0, histogram.getMean(), 0);
+    }
+
+    @Test
+    public void testMetricsCountPerChannelAndJob() {
+        NotificationMetrics metrics = new NotificationMetrics();
+        Notification both = new Notification("job", "alice", "+15551234567", "message", null, true, true);
+        metrics.count(NotificationMetrics.Event.SUPPRESSED, both);
+        metrics.count(NotificationMetrics.Event.SENT, both, Channel.SMS);
+        metrics.count(NotificationMetrics.Event.SENT,
+                new Notification("bob", "+15557654321", "message", null, true, false), Channel.SMS);
+
+        assertEquals(2, metrics.getCount(NotificationMetrics.Event.SENT, Channel.SMS));
+        assertEquals(1, metrics.getCount("job", NotificationMetrics.Event.SENT, Channel.SMS));
+        assertEquals(1, metrics.getCount("job", NotificationMetrics.Event.SUPPRESSED, Channel.CALL));
+        assertEquals(0, metrics.getCount("other", NotificationMetrics.Event.SENT, Channel.SMS));
+
+        metrics.forget("job");
+        assertEquals(0, metrics.getCount("job", NotificationMetrics.Event.SENT, Channel.SMS));
+        assertEquals(2, metrics.getCount(NotificationMetrics.Event.SENT, Channel.SMS));
+    }
+}
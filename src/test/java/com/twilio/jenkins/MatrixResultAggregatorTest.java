@@ -0,0 +1,32 @@
+package com.twilio.jenkins;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class MatrixResultAggregatorTest {
+
+    @Test
+    public void testAllSuccessful() {
+        assertNull(MatrixResultAggregator.describe(Collections.<String>emptyList(), 30));
+    }
+
+    @Test
+    public void testUnsuccessfulConfigurationsAreListed() {
+        assertEquals("in 1 of 1 configuration: jdk=6",
+                MatrixResultAggregator.describe(Arrays.asList("jdk=6"), 1));
+        assertEquals("in 2 of 30 configurations: jdk=6 and jdk=7",
+                MatrixResultAggregator.describe(Arrays.asList("jdk=6", "jdk=7"), 30));
+        assertEquals("in 3 of 30 configurations: jdk=6, jdk=7 and jdk=8",
+                MatrixResultAggregator.describe(Arrays.asList("jdk=6", "jdk=7", "jdk=8"), 30));
+    }
+
+    @Test
+    public void testOnlyTheFirstConfigurationsAreListed() {
+        assertEquals("in 5 of 30 configurations: jdk=6, jdk=7, jdk=8 and 2 more",
+                MatrixResultAggregator.describe(Arrays.asList("jdk=6", "jdk=7", "jdk=8", "os=mac", "os=win"), 30));
+    }
+}
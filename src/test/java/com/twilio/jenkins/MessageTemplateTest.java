@@ -0,0 +1,47 @@
+package com.twilio.jenkins;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class MessageTemplateTest {
+    @Test
+    public void testRender() {
+        Map<String, String> values = new HashMap<String, String>();
+        values.put("%PROJECT%", "TwilioNotifier");
+        values.put("%STATUS%", "FAILURE");
+        MessageTemplate template = MessageTemplate.compile("%PROJECT% is %STATUS%, %PROJECT%!");
+        assertEquals("TwilioNotifier is FAILURE, TwilioNotifier!", template.render(values));
+    }
+
+    @Test
+    public void testValuesAreInsertedLiterally() {
+        Map<String, String> values = new HashMap<String, String>();
+        values.put("%CULPRITS%", "$1 and C:\\temp");
+        assertEquals("Broken by $1 and C:\\temp", MessageTemplate.compile("Broken by %CULPRITS%").render(values));
+    }
+
+    @Test
+    public void testUnknownPlaceholdersAndStrayPercents() {
+        Map<String, String> values = new HashMap<String, String>();
+        values.put("%BUILD%", "#12");
+        assertEquals("100% of %UNKNOWN% #12 %", MessageTemplate.compile("100% of %UNKNOWN% %BUILD% %").render(values));
+        assertEquals("%%", MessageTemplate.compile("%%").render(values));
+    }
+
+    @Test
+    public void testAdjacentPlaceholders() {
+        Map<String, String> values = new HashMap<String, String>();
+        values.put("%A%", "a");
+        values.put("%CULPRIT-NAME%", "b");
+        assertEquals("ab", MessageTemplate.compile("%A%%CULPRIT-NAME%").render(values));
+    }
+
+    @Test
+    public void testNullTemplate() {
+        assertEquals("", MessageTemplate.compile(null).render(new HashMap<String, String>()));
+    }
+}
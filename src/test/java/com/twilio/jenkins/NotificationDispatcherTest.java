@@ -0,0 +1,56 @@
+package com.twilio.jenkins;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class NotificationDispatcherTest {
+
+    @Test
+    public void testDiscardedTaskIsTold() throws InterruptedException {
+        NotificationDispatcher dispatcher = new NotificationDispatcher(1, 1,
+                NotificationDispatcher.OverflowPolicy.DISCARD_OLDEST);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        assertTrue(dispatcher.dispatch(new Runnable() {
+            public void run() {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        final AtomicInteger ran = new AtomicInteger();
+        final AtomicInteger discarded = new AtomicInteger();
+        NotificationDispatcher.Task oldest = new NotificationDispatcher.Task() {
+            public void run() {
+                ran.incrementAndGet();
+            }
+
+            public void discarded() {
+                discarded.incrementAndGet();
+            }
+        };
+        assertTrue(dispatcher.dispatch(oldest));
+        assertTrue(dispatcher.dispatch(new Runnable() {
+            public void run() {
+                ran.incrementAndGet();
+            }
+        }));
+        assertEquals(1, discarded.get());
+        assertEquals(1, dispatcher.getDiscardedCount());
+
+        release.countDown();
+        assertTrue(dispatcher.drain(5, TimeUnit.SECONDS));
+        assertEquals(1, ran.get());
+        assertEquals(1, discarded.get());
+    }
+}
@@ -0,0 +1,61 @@
+package com.twilio.jenkins;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.twilio.sdk.TwilioRestException;
+
+public class NotificationFanOutTest {
+    @Test
+    public void testOutcomesKeepTheSidsInRecipientOrder() {
+        NotificationFanOut fanOut = new NotificationFanOut(4);
+        try {
+            List<Notification> notifications = Arrays.asList(
+                    new Notification("a", "+14155550001", "m", null, true, true),
+                    new Notification("b", "+14155550002", "m", null, true, false),
+                    new Notification("c", "+14155550003", "m", null, false, true));
+            NotificationResult result = fanOut.send(notifications, new NotificationFanOut.Transport() {
+                public String send(Notification notification, Channel channel) throws Exception {
+                    if (notification.getRecipient().equals("c")) {
+                        throw new IllegalStateException("no answer");
+                    }
+                    return (channel == Channel.SMS ? "SM" : "CA") + notification.getRecipient();
+                }
+            });
+            assertEquals(Arrays.asList("SMa", "CAa", "SMb"), result.getSids());
+            assertEquals(3, result.getSentCount());
+            assertEquals(1, result.getFailedCount());
+            assertNull(result.getOutcomes().get(3).getSid());
+        } finally {
+            fanOut.shutdown();
+        }
+    }
+
+    @Test
+    public void testOnlyTheChannelThatFailedIsLeftToSend() {
+        NotificationFanOut fanOut = new NotificationFanOut(4);
+        try {
+            Notification notification = new Notification("a", "+14155550001", "m", null, true, true).withId(7);
+            NotificationResult result = fanOut.send(Arrays.asList(notification), new NotificationFanOut.Transport() {
+                public String send(Notification notification, Channel channel) throws Exception {
+                    if (channel == Channel.CALL) {
+                        throw new TwilioRestException("Too Many Requests", RetryingTransport.TOO_MANY_REQUESTS);
+                    }
+                    return "SMa";
+                }
+            });
+            assertTrue(result.getFinished().isEmpty());
+            List<Notification> unfinished = result.getUnfinished();
+            assertEquals(1, unfinished.size());
+            assertEquals(7, unfinished.get(0).getId());
+            assertFalse(unfinished.get(0).isSms());
+            assertTrue(unfinished.get(0).isCall());
+        } finally {
+            fanOut.shutdown();
+        }
+    }
+}
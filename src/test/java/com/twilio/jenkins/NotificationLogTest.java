@@ -0,0 +1,72 @@
+package com.twilio.jenkins;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class NotificationLogTest {
+    private final List<LogRecord> records = new ArrayList<LogRecord>();
+    private Logger logger;
+
+    @Before
+    public void setUp() {
+        logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+        logger.addHandler(new Handler() {
+            public void publish(LogRecord record) {
+                records.add(record);
+            }
+
+            public void flush() {
+            }
+
+            public void close() {
+            }
+        });
+    }
+
+    @Test
+    public void testOneRecordPerNotification() {
+        Notification alice = new Notification("job", "alice", "+14155551234", "a \"FAILURE\"", null, true, true);
+        Notification bob = new Notification("bob", "+14155554321", "a FAILURE", null, true, false);
+        IOException error = new IOException("timed out");
+        NotificationLog.log(logger, Arrays.asList(
+                new NotificationResult.Outcome(alice, Channel.SMS, null),
+                new NotificationResult.Outcome(alice, Channel.CALL, error),
+                new NotificationResult.Outcome(bob, Channel.SMS, null)), false);
+
+        assertEquals(2, records.size());
+        assertEquals(Level.WARNING, records.get(0).getLevel());
+        assertEquals("notification job=\"job\" recipient=\"alice\" number=+14155551234 sms=sent "
+                + "call=failed:\"timed out\"", records.get(0).getMessage());
+        assertSame(error, records.get(0).getThrown());
+        assertEquals(Level.INFO, records.get(1).getLevel());
+        assertEquals("notification recipient=\"bob\" number=+14155554321 sms=sent", records.get(1).getMessage());
+    }
+
+    @Test
+    public void testBodyIsOptIn() {
+        Notification alice = new Notification("alice", "+14155551234", "a \"FAILURE\"", null, true, false);
+        NotificationLog.log(logger, Arrays.asList(new NotificationResult.Outcome(alice, Channel.SMS, null)), true);
+        assertTrue(records.get(0).getMessage().endsWith(" body=\"a \\\"FAILURE\\\"\""));
+    }
+
+    @Test
+    public void testNothingIsLoggedBelowTheLevel() {
+        logger.setLevel(Level.SEVERE);
+        Notification alice = new Notification("alice", "+14155551234", "a FAILURE", null, true, false);
+        NotificationLog.log(logger, Arrays.asList(
+                new NotificationResult.Outcome(alice, Channel.SMS, new IOException())), true);
+        assertTrue(records.isEmpty());
+    }
+}
@@ -0,0 +1,158 @@
+package com.twilio.jenkins;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class NotificationOutboxTest {
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("twilio-outbox", ".log");
+        file.delete();
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+        new File(file.getPath() + ".tmp").delete();
+    }
+
+    @Test
+    public void testPendingNotificationsSurviveReopening() throws IOException {
+        NotificationOutbox outbox = new NotificationOutbox(file);
+        List<Notification> journaled = outbox.append(Arrays.asList(
+                new Notification("alice", "+15551234567", "a FAILURE", "http://jenkins/job/a/1/", true, false),
+                new Notification("bob", "+15557654321", "a FAILURE", null, true, true)));
+        outbox.complete(journaled.get(0).getId());
+        outbox.close();
+
+        outbox = new NotificationOutbox(file);
+        List<Notification> pending = outbox.getPending();
+        assertEquals(1, pending.size());
+        Notification bob = pending.get(0);
+        assertEquals(journaled.get(1).getId(), bob.getId());
+        assertEquals("bob", bob.getRecipient());
+        assertEquals("+15557654321", bob.getNumber());
+        assertEquals("a FAILURE", bob.getMessage());
+        assertNull(bob.getUrl());
+        assertTrue(bob.isSms());
+        assertTrue(bob.isCall());
+
+        List<Notification> next = outbox.append(Arrays.asList(notification()));
+        assertTrue(next.get(0).getId() > bob.getId());
+        outbox.close();
+    }
+
+    @Test
+    public void testTornRecordIsDiscarded() throws IOException {
+        NotificationOutbox outbox = new NotificationOutbox(file);
+        outbox.append(Arrays.asList(notification()));
+        outbox.append(Arrays.asList(notification()));
+        outbox.close();
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        long length = raf.length();
+        raf.setLength(length - 3);
+        raf.close();
+
+        outbox = new NotificationOutbox(file);
+        assertEquals(1, outbox.getPending().size());
+        assertTrue(outbox.getSize() < length - 3);
+        outbox.close();
+    }
+
+    @Test
+    public void testCompletedRecordsAreCompacted() throws IOException {
+        NotificationOutbox outbox = new NotificationOutbox(file);
+        for (int i = 0; i < NotificationOutbox.COMPACT_THRESHOLD; i++) {
+            outbox.complete(outbox.append(Arrays.asList(notification())).get(0).getId());
+        }
+        outbox.append(Arrays.asList(notification()));
+        long size = outbox.getSize();
+        outbox.close();
+
+        assertTrue(size < 1000);
+        outbox = new NotificationOutbox(file);
+        assertEquals(1, outbox.getPending().size());
+        outbox.close();
+    }
+
+    @Test
+    public void testFailedNotificationIsRetriedWithBackoff() throws IOException {
+        NotificationOutbox outbox = new NotificationOutbox(file, NotificationOutbox.MAX_AGE_MILLIS, 1000);
+        Notification journaled = outbox.append(Arrays.asList(notification())).get(0);
+        long id = journaled.getId();
+        long now = System.currentTimeMillis();
+        assertTrue(outbox.takeDue(now + 5000).isEmpty());
+
+        outbox.retryLater(journaled);
+        assertTrue(outbox.takeDue(now).isEmpty());
+        List<Notification> due = outbox.takeDue(now + 5000);
+        assertEquals(1, due.size());
+        assertEquals(id, due.get(0).getId());
+        assertTrue(outbox.takeDue(now + 5000).isEmpty());
+
+        outbox.retryLater(journaled);
+        assertTrue(outbox.takeDue(System.currentTimeMillis() + 1500).isEmpty());
+        assertEquals(1, outbox.takeDue(System.currentTimeMillis() + 2500).size());
+        assertEquals(1, outbox.getPending().size());
+        outbox.close();
+    }
+
+    @Test
+    public void testOldNotificationsExpireAndAreNotRecovered() throws IOException {
+        NotificationOutbox outbox = new NotificationOutbox(file, 60000, NotificationOutbox.RETRY_DELAY_MILLIS);
+        Notification journaled = outbox.append(Arrays.asList(notification())).get(0);
+        long id = journaled.getId();
+        outbox.retryLater(journaled);
+        assertTrue(outbox.expire(System.currentTimeMillis()).isEmpty());
+        outbox.close();
+
+        outbox = new NotificationOutbox(file, 60000, NotificationOutbox.RETRY_DELAY_MILLIS);
+        List<Notification> expired = outbox.expire(System.currentTimeMillis() + 120000);
+        assertEquals(1, expired.size());
+        assertEquals(id, expired.get(0).getId());
+        assertTrue(outbox.getPending().isEmpty());
+        assertTrue(outbox.takeDue(Long.MAX_VALUE).isEmpty());
+        outbox.close();
+
+        outbox = new NotificationOutbox(file);
+        assertTrue(outbox.getPending().isEmpty());
+        outbox.close();
+    }
+
+    @Test
+    public void testOnlyTheChannelsLeftToSendAreRetried() throws IOException {
+        NotificationOutbox outbox = new NotificationOutbox(file, NotificationOutbox.MAX_AGE_MILLIS, 1000);
+        Notification journaled = outbox.append(Arrays.asList(
+                new Notification("bob", "+15557654321", "a FAILURE", null, true, true))).get(0);
+        outbox.retryLater(journaled.withChannels(false, true));
+        List<Notification> due = outbox.takeDue(System.currentTimeMillis() + 5000);
+        assertEquals(1, due.size());
+        assertFalse(due.get(0).isSms());
+        assertTrue(due.get(0).isCall());
+        outbox.close();
+
+        outbox = new NotificationOutbox(file);
+        List<Notification> pending = outbox.getPending();
+        assertEquals(1, pending.size());
+        assertEquals(journaled.getId(), pending.get(0).getId());
+        assertFalse(pending.get(0).isSms());
+        assertTrue(pending.get(0).isCall());
+        outbox.close();
+    }
+
+    private static Notification notification() {
+        return new Notification("alice", "+15551234567", "a FAILURE", null, true, false);
+    }
+}
@@ -0,0 +1,91 @@
+package com.twilio.jenkins;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class PhoneNumbersTest {
+    private static final String NANP = PhoneNumbers.NORTH_AMERICA;
+
+    @Test
+    public void testNormalize() {
+        assertEquals("+46701234567", PhoneNumbers.normalize("+46 70-123 45 67"));
+        assertEquals("+46701234567", PhoneNumbers.normalize("0046 (70) 1234567"));
+        assertEquals("+14155551234", PhoneNumbers.normalize("(415) 555-1234", NANP));
+        assertEquals("+14155551234", PhoneNumbers.normalize("1.415.555.1234", NANP));
+        assertEquals("+46701234567", PhoneNumbers.normalize("+46 70 123 45 67", NANP));
+    }
+
+    @Test
+    public void testNumbersWithoutCountryCodeAreNotGuessed() {
+        assertNull(PhoneNumbers.normalize("(415) 555-1234"));
+        assertNull(PhoneNumbers.normalize("070 123 45 67"));
+        // a Swedish national number that looks North American
+        assertNull(PhoneNumbers.normalize("2345678901"));
+        assertEquals("+12345678901", PhoneNumbers.normalize("2345678901", NANP));
+        assertNull(PhoneNumbers.normalize("070 123 45 67", NANP));
+    }
+
+    @Test
+    public void testDefaultCountryComesFromTheSender() {
+        assertEquals(NANP, PhoneNumbers.getDefaultCountry("+1 415 555 1234"));
+        assertNull(PhoneNumbers.getDefaultCountry("+46 70 123 45 67"));
+        assertNull(PhoneNumbers.getDefaultCountry("4155551234"));
+        assertNull(PhoneNumbers.getDefaultCountry(null));
+    }
+
+    @Test
+    public void testNormalizeRejectsNonNumbers() {
+        assertNull(PhoneNumbers.normalize(""));
+        assertNull(PhoneNumbers.normalize("  "));
+        assertNull(PhoneNumbers.normalize("call me"));
+        assertNull(PhoneNumbers.normalize("415+555"));
+        assertNull(PhoneNumbers.normalize("++4670123"));
+        assertNull(PhoneNumbers.normalize("+1234567890123456"));
+    }
+
+    @Test
+    public void testParseListDropsDuplicatesAndEmptyEntries() {
+        String[] numbers = PhoneNumbers.parseList(" +1 415 555 1234, ,4155551234,+46701234567,", NANP);
+        assertEquals(Arrays.asList("+14155551234", "+46701234567"), Arrays.asList(numbers));
+        numbers = PhoneNumbers.parseList(" +1 415 555 1234, ,4155551234,+46701234567,", null);
+        assertEquals(Arrays.asList("+14155551234", "+46701234567"), Arrays.asList(numbers));
+        assertEquals(0, PhoneNumbers.parseList(null, NANP).length);
+    }
+
+    @Test
+    public void testFindInvalid() {
+        assertNull(PhoneNumbers.findInvalid("+14155551234, +46 70 123 45 67,", null));
+        assertEquals("555-CALL", PhoneNumbers.findInvalid("+14155551234, 555-CALL ", NANP));
+        assertEquals("070 123 45 67", PhoneNumbers.findInvalid("+14155551234, 070 123 45 67", NANP));
+        assertEquals("415 555 1234", PhoneNumbers.findInvalid("+14155551234, 415 555 1234", null));
+        assertNull(PhoneNumbers.findInvalid("+14155551234, 415 555 1234", NANP));
+    }
+
+    @Test
+    public void testNumbersOnlyTakenAsNorthAmericanBeforeAreExplained() {
+        assertTrue(PhoneNumbers.describeInvalid("8012345678").contains("enter +18012345678"));
+        assertFalse(PhoneNumbers.describeInvalid("555-CALL").contains("enter"));
+        assertTrue(PhoneNumbers.describeInvalid("555-CALL").endsWith(": 555-CALL"));
+    }
+
+    @Test
+    public void testGroupsAreParsedApartFromNumbers() {
+        String list = "@oncall, +14155551234, @ release team ,@oncall, @";
+        assertEquals(Arrays.asList("oncall", "release team"), Arrays.asList(PhoneNumbers.parseGroups(list)));
+        assertEquals(Arrays.asList("+14155551234"), Arrays.asList(PhoneNumbers.parseList(list, null)));
+        assertEquals(0, PhoneNumbers.parseGroups("+14155551234").length);
+        assertNull(PhoneNumbers.findInvalid("@oncall, +14155551234", null));
+        assertEquals("@", PhoneNumbers.findInvalid("@oncall, @", null));
+    }
+
+    @Test
+    public void testRecipientGroupNumbersAreNormalized() {
+        RecipientGroup group = new RecipientGroup(" oncall ", "415 555 1234, +1 (415) 555-1234, +46701234567");
+        assertEquals("oncall", group.getName());
+        assertEquals(Arrays.asList("+14155551234", "+46701234567"), Arrays.asList(group.parseNumbers(NANP)));
+        assertEquals(Arrays.asList("+14155551234", "+46701234567"), Arrays.asList(group.parseNumbers(null)));
+    }
+}
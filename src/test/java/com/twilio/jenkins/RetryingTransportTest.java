@@ -0,0 +1,65 @@
+package com.twilio.jenkins;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.twilio.sdk.TwilioRestException;
+
+public class RetryingTransportTest {
+    private final Notification notification = new Notification("n", "+15551234567", "m", "m", true, true);
+
+    @Test
+    public void testRetriesRateLimitedRequests() throws Exception {
+        final AtomicInteger attempts = new AtomicInteger();
+        RetryingTransport transport = new RetryingTransport(new NotificationFanOut.Transport() {
+            public String send(Notification n, Channel channel) throws Exception {
+                if (attempts.incrementAndGet() < 3) {
+                    throw new TwilioRestException("Too Many Requests", RetryingTransport.TOO_MANY_REQUESTS);
+                }
+                return "SM" + attempts.get();
+            }
+        }, new RateLimiter(0), new RateLimiter(0), 60000);
+        assertEquals("SM3", transport.send(notification, Channel.SMS));
+        assertEquals(3, attempts.get());
+    }
+
+    @Test
+    public void testDoesNotRetryPermanentErrors() throws Exception {
+        final AtomicInteger attempts = new AtomicInteger();
+        RetryingTransport transport = new RetryingTransport(new NotificationFanOut.Transport() {
+            public String send(Notification n, Channel channel) throws Exception {
+                attempts.incrementAndGet();
+                throw new TwilioRestException("The 'To' number is not a valid phone number", 21211);
+            }
+        }, new RateLimiter(0), new RateLimiter(0), 60000);
+        try {
+            transport.send(notification, Channel.CALL);
+            fail("expected a TwilioRestException");
+        } catch (TwilioRestException e) {
+            assertEquals(1, attempts.get());
+        }
+    }
+
+    @Test
+    public void testRateLimiterSpacesRequests() throws InterruptedException {
+        RateLimiter limiter = new RateLimiter(20);
+        long deadline = System.nanoTime() + 10000000000L;
+        long start = System.nanoTime();
+        // the first 20 are the burst, the next 10 take about half a second
+        for (int i = 0; i < 30; i++) {
+            assertTrue(limiter.acquire(deadline));
+        }
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+        assertTrue("took " + elapsedMillis + "ms", elapsedMillis >= 400);
+    }
+
+    @Test
+    public void testRateLimiterGivesUpAtTheDeadline() throws InterruptedException {
+        RateLimiter limiter = new RateLimiter(1);
+        assertTrue(limiter.acquire(System.nanoTime()));
+        assertFalse(limiter.acquire(System.nanoTime() + 100000000L));
+    }
+}
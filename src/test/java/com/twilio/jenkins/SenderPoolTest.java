@@ -0,0 +1,80 @@
+package com.twilio.jenkins;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class SenderPoolTest {
+    private static final String[] OTHERS = {"+15550000002", "+15550000003", "+15550000004"};
+
+    @Test
+    public void testSingleNumber() {
+        SenderPool pool = new SenderPool("+15550000001", new String[0]);
+        assertEquals(1, pool.size());
+        int sender = pool.acquire("+14155551234");
+        assertEquals("+15550000001", pool.get(sender));
+        pool.release(sender);
+        assertEquals("+15550000001", pool.getPrimary());
+    }
+
+    @Test
+    public void testPrimaryIsNotAddedTwice() {
+        SenderPool pool = new SenderPool("+15550000001", new String[] {"+15550000001", "+15550000002"});
+        assertEquals(2, pool.size());
+    }
+
+    @Test
+    public void testRecipientsStayWithTheirSender() {
+        SenderPool pool = new SenderPool("+15550000001", OTHERS);
+        for (int i = 0; i < 100; i++) {
+            String to = "+1415555" + (1000 + i);
+            int first = pool.acquire(to);
+            pool.release(first);
+            int second = pool.acquire(to);
+            pool.release(second);
+            assertEquals(to, first, second);
+        }
+    }
+
+    @Test
+    public void testRecipientsAreSpreadOverThePool() {
+        SenderPool pool = new SenderPool("+15550000001", OTHERS);
+        int[] used = new int[pool.size()];
+        for (int i = 0; i < 200; i++) {
+            int sender = pool.acquire("+1415555" + (1000 + i));
+            used[sender]++;
+            pool.release(sender);
+        }
+        for (int count : used) {
+            assertTrue(count > 20);
+        }
+    }
+
+    @Test
+    public void testBusySenderSpillsOver() {
+        SenderPool pool = new SenderPool("+15550000001", OTHERS);
+        int home = pool.acquire("+14155551234");
+        int next = pool.acquire("+14155551234");
+        assertTrue(home != next);
+        assertEquals(1, pool.getInFlight(home));
+        assertEquals(1, pool.getInFlight(next));
+        pool.release(home);
+        pool.release(next);
+        assertEquals(home, pool.acquire("+14155551234"));
+    }
+
+    @Test
+    public void testEachSenderHasItsOwnRateLimit() throws InterruptedException {
+        SenderPool pool = new SenderPool("+15550000001", OTHERS, 1, 0);
+        int home = pool.acquire("+14155551234");
+        assertTrue(pool.awaitPermit(home));
+        pool.release(home);
+        assertEquals(home, pool.acquire("+14155551234"));
+        assertFalse(pool.awaitPermit(home));
+        int next = pool.acquire("+14155551234");
+        assertTrue(home != next);
+        assertTrue(pool.awaitPermit(next));
+        pool.release(home);
+        pool.release(next);
+    }
+}
@@ -0,0 +1,81 @@
+package com.twilio.jenkins;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class SmsEncoderTest {
+
+    private static String repeat(final char c, final int n) {
+        StringBuilder sb = new StringBuilder(n);
+        for (int i = 0; i < n; i++) {
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testGsm7Segments() {
+        assertEquals(SmsEncoder.Encoding.GSM7, SmsEncoder.getEncoding("Build #12 is FAILURE, ask J\u00F6rg"));
+        assertEquals(1, SmsEncoder.getSegments(""));
+        assertEquals(1, SmsEncoder.getSegments(repeat('a', 160)));
+        assertEquals(2, SmsEncoder.getSegments(repeat('a', 161)));
+        assertEquals(2, SmsEncoder.getSegments(repeat('a', 306)));
+        assertEquals(3, SmsEncoder.getSegments(repeat('a', 307)));
+    }
+
+    @Test
+    public void testExtensionCharactersTakeTwoSeptets() {
+        assertEquals(1, SmsEncoder.getSegments(repeat('[', 80)));
+        assertEquals(2, SmsEncoder.getSegments(repeat('[', 81)));
+        // the escape and the character aren't split over two segments
+        assertEquals(2, SmsEncoder.getSegments(repeat('a', 151) + "\u20AC" + repeat('a', 152)));
+        assertEquals(3, SmsEncoder.getSegments(repeat('a', 152) + "\u20AC" + repeat('a', 152)));
+    }
+
+    @Test
+    public void testUcs2Segments() {
+        String text = repeat('a', 69) + "\u4E2D";
+        assertEquals(SmsEncoder.Encoding.UCS2, SmsEncoder.getEncoding(text));
+        assertEquals(1, SmsEncoder.getSegments(text));
+        assertEquals(2, SmsEncoder.getSegments(text + "a"));
+        assertEquals(2, SmsEncoder.getSegments(repeat('a', 133) + "\u4E2D"));
+        assertEquals(3, SmsEncoder.getSegments(repeat('a', 134) + "\u4E2D"));
+    }
+
+    @Test
+    public void testTransliteration() {
+        assertEquals("\"Fix\" - Zoe's build, Lukasz...",
+                SmsEncoder.transliterate("\u201CFix\u201D \u2013 Zo\u00EB\u2019s build, \u0141ukasz\u2026"));
+        assertEquals("caf\u00E9", SmsEncoder.transliterate("caf\u00E9"));
+        // a character without a plain equivalent keeps the whole message in UCS-2
+        assertEquals("\u201C\u4E2D\u201D", SmsEncoder.transliterate("\u201C\u4E2D\u201D"));
+    }
+
+    @Test
+    public void testFitCutsTheMessageAndKeepsTheSuffix() {
+        String message = "Project is FAILURE, broken by " + repeat('x', 20) + " " + repeat('y', 200);
+        String suffix = " http://tinyurl.com/abc";
+        assertEquals(message + suffix, SmsEncoder.fit(message, suffix, 0));
+        String fitted = SmsEncoder.fit(message, suffix, 1);
+        assertEquals(1, SmsEncoder.getSegments(fitted));
+        assertTrue(fitted, fitted.endsWith("..." + suffix));
+        assertTrue(fitted, fitted.startsWith("Project is FAILURE"));
+
+        String shortMessage = "Project is FAILURE";
+        assertEquals(shortMessage + suffix, SmsEncoder.fit(shortMessage, suffix, 1));
+    }
+
+    @Test
+    public void testFitCutsAtAWord() {
+        String message = repeat('a', 150) + " bbbbbbbbbb";
+        assertEquals(repeat('a', 150) + "...", SmsEncoder.fit(message, "", 1));
+    }
+
+    @Test
+    public void testFits() {
+        assertTrue(SmsEncoder.fits(repeat('a', 160), false, 1));
+        assertFalse(SmsEncoder.fits(repeat('a', 160), true, 1));
+        assertTrue(SmsEncoder.fits(repeat('a', 120), true, 1));
+    }
+}
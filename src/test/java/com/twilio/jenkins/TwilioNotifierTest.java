@@ -5,6 +5,12 @@ import static org.junit.Assert.*;
 import java.io.IOException;
 import java.lang.reflect.Array;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import hudson.model.ModelObject;
 import hudson.model.User;
@@ -40,6 +46,61 @@ public class TwilioNotifierTest {
         assertEquals(result,"William James and Luke");
 	}
 
+    @Test
+    public void testCollapsedCulpritListToString() {
+		ModelObject william = createModelObject("William");
+		ModelObject james = createModelObject("James");
+		ModelObject luke = createModelObject("Luke");
+
+        assertEquals("William and James", TwilioNotifier.collapsedCulpritStringFromList(Arrays.asList(william, james)));
+        assertEquals("William and 2 others",
+                TwilioNotifier.collapsedCulpritStringFromList(Arrays.asList(william, james, luke)));
+	}
+
+    @Test
+    public void testConcurrentBuildsKeepTheirOwnValues() throws Exception {
+        final TwilioNotifier notifier = new TwilioNotifier("%PROJECT% %BUILD% is %STATUS%", "+14155551234, +14155554321",
+                "false", "false", "true", "false", "false", null);
+        final int threads = 8;
+        final int builds = 2000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<String>> results = new ArrayList<Future<String>>();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (int t = 0; t < threads; t++) {
+                final String project = "job" + t;
+                results.add(executor.submit(new Callable<String>() {
+                    public String call() throws Exception {
+                        start.await();
+                        for (int i = 0; i < builds; i++) {
+                            String status = i % 2 == 0 ? "FAILURE" : "SUCCESS";
+                            NotificationContext context = new NotificationContext(project, project, "#" + i, status,
+                                    "", null);
+                            List<Notification> notifications = notifier.createNotifications(context,
+                                    Collections.<User>emptySet());
+                            String expected = project + " #" + i + " is " + status;
+                            if (notifications.size() != 2) {
+                                return "expected 2 notifications, got " + notifications.size();
+                            }
+                            for (Notification notification : notifications) {
+                                if (!expected.equals(notification.getMessage())) {
+                                    return "expected '" + expected + "', got '" + notification.getMessage() + "'";
+                                }
+                            }
+                        }
+                        return null;
+                    }
+                }));
+            }
+            start.countDown();
+            for (Future<String> result : results) {
+                assertNull(result.get(60, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
 	private ModelObject createModelObject(final String name) {
 		return new ModelObject() {
 			public String getDisplayName() {
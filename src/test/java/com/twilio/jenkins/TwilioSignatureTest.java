@@ -0,0 +1,38 @@
+package com.twilio.jenkins;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class TwilioSignatureTest {
+    private static final String URL = "https://mycompany.com/myapp.php?foo=1&bar=2";
+
+    private static Map<String, String[]> params() {
+        Map<String, String[]> params = new HashMap<String, String[]>();
+        params.put("CallSid", new String[] {"CA1234567890ABCDE"});
+        params.put("Caller", new String[] {"+12349013030"});
+        params.put("Digits", new String[] {"1234"});
+        params.put("From", new String[] {"+12349013030"});
+        params.put("To", new String[] {"+18005551212"});
+        return params;
+    }
+
+    @Test
+    public void testSignatureFromTheTwilioDocumentation() {
+        assertEquals("0/KCTR6DLpKmkAf8muzZqo1nDgQ=", TwilioSignature.compute("12345", URL, params()));
+        assertTrue(TwilioSignature.isValid("12345", URL, params(), "0/KCTR6DLpKmkAf8muzZqo1nDgQ="));
+    }
+
+    @Test
+    public void testTamperedRequestsAreRejected() {
+        Map<String, String[]> params = params();
+        params.put("From", new String[] {"+14155551234"});
+        assertFalse(TwilioSignature.isValid("12345", URL, params, "0/KCTR6DLpKmkAf8muzZqo1nDgQ="));
+        assertFalse(TwilioSignature.isValid("54321", URL, params(), "0/KCTR6DLpKmkAf8muzZqo1nDgQ="));
+        assertFalse(TwilioSignature.isValid("12345", URL, params(), null));
+        assertFalse(TwilioSignature.isValid(null, URL, params(), "0/KCTR6DLpKmkAf8muzZqo1nDgQ="));
+    }
+}
@@ -0,0 +1,41 @@
+package com.twilio.jenkins;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TwimlCacheTest {
+    @Test
+    public void testStoresTwimlUnderARandomToken() {
+        TwimlCache cache = new TwimlCache(TimeUnit.MINUTES.toMillis(1));
+        String token = cache.put("Build <b> & \"c\" failed");
+        assertEquals(32, token.length());
+        assertFalse(token.equals(cache.put("another call")));
+        assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?><Response>"
+                + "<Say>Build &lt;b&gt; &amp; \"c\" failed</Say></Response>", cache.get(token));
+        assertNull(cache.get("unknown"));
+    }
+
+    @Test
+    public void testExpiredTokensAreGone() {
+        TwimlCache cache = new TwimlCache(0);
+        String token = cache.put("message");
+        assertNull(cache.get(token));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testLongMessagesAreSplitAtWords() {
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < TwimlCache.MAX_SAY_LENGTH * 2 + 100) {
+            sb.append("failing ");
+        }
+        String twiml = TwimlCache.toTwiml(sb.toString());
+        int says = twiml.split("<Say>", -1).length - 1;
+        assertEquals(3, says);
+        assertFalse(twiml.contains("fail</Say>"));
+        assertTrue(twiml.replace("</Say><Say>", " ").contains(sb.toString().trim()));
+    }
+}
@@ -0,0 +1,75 @@
+package com.twilio.jenkins;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class UrlShortenerTest {
+    private HttpServer server;
+    private UrlShortener shortener;
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile int status = 200;
+
+    @Before
+    public void startStub() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/shorten", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                requests.incrementAndGet();
+                String query = exchange.getRequestURI().getRawQuery();
+                String url = URLDecoder.decode(query.substring("url=".length()), "UTF-8");
+                byte[] body = ("http://tiny/" + url.length()).getBytes("UTF-8");
+                exchange.sendResponseHeaders(status, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        server.start();
+        shortener = new UrlShortener("http://127.0.0.1:" + server.getAddress().getPort() + "/shorten?url=");
+    }
+
+    @After
+    public void stopStub() {
+        shortener.shutdown();
+        server.stop(0);
+    }
+
+    @Test
+    public void testShortensOncePerUrl() throws IOException {
+        String url = "http://jenkins/job/my job/12/";
+        for (int i = 0; i < 5; i++) {
+            assertEquals("http://tiny/" + url.length(), shortener.shorten(url));
+        }
+        assertEquals(1, requests.get());
+
+        shortener.shorten("http://jenkins/job/other/1/");
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    public void testFailuresAreNotCached() throws IOException {
+        status = 500;
+        try {
+            shortener.shorten("http://jenkins/job/a/1/");
+            fail("expected an IOException");
+        } catch (IOException e) {
+            // expected
+        }
+        status = 200;
+        assertEquals("http://tiny/23", shortener.shorten("http://jenkins/job/a/1/"));
+        assertEquals(2, requests.get());
+    }
+}